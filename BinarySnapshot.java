@@ -0,0 +1,191 @@
+package rapido;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Binary snapshot format - read through a memory-mapped file, or from memory once a compressed one is inflated
+//
+// Layout (big-endian):
+//   header   : magic, version
+//   users    : fixed-width user records, user id = record index
+//   rides    : fixed-width ride records, riders and drivers stored as user ids
+//   strings  : string table, each entry is a length-prefixed UTF-8 string, string id = entry index
+//   trailer  : base price, counts and section offsets, magic
+class BinarySnapshot {
+  static final int MAGIC = 0x52504442; // "RPDB"
+  static final int VERSION = 2;
+  static final int HEADER_SIZE = 8;
+
+  // role, name, phone, username, password, vehicleNo, approved, online, earnings, latitude, longitude
+  static final int USER_RECORD_SIZE = 1 + 4 * 5 + 1 + 1 + 8 + 8 + 8;
+  // Version 1 user records had no driver position
+  private static final int V1_USER_RECORD_SIZE = 1 + 4 * 5 + 1 + 1 + 8;
+  // rideId, pickup, drop, distance, fare, eta, status, rider, driver, booking, completion, payment, upiId
+  static final int RIDE_RECORD_SIZE = 4 * 3 + 8 + 8 + 4 + 4 + 4 + 4 + 8 + 8 + 4 + 4;
+  // basePrice, userCount, usersOffset, rideCount, ridesOffset, stringCount, stringsOffset, magic
+  static final int TRAILER_SIZE = 8 + 4 + 8 + 8 + 8 + 4 + 8 + 4;
+
+  static final byte ROLE_RIDER = 1;
+  static final byte ROLE_DRIVER = 2;
+  static final byte ROLE_ADMIN = 3;
+
+  static final int NO_VALUE = -1;
+
+  // A single mapping is limited to 2 GB, so the ride section is mapped in windows of whole records
+  private static final int RIDES_PER_WINDOW = Integer.MAX_VALUE / RIDE_RECORD_SIZE;
+
+  private BinarySnapshot() {
+  }
+
+  // A byte range of the snapshot, mapped from the file or sliced from memory
+  private interface Content {
+    ByteBuffer slice(long offset, long length) throws IOException;
+  }
+
+  public static void read(File file, SnapshotSink sink) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      read(channel.size(), (offset, length) -> channel.map(FileChannel.MapMode.READ_ONLY, offset, length),
+          file.getName(), sink);
+    }
+  }
+
+  // A snapshot already in memory, such as an inflated compressed one
+  public static void read(byte[] snapshot, SnapshotSink sink) throws IOException {
+    read(snapshot.length, (offset, length) -> ByteBuffer.wrap(snapshot, (int) offset, (int) length).slice(),
+        "snapshot", sink);
+  }
+
+  private static void read(long size, Content content, String name, SnapshotSink sink) throws IOException {
+    if (size < HEADER_SIZE + TRAILER_SIZE) {
+      throw new IOException("Binary snapshot is truncated");
+    }
+    ByteBuffer header = content.slice(0, HEADER_SIZE);
+    if (header.getInt(0) != MAGIC) {
+      throw new IOException("Not a binary snapshot: " + name);
+    }
+    int version = header.getInt(4);
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported binary snapshot version " + version);
+    }
+    int userRecordSize = version == 1 ? V1_USER_RECORD_SIZE : USER_RECORD_SIZE;
+
+    ByteBuffer trailer = content.slice(size - TRAILER_SIZE, TRAILER_SIZE);
+    double basePrice = trailer.getDouble();
+    int userCount = trailer.getInt();
+    long usersOffset = trailer.getLong();
+    long rideCount = trailer.getLong();
+    long ridesOffset = trailer.getLong();
+    int stringCount = trailer.getInt();
+    long stringsOffset = trailer.getLong();
+    if (trailer.getInt() != MAGIC) {
+      throw new IOException("Binary snapshot is truncated");
+    }
+
+    String[] strings = readStrings(content, stringsOffset, size - TRAILER_SIZE - stringsOffset, stringCount);
+    sink.basePrice(basePrice);
+
+    User[] users = new User[userCount];
+    if (userCount > 0) {
+      ByteBuffer section = content.slice(usersOffset, (long) userCount * userRecordSize);
+      for (int i = 0; i < userCount; i++) {
+        users[i] = readUser(section, i * userRecordSize, userRecordSize, strings);
+        if (users[i] != null) {
+          sink.user(users[i]);
+        }
+      }
+    }
+
+    for (long first = 0; first < rideCount; first += RIDES_PER_WINDOW) {
+      int count = (int) Math.min(RIDES_PER_WINDOW, rideCount - first);
+      ByteBuffer window = content.slice(ridesOffset + first * RIDE_RECORD_SIZE, (long) count * RIDE_RECORD_SIZE);
+      for (int i = 0; i < count; i++) {
+        Ride ride = readRide(window, i * RIDE_RECORD_SIZE, strings, users);
+        if (ride != null) {
+          sink.ride(ride);
+        }
+      }
+    }
+  }
+
+  private static String[] readStrings(Content content, long offset, long length, int count) throws IOException {
+    String[] strings = new String[count];
+    if (count == 0) {
+      return strings;
+    }
+    ByteBuffer section = content.slice(offset, length);
+    byte[] scratch = new byte[256];
+    for (int i = 0; i < count; i++) {
+      int len = section.getInt();
+      if (len > scratch.length) {
+        scratch = new byte[Math.max(len, scratch.length * 2)];
+      }
+      section.get(scratch, 0, len);
+      strings[i] = new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  private static User readUser(ByteBuffer buf, int pos, int recordSize, String[] strings) {
+    byte role = buf.get(pos);
+    String name = string(strings, buf.getInt(pos + 1));
+    String phone = string(strings, buf.getInt(pos + 5));
+    String username = string(strings, buf.getInt(pos + 9));
+    String password = string(strings, buf.getInt(pos + 13));
+    switch (role) {
+      case ROLE_RIDER:
+        return new Rider(name, phone, username, password);
+      case ROLE_DRIVER:
+        Driver driver = new Driver(name, phone, string(strings, buf.getInt(pos + 17)), username, password);
+        driver.setApproved(buf.get(pos + 21) != 0);
+        driver.setOnline(buf.get(pos + 22) != 0);
+        // Saved earnings (pos + 23) are ignored; they are rebuilt from completed rides
+        if (recordSize >= USER_RECORD_SIZE) {
+          driver.setPosition(buf.getDouble(pos + 31), buf.getDouble(pos + 39));
+        }
+        return driver;
+      case ROLE_ADMIN:
+        return new Admin(name, phone, username, password);
+      default:
+        System.out.println("Error parsing user object: unknown role " + role);
+        return null;
+    }
+  }
+
+  private static Ride readRide(ByteBuffer buf, int pos, String[] strings, User[] users) {
+    int riderId = buf.getInt(pos + 36);
+    User rider = riderId >= 0 && riderId < users.length ? users[riderId] : null;
+    if (!(rider instanceof Rider)) {
+      System.out.println("Rider not found for ride: " + string(strings, buf.getInt(pos)));
+      return null;
+    }
+
+    Ride ride = new Ride(string(strings, buf.getInt(pos)),
+        string(strings, buf.getInt(pos + 4)), string(strings, buf.getInt(pos + 8)),
+        buf.getDouble(pos + 12), buf.getDouble(pos + 20), buf.getInt(pos + 28), (Rider) rider);
+    int driverId = buf.getInt(pos + 40);
+    Driver driver = driverId >= 0 && driverId < users.length && users[driverId] instanceof Driver
+        ? (Driver) users[driverId]
+        : null;
+    try {
+      ride.restoreState(RideStatus.parse(string(strings, buf.getInt(pos + 32))), driver);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error parsing ride object: " + e.getMessage());
+      return null;
+    }
+
+    ride.setBookingTime(buf.getLong(pos + 44));
+    long completion = buf.getLong(pos + 52);
+    ride.setCompletionTime(completion != NO_VALUE ? completion : Ride.NO_TIME);
+    ride.setPaymentMethod(string(strings, buf.getInt(pos + 60)));
+    ride.setUpiId(string(strings, buf.getInt(pos + 64)));
+    return ride;
+  }
+
+  private static String string(String[] strings, int id) {
+    return id >= 0 && id < strings.length ? strings[id] : null;
+  }
+}
@@ -0,0 +1,128 @@
+package rapido;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Binary snapshot format - streams fixed-width records, then the string table and trailer
+class BinarySnapshotWriter implements SnapshotWriter {
+  private final DataOutputStream out;
+  private final Map<String, Integer> stringIds = new HashMap<>();
+  private final List<String> strings = new ArrayList<>();
+  private final Map<User, Integer> userIds = new IdentityHashMap<>();
+  private double basePrice;
+  private long position;
+  private long ridesOffset = -1;
+  private long rideCount;
+
+  public BinarySnapshotWriter(OutputStream out) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+    this.out.writeInt(BinarySnapshot.MAGIC);
+    this.out.writeInt(BinarySnapshot.VERSION);
+    position = BinarySnapshot.HEADER_SIZE;
+  }
+
+  @Override
+  public void basePrice(double basePricePerKm) {
+    this.basePrice = basePricePerKm;
+  }
+
+  @Override
+  public void user(User user) throws IOException {
+    if (ridesOffset >= 0) {
+      throw new IOException("Users must be written before rides");
+    }
+    userIds.put(user, userIds.size());
+
+    byte role = user instanceof Driver ? BinarySnapshot.ROLE_DRIVER
+        : user instanceof Admin ? BinarySnapshot.ROLE_ADMIN : BinarySnapshot.ROLE_RIDER;
+    out.writeByte(role);
+    out.writeInt(stringId(user.getName()));
+    out.writeInt(stringId(user.getPhone()));
+    out.writeInt(stringId(user.getUsername()));
+    out.writeInt(stringId(user.getPassword()));
+    if (user instanceof Driver) {
+      Driver driver = (Driver) user;
+      out.writeInt(stringId(driver.getVehicleNo()));
+      out.writeBoolean(driver.isApproved());
+      out.writeBoolean(driver.isOnline());
+      out.writeDouble(driver.getEarnings());
+      out.writeDouble(driver.getLatitude());
+      out.writeDouble(driver.getLongitude());
+    } else {
+      out.writeInt(BinarySnapshot.NO_VALUE);
+      out.writeBoolean(false);
+      out.writeBoolean(false);
+      out.writeDouble(0.0);
+      out.writeDouble(Double.NaN);
+      out.writeDouble(Double.NaN);
+    }
+    position += BinarySnapshot.USER_RECORD_SIZE;
+  }
+
+  @Override
+  public void ride(Ride ride) throws IOException {
+    Integer riderId = userIds.get(ride.getRider());
+    if (riderId == null) {
+      // Rider was removed; the JSON loader would drop this ride as well
+      return;
+    }
+    if (ridesOffset < 0) {
+      ridesOffset = position;
+    }
+    Integer driverId = ride.getDriver() != null ? userIds.get(ride.getDriver()) : null;
+
+    out.writeInt(stringId(ride.getRideId()));
+    out.writeInt(stringId(ride.getPickupLocation()));
+    out.writeInt(stringId(ride.getDropLocation()));
+    out.writeDouble(ride.getDistance());
+    out.writeDouble(ride.getFare());
+    out.writeInt(ride.getEta());
+    out.writeInt(stringId(ride.getStatus().name()));
+    out.writeInt(riderId);
+    out.writeInt(driverId != null ? driverId : BinarySnapshot.NO_VALUE);
+    out.writeLong(ride.getBookingTime());
+    out.writeLong(ride.hasCompletionTime() ? ride.getCompletionTime() : BinarySnapshot.NO_VALUE);
+    out.writeInt(stringId(ride.getPaymentMethod()));
+    out.writeInt(stringId(ride.getUpiId()));
+    position += BinarySnapshot.RIDE_RECORD_SIZE;
+    rideCount++;
+  }
+
+  // Writes the string table and trailer; the underlying stream is flushed and closed
+  @Override
+  public void close() throws IOException {
+    if (ridesOffset < 0) {
+      ridesOffset = position;
+    }
+    long stringsOffset = position;
+    for (String value : strings) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    out.writeDouble(basePrice);
+    out.writeInt(userIds.size());
+    out.writeLong(BinarySnapshot.HEADER_SIZE);
+    out.writeLong(rideCount);
+    out.writeLong(ridesOffset);
+    out.writeInt(strings.size());
+    out.writeLong(stringsOffset);
+    out.writeInt(BinarySnapshot.MAGIC);
+    out.close();
+  }
+
+  private int stringId(String value) {
+    if (value == null) {
+      return BinarySnapshot.NO_VALUE;
+    }
+    Integer id = stringIds.get(value);
+    if (id == null) {
+      id = strings.size();
+      stringIds.put(value, id);
+      strings.add(value);
+    }
+    return id;
+  }
+}
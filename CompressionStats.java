@@ -0,0 +1,98 @@
+package rapido;
+
+import java.io.*;
+
+// Compression stats - bytes before and after compression and the time taken, reported as ratio and throughput
+//
+// Counts come from the counting streams below or, for data compressed in pieces on several threads, from add().
+class CompressionStats {
+  private final long started;
+  private long rawBytes;
+  private long storedBytes;
+  private long elapsedNanos;
+
+  public CompressionStats() {
+    this.started = System.nanoTime();
+  }
+
+  public synchronized void add(long raw, long stored) {
+    rawBytes += raw;
+    storedBytes += stored;
+  }
+
+  // Stops the clock; throughput is measured up to here
+  public synchronized void finish() {
+    elapsedNanos = System.nanoTime() - started;
+  }
+
+  public synchronized long getRawBytes() {
+    return rawBytes;
+  }
+
+  public synchronized long getStoredBytes() {
+    return storedBytes;
+  }
+
+  // Uncompressed size over compressed size
+  public synchronized double getRatio() {
+    return storedBytes > 0 ? (double) rawBytes / storedBytes : 0;
+  }
+
+  // Uncompressed megabytes handled per second
+  public synchronized double getMegabytesPerSecond() {
+    return elapsedNanos > 0 ? rawBytes / 1e6 / (elapsedNanos / 1e9) : 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%.1f MB as %.1f MB on disk (%.1fx) at %.0f MB/s",
+        getRawBytes() / 1e6, getStoredBytes() / 1e6, getRatio(), getMegabytesPerSecond());
+  }
+
+  // Counts what is written to out as uncompressed (raw) or compressed (stored) bytes
+  public OutputStream counting(OutputStream out, boolean raw) {
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        count(1, raw);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count(len, raw);
+      }
+    };
+  }
+
+  public InputStream counting(InputStream in, boolean raw) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+          count(1, raw);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+          count(read, raw);
+        }
+        return read;
+      }
+    };
+  }
+
+  private void count(long bytes, boolean raw) {
+    if (raw) {
+      add(bytes, 0);
+    } else {
+      add(0, bytes);
+    }
+  }
+}
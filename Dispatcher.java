@@ -0,0 +1,378 @@
+package rapido;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Dispatcher - collects REQUESTED rides over a short window and assigns each batch to nearby available drivers
+class Dispatcher implements Closeable {
+  // GREEDY: closest pair first, OPTIMAL: minimum total pickup distance (Hungarian method)
+  enum Algorithm {
+    GREEDY, OPTIMAL
+  }
+
+  // Nearest available drivers considered per request; keeps the cost matrix small
+  private static final int CANDIDATES_PER_REQUEST = 8;
+  // Requests solved per window; the rest wait for the next one
+  private static final int MAX_BATCH = 256;
+  // Cost of a pair that is not a candidate - never chosen over a real one
+  private static final double NO_MATCH = 1e9;
+
+  private final RapidoSystem system;
+  private final Algorithm algorithm;
+  private final long windowMs;
+  private final Queue<Request> incoming;
+  // Completed when a submitted ride leaves the dispatcher, matched here or taken by hand; awaitAssignment waits on it
+  private final Map<Ride, CompletableFuture<Void>> settled;
+  // Requests carried over between windows; only touched on the scheduler thread
+  private final List<Request> pending;
+  private final ScheduledExecutorService scheduler;
+  private final long startNanos;
+
+  private final AtomicLong matches;
+  private final AtomicLong batches;
+  private final AtomicLong totalLatencyNanos;
+  private final LongAccumulator maxLatencyNanos;
+  private volatile long lastBatchNanos;
+  private volatile int waiting;
+
+  private static class Request {
+    final Ride ride;
+    final double latitude;
+    final double longitude;
+    final long submittedNanos;
+    final CompletableFuture<Void> done;
+
+    Request(Ride ride, CompletableFuture<Void> done) {
+      double[] pickup = Geo.locate(ride.getPickupLocation());
+      this.ride = ride;
+      this.latitude = pickup[0];
+      this.longitude = pickup[1];
+      this.submittedNanos = System.nanoTime();
+      this.done = done;
+    }
+  }
+
+  public Dispatcher(RapidoSystem system, Algorithm algorithm, long windowMs) {
+    this.system = system;
+    this.algorithm = algorithm;
+    this.windowMs = windowMs;
+    this.incoming = new ConcurrentLinkedQueue<>();
+    this.settled = new ConcurrentHashMap<>();
+    this.pending = new ArrayList<>();
+    this.matches = new AtomicLong();
+    this.batches = new AtomicLong();
+    this.totalLatencyNanos = new AtomicLong();
+    this.maxLatencyNanos = new LongAccumulator(Math::max, 0);
+    this.startNanos = System.nanoTime();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "rapido-dispatcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleWithFixedDelay(this::runBatch, windowMs, windowMs, TimeUnit.MILLISECONDS);
+  }
+
+  // Reads rapido.dispatchWindowMs and rapido.dispatchAlgorithm (greedy|optimal)
+  public static Dispatcher fromSystemProperties(RapidoSystem system) {
+    Algorithm algorithm = Algorithm.OPTIMAL;
+    String name = System.getProperty("rapido.dispatchAlgorithm");
+    if (name != null) {
+      try {
+        algorithm = Algorithm.valueOf(name.trim().toUpperCase());
+      } catch (IllegalArgumentException e) {
+        System.out.println("Unknown dispatch algorithm '" + name + "', using OPTIMAL");
+      }
+    }
+    long windowMs = Long.getLong("rapido.dispatchWindowMs", 500L);
+    return new Dispatcher(system, algorithm, Math.max(1, windowMs));
+  }
+
+  // Queues a REQUESTED ride for the next window
+  public void submit(Ride ride) {
+    incoming.add(new Request(ride, settled.computeIfAbsent(ride, r -> new CompletableFuture<>())));
+  }
+
+  // Waits until the ride has a driver or the timeout passes; returns whether it was assigned. Each waiter waits on
+  // its own ride, so a batch wakes only the riders it matched.
+  public boolean awaitAssignment(Ride ride, long timeoutMs) {
+    CompletableFuture<Void> done = settled.get(ride);
+    if (done != null) {
+      try {
+        done.get(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException | TimeoutException e) {
+        // Still unmatched
+      }
+    }
+    return ride.getDriver() != null;
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdown();
+    try {
+      scheduler.awaitTermination(windowMs * 2 + 1000, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Nothing will be matched any more
+    for (CompletableFuture<Void> done : settled.values()) {
+      done.complete(null);
+    }
+    settled.clear();
+  }
+
+  // Statistics
+  public Algorithm getAlgorithm() {
+    return algorithm;
+  }
+
+  public long getWindowMs() {
+    return windowMs;
+  }
+
+  public long getMatchCount() {
+    return matches.get();
+  }
+
+  public long getBatchCount() {
+    return batches.get();
+  }
+
+  public int getPendingCount() {
+    return waiting + incoming.size();
+  }
+
+  public double getMatchesPerSecond() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    return seconds > 0 ? matches.get() / seconds : 0;
+  }
+
+  // Time from submit() to assignment
+  public double getAverageLatencyMs() {
+    long count = matches.get();
+    return count > 0 ? totalLatencyNanos.get() / 1e6 / count : 0;
+  }
+
+  public double getMaxLatencyMs() {
+    return maxLatencyNanos.get() / 1e6;
+  }
+
+  // Time spent solving the most recent batch
+  public double getLastBatchMs() {
+    return lastBatchNanos / 1e6;
+  }
+
+  private void runBatch() {
+    try {
+      Request request;
+      while ((request = incoming.poll()) != null) {
+        pending.add(request);
+      }
+      if (pending.isEmpty()) {
+        return;
+      }
+
+      long start = System.nanoTime();
+      // Rides accepted by hand or no longer open since they were queued
+      pending.removeIf(r -> {
+        if (r.ride.getStatus() == RideStatus.REQUESTED && r.ride.getDriver() == null) {
+          return false;
+        }
+        settle(r);
+        return true;
+      });
+      List<Request> batch = new ArrayList<>(pending.subList(0, Math.min(MAX_BATCH, pending.size())));
+      List<Driver> drivers = new ArrayList<>();
+      double[][] cost = buildCosts(batch, drivers);
+      if (!drivers.isEmpty()) {
+        int[] choice = algorithm == Algorithm.GREEDY ? solveGreedy(cost) : solveOptimal(cost);
+        long now = System.nanoTime();
+        // Accepted as one ride batch, so the whole window shares a single log commit
+        RideBatch accepts = new RideBatch();
+        List<Request> chosen = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+          if (choice[i] >= 0) {
+            accepts.accept(batch.get(i).ride.getRideId(), drivers.get(choice[i]).getUsername());
+            chosen.add(batch.get(i));
+          }
+        }
+        // A driver taken by another session since the costs were built just fails here; the request retries next window
+        List<RideBatch.Result> results = accepts.size() > 0 ? system.applyBatch(accepts)
+            : Collections.<RideBatch.Result>emptyList();
+        for (RideBatch.Result result : results) {
+          if (result.isOk()) {
+            Request r = chosen.get(result.getIndex());
+            long latency = now - r.submittedNanos;
+            totalLatencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulate(latency);
+            matches.incrementAndGet();
+            pending.remove(r);
+            settle(r);
+          }
+        }
+      }
+      waiting = pending.size();
+      batches.incrementAndGet();
+      lastBatchNanos = System.nanoTime() - start;
+    } catch (RuntimeException e) {
+      // A failed batch must not stop the scheduler; its requests are retried next window
+      System.out.println("Error dispatching rides: " + e.getMessage());
+    }
+  }
+
+  private void settle(Request request) {
+    settled.remove(request.ride, request.done);
+    request.done.complete(null);
+  }
+
+  // Rows are requests, columns the union of each request's nearest available drivers
+  private double[][] buildCosts(List<Request> batch, List<Driver> drivers) {
+    Map<Driver, Integer> columns = new HashMap<>();
+    List<List<DriverLocator.Match>> nearby = new ArrayList<>();
+    for (Request r : batch) {
+      List<DriverLocator.Match> candidates = system.getNearestAvailable(r.latitude, r.longitude, CANDIDATES_PER_REQUEST);
+      for (DriverLocator.Match match : candidates) {
+        if (!columns.containsKey(match.getDriver())) {
+          columns.put(match.getDriver(), drivers.size());
+          drivers.add(match.getDriver());
+        }
+      }
+      nearby.add(candidates);
+    }
+
+    double[][] cost = new double[batch.size()][drivers.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      Arrays.fill(cost[i], NO_MATCH);
+      for (DriverLocator.Match match : nearby.get(i)) {
+        cost[i][columns.get(match.getDriver())] = match.getDistanceKm();
+      }
+    }
+    return cost;
+  }
+
+  // Takes the globally closest remaining request/driver pair until none are left
+  static int[] solveGreedy(double[][] cost) {
+    int rows = cost.length;
+    int cols = rows > 0 ? cost[0].length : 0;
+    List<int[]> pairs = new ArrayList<>();
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < cols; j++) {
+        if (cost[i][j] < NO_MATCH) {
+          pairs.add(new int[] { i, j });
+        }
+      }
+    }
+    pairs.sort((a, b) -> Double.compare(cost[a[0]][a[1]], cost[b[0]][b[1]]));
+
+    int[] choice = new int[rows];
+    Arrays.fill(choice, -1);
+    boolean[] taken = new boolean[cols];
+    for (int[] pair : pairs) {
+      if (choice[pair[0]] < 0 && !taken[pair[1]]) {
+        choice[pair[0]] = pair[1];
+        taken[pair[1]] = true;
+      }
+    }
+    return choice;
+  }
+
+  // Minimum-cost assignment; rows left unmatched (or only matchable at NO_MATCH) get -1
+  static int[] solveOptimal(double[][] cost) {
+    int rows = cost.length;
+    int cols = rows > 0 ? cost[0].length : 0;
+    int[] choice = new int[rows];
+    Arrays.fill(choice, -1);
+    if (rows == 0 || cols == 0) {
+      return choice;
+    }
+
+    if (rows <= cols) {
+      int[] rowToCol = hungarian(cost);
+      for (int i = 0; i < rows; i++) {
+        choice[i] = rowToCol[i];
+      }
+    } else {
+      // More requests than drivers: solve the transpose so every driver gets its best request
+      double[][] transposed = new double[cols][rows];
+      for (int i = 0; i < rows; i++) {
+        for (int j = 0; j < cols; j++) {
+          transposed[j][i] = cost[i][j];
+        }
+      }
+      int[] colToRow = hungarian(transposed);
+      for (int j = 0; j < cols; j++) {
+        choice[colToRow[j]] = j;
+      }
+    }
+    for (int i = 0; i < rows; i++) {
+      if (choice[i] >= 0 && cost[i][choice[i]] >= NO_MATCH) {
+        choice[i] = -1;
+      }
+    }
+    return choice;
+  }
+
+  // Hungarian method with potentials, O(rows^2 * cols); needs rows <= cols and returns a column per row
+  private static int[] hungarian(double[][] cost) {
+    int n = cost.length;
+    int m = cost[0].length;
+    double[] u = new double[n + 1];
+    double[] v = new double[m + 1];
+    int[] p = new int[m + 1];
+    int[] way = new int[m + 1];
+    double[] minv = new double[m + 1];
+    boolean[] used = new boolean[m + 1];
+
+    for (int i = 1; i <= n; i++) {
+      p[0] = i;
+      int j0 = 0;
+      Arrays.fill(minv, Double.POSITIVE_INFINITY);
+      Arrays.fill(used, false);
+      do {
+        used[j0] = true;
+        int i0 = p[j0];
+        int j1 = 0;
+        double delta = Double.POSITIVE_INFINITY;
+        for (int j = 1; j <= m; j++) {
+          if (!used[j]) {
+            double reduced = cost[i0 - 1][j - 1] - u[i0] - v[j];
+            if (reduced < minv[j]) {
+              minv[j] = reduced;
+              way[j] = j0;
+            }
+            if (minv[j] < delta) {
+              delta = minv[j];
+              j1 = j;
+            }
+          }
+        }
+        for (int j = 0; j <= m; j++) {
+          if (used[j]) {
+            u[p[j]] += delta;
+            v[j] -= delta;
+          } else {
+            minv[j] -= delta;
+          }
+        }
+        j0 = j1;
+      } while (p[j0] != 0);
+      do {
+        int j1 = way[j0];
+        p[j0] = p[j1];
+        j0 = j1;
+      } while (j0 != 0);
+    }
+
+    int[] rowToCol = new int[n];
+    for (int j = 1; j <= m; j++) {
+      if (p[j] != 0) {
+        rowToCol[p[j] - 1] = j - 1;
+      }
+    }
+    return rowToCol;
+  }
+}
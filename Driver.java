@@ -2,22 +2,33 @@ package rapido;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 // Driver class
 class Driver extends User implements Serializable {
   private String vehicleNo;
-  private boolean approved;
-  private boolean online;
-  private double earnings;
+  private volatile boolean approved;
+  private volatile boolean online;
+  // Paise, credited only through the earnings ledger
+  private final LongAdder earningsPaise;
   private List<Ride> assignedRides;
+  // Ongoing ride, claimed by compare-and-set so a driver is never given two at once
+  private final AtomicReference<Ride> activeRide;
+  private volatile double latitude;
+  private volatile double longitude;
 
   public Driver(String name, String phone, String vehicleNo, String username, String password) {
     super(name, phone, username, password, "DRIVER");
     this.vehicleNo = vehicleNo;
     this.approved = false;
     this.online = false;
-    this.earnings = 0.0;
-    this.assignedRides = new ArrayList<>();
+    this.earningsPaise = new LongAdder();
+    this.assignedRides = new CopyOnWriteArrayList<>();
+    this.activeRide = new AtomicReference<>();
+    this.latitude = Double.NaN;
+    this.longitude = Double.NaN;
   }
 
   // Getters and setters
@@ -34,13 +45,33 @@ class Driver extends User implements Serializable {
   }
 
   public double getEarnings() {
-    return earnings;
+    return earningsPaise.sum() / 100.0;
+  }
+
+  public long getEarningsPaise() {
+    return earningsPaise.sum();
   }
 
   public List<Ride> getAssignedRides() {
     return assignedRides;
   }
 
+  public Ride getActiveRide() {
+    return activeRide.get();
+  }
+
+  public double getLatitude() {
+    return latitude;
+  }
+
+  public double getLongitude() {
+    return longitude;
+  }
+
+  public boolean hasPosition() {
+    return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+  }
+
   public void setApproved(boolean approved) {
     this.approved = approved;
   }
@@ -49,14 +80,38 @@ class Driver extends User implements Serializable {
     this.online = online;
   }
 
-  public void addEarnings(double amount) {
-    this.earnings += amount;
+  public void setPosition(double latitude, double longitude) {
+    this.latitude = latitude;
+    this.longitude = longitude;
+  }
+
+  // Safe to call from several sessions at once
+  public void addEarnings(long paise) {
+    this.earningsPaise.add(paise);
+  }
+
+  // Returns false if the driver is already on another ride
+  public boolean claim(Ride ride) {
+    return activeRide.compareAndSet(null, ride) || activeRide.get() == ride;
+  }
+
+  public void release(Ride ride) {
+    activeRide.compareAndSet(ride, null);
   }
 
   public void addAssignedRide(Ride ride) {
     this.assignedRides.add(ride);
   }
 
+  // Rides loaded at startup, added with one copy rather than one per ride
+  public void addAssignedRides(Collection<Ride> rides) {
+    this.assignedRides.addAll(rides);
+  }
+
+  public void removeAssignedRides(Collection<Ride> archived) {
+    this.assignedRides.removeAll(archived);
+  }
+
   @Override
   public void showDashboard(Scanner scanner, RapidoSystem system) {
     system.showDriverMenu(scanner, this);
@@ -65,6 +120,6 @@ class Driver extends User implements Serializable {
   @Override
   public String toString() {
     return String.format("Name: %s, Phone: %s, Vehicle: %s, Approved: %s, Online: %s, Earnings: ₹%.2f",
-        name, phone, vehicleNo, approved ? "Yes" : "No", online ? "Yes" : "No", earnings);
+        name, phone, vehicleNo, approved ? "Yes" : "No", online ? "Yes" : "No", getEarnings());
   }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+// Spatial index of approved, online drivers not on a ride, on a fixed lat/lon grid; queries share a read lock
+class DriverLocator {
+  // Roughly 550 m per cell north-south
+  private static final double CELL_DEGREES = 0.005;
+  private static final double KM_PER_DEGREE = 111.2;
+  // Searches never look further than this many rings of cells (about 250 km)
+  private static final int MAX_RINGS = 450;
+
+  private final Map<Long, Set<Driver>> cells;
+  private final Map<Driver, Long> driverCells;
+  private final ReadWriteLock lock;
+
+  // Driver with its distance from the query point
+  static class Match {
+    final Driver driver;
+    final double distanceKm;
+
+    Match(Driver driver, double distanceKm) {
+      this.driver = driver;
+      this.distanceKm = distanceKm;
+    }
+
+    public Driver getDriver() {
+      return driver;
+    }
+
+    public double getDistanceKm() {
+      return distanceKm;
+    }
+  }
+
+  public DriverLocator() {
+    this.cells = new HashMap<>();
+    this.driverCells = new HashMap<>();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  // Places the driver in its current cell if approved, online, located and free; removes it otherwise. Decided under
+  // the lock, so whichever update runs last sees the driver's latest state.
+  public void update(Driver driver) {
+    lock.writeLock().lock();
+    try {
+      if (!driver.isApproved() || !driver.isOnline() || !driver.hasPosition() || driver.getActiveRide() != null) {
+        removeLocked(driver);
+        return;
+      }
+      long cell = cellKey(cellX(driver.getLongitude()), cellY(driver.getLatitude()));
+      Long previous = driverCells.put(driver, cell);
+      if (previous != null) {
+        if (previous == cell) {
+          return;
+        }
+        removeFromCell(previous, driver);
+      }
+      Set<Driver> members = cells.get(cell);
+      if (members == null) {
+        members = new LinkedHashSet<>();
+        cells.put(cell, members);
+      }
+      members.add(driver);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void remove(Driver driver) {
+    lock.writeLock().lock();
+    try {
+      removeLocked(driver);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void removeLocked(Driver driver) {
+    Long cell = driverCells.remove(driver);
+    if (cell != null) {
+      removeFromCell(cell, driver);
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return driverCells.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public List<Driver> getDrivers() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(driverCells.keySet());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Up to k drivers nearest to the point, closest first
+  public List<Match> nearest(double lat, double lon, int k) {
+    lock.readLock().lock();
+    try {
+      return nearestLocked(lat, lon, k);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Match> nearestLocked(double lat, double lon, int k) {
+    List<Match> result = new ArrayList<>();
+    if (k <= 0 || driverCells.isEmpty()) {
+      return result;
+    }
+    // Max-heap on distance holding the best k seen so far
+    PriorityQueue<Match> best = new PriorityQueue<>(k, (a, b) -> Double.compare(b.distanceKm, a.distanceKm));
+    int cx = cellX(lon);
+    int cy = cellY(lat);
+    double ringKm = ringWidthKm(lat);
+    double lonScale = Math.cos(Math.toRadians(lat));
+    int seen = 0;
+    for (int ring = 0; ring <= MAX_RINGS && seen < driverCells.size(); ring++) {
+      // Every driver in rings further out is at least this far away
+      if (best.size() == k && best.peek().distanceKm <= (ring - 1) * ringKm) {
+        break;
+      }
+      for (Set<Driver> members : ring(cx, cy, ring)) {
+        for (Driver driver : members) {
+          seen++;
+          double distance = distanceKm(lat, lon, lonScale, driver);
+          if (best.size() < k) {
+            best.add(new Match(driver, distance));
+          } else if (distance < best.peek().distanceKm) {
+            best.poll();
+            best.add(new Match(driver, distance));
+          }
+        }
+      }
+    }
+    result.addAll(best);
+    result.sort((a, b) -> Double.compare(a.distanceKm, b.distanceKm));
+    return result;
+  }
+
+  // All drivers within radiusKm of the point, closest first
+  public List<Match> withinRadius(double lat, double lon, double radiusKm) {
+    lock.readLock().lock();
+    try {
+      return withinRadiusLocked(lat, lon, radiusKm);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Match> withinRadiusLocked(double lat, double lon, double radiusKm) {
+    List<Match> result = new ArrayList<>();
+    int cx = cellX(lon);
+    int cy = cellY(lat);
+    int rings = (int) Math.min(MAX_RINGS, Math.ceil(radiusKm / ringWidthKm(lat)) + 1);
+    double lonScale = Math.cos(Math.toRadians(lat));
+    for (int ring = 0; ring <= rings; ring++) {
+      for (Set<Driver> members : ring(cx, cy, ring)) {
+        for (Driver driver : members) {
+          double distance = distanceKm(lat, lon, lonScale, driver);
+          if (distance <= radiusKm) {
+            result.add(new Match(driver, distance));
+          }
+        }
+      }
+    }
+    result.sort((a, b) -> Double.compare(a.distanceKm, b.distanceKm));
+    return result;
+  }
+
+  // Occupied cells on the square ring at Chebyshev distance r from (cx, cy)
+  private List<Set<Driver>> ring(int cx, int cy, int r) {
+    List<Set<Driver>> found = new ArrayList<>();
+    if (r == 0) {
+      addCell(found, cx, cy);
+      return found;
+    }
+    for (int x = cx - r; x <= cx + r; x++) {
+      addCell(found, x, cy - r);
+      addCell(found, x, cy + r);
+    }
+    for (int y = cy - r + 1; y <= cy + r - 1; y++) {
+      addCell(found, cx - r, y);
+      addCell(found, cx + r, y);
+    }
+    return found;
+  }
+
+  private void addCell(List<Set<Driver>> found, int x, int y) {
+    Set<Driver> members = cells.get(cellKey(x, y));
+    if (members != null) {
+      found.add(members);
+    }
+  }
+
+  private void removeFromCell(long cell, Driver driver) {
+    Set<Driver> members = cells.get(cell);
+    if (members != null) {
+      members.remove(driver);
+      if (members.isEmpty()) {
+        cells.remove(cell);
+      }
+    }
+  }
+
+  // Equirectangular distance - within a city it is as accurate as haversine and far cheaper
+  private static double distanceKm(double lat, double lon, double lonScale, Driver driver) {
+    double dy = driver.getLatitude() - lat;
+    double dx = (driver.getLongitude() - lon) * lonScale;
+    return Math.sqrt(dx * dx + dy * dy) * KM_PER_DEGREE;
+  }
+
+  // Narrowest width of one ring of cells at this latitude (east-west cells shrink away from the equator)
+  private static double ringWidthKm(double lat) {
+    return CELL_DEGREES * KM_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(lat)));
+  }
+
+  private static int cellX(double lon) {
+    return (int) Math.floor(lon / CELL_DEGREES);
+  }
+
+  private static int cellY(double lat) {
+    return (int) Math.floor(lat / CELL_DEGREES);
+  }
+
+  private static long cellKey(int x, int y) {
+    return ((long) y << 32) | (x & 0xffffffffL);
+  }
+}
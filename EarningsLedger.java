@@ -0,0 +1,128 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Earnings ledger - an in-memory index of completed rides' fares in integer paise, derived from the rides
+//
+// The ledger is not a record of its own and is not saved: the rides are the source of truth, and the ledger is
+// rebuilt from completed rides as data is loaded and the log replayed. An entry is never changed once written,
+// but entries of archived rides are dropped, with their earnings kept in the drivers' totals and carried over
+// from the archive's own on the next load. Each driver's running total is a LongAdder on the driver, and each
+// driver's live entries are also kept in a skip list ordered by completion time, so payouts for a date range walk
+// only the entries inside it.
+class EarningsLedger {
+  static final class Entry {
+    private final Driver driver;
+    private final Ride ride;
+    private final long paise;
+    private final long completedAt;
+    // Orders entries completed in the same millisecond
+    private final long sequence;
+
+    private Entry(Driver driver, Ride ride, long paise, long completedAt, long sequence) {
+      this.driver = driver;
+      this.ride = ride;
+      this.paise = paise;
+      this.completedAt = completedAt;
+      this.sequence = sequence;
+    }
+
+    public Driver getDriver() {
+      return driver;
+    }
+
+    public Ride getRide() {
+      return ride;
+    }
+
+    public long getPaise() {
+      return paise;
+    }
+
+    public long getCompletedAt() {
+      return completedAt;
+    }
+  }
+
+  private static final Comparator<Entry> BY_TIME = (a, b) -> {
+    int byTime = Long.compare(a.completedAt, b.completedAt);
+    return byTime != 0 ? byTime : Long.compare(a.sequence, b.sequence);
+  };
+
+  private final Map<Ride, Entry> byRide;
+  private final Map<Driver, NavigableSet<Entry>> byDriver;
+  private final AtomicLong sequence;
+
+  public EarningsLedger() {
+    this.byRide = new ConcurrentHashMap<>();
+    this.byDriver = new ConcurrentHashMap<>();
+    this.sequence = new AtomicLong();
+  }
+
+  public static long toPaise(double rupees) {
+    return Math.round(rupees * 100);
+  }
+
+  // Credits the ride's driver with its fare; a ride is only ever credited once. Returns false if it already was,
+  // or if the ride has no driver.
+  public boolean record(Ride ride) {
+    Driver driver = ride.getDriver();
+    if (driver == null) {
+      return false;
+    }
+    long completedAt = ride.hasCompletionTime() ? ride.getCompletionTime() : ride.getBookingTime();
+    Entry entry = new Entry(driver, ride, toPaise(ride.getFare()), completedAt, sequence.getAndIncrement());
+    if (byRide.putIfAbsent(ride, entry) != null) {
+      return false;
+    }
+    byDriver.computeIfAbsent(driver, d -> new ConcurrentSkipListSet<>(BY_TIME)).add(entry);
+    driver.addEarnings(entry.paise);
+    return true;
+  }
+
+  // Forgets the ride's entry as it moves to the archive; the driver keeps the earnings
+  public void archived(Ride ride) {
+    Entry entry = byRide.remove(ride);
+    if (entry != null) {
+      NavigableSet<Entry> entries = byDriver.get(entry.driver);
+      if (entries != null) {
+        entries.remove(entry);
+      }
+    }
+  }
+
+  // Credits earnings of rides that were archived before this run
+  public void carryOver(Driver driver, long paise) {
+    driver.addEarnings(paise);
+  }
+
+  public Entry find(Ride ride) {
+    return byRide.get(ride);
+  }
+
+  // Entries completed in [fromMillis, toMillis), oldest first
+  public List<Entry> getEntries(Driver driver, long fromMillis, long toMillis) {
+    NavigableSet<Entry> entries = byDriver.get(driver);
+    if (entries == null || fromMillis >= toMillis) {
+      return new ArrayList<>();
+    }
+    Entry from = new Entry(driver, null, 0, fromMillis, Long.MIN_VALUE);
+    Entry to = new Entry(driver, null, 0, toMillis, Long.MIN_VALUE);
+    return new ArrayList<>(entries.subSet(from, true, to, false));
+  }
+
+  // Paise earned by the driver for rides completed in [fromMillis, toMillis)
+  public long getPayout(Driver driver, long fromMillis, long toMillis) {
+    long paise = 0;
+    for (Entry entry : getEntries(driver, fromMillis, toMillis)) {
+      paise += entry.paise;
+    }
+    return paise;
+  }
+
+  public int size() {
+    return byRide.size();
+  }
+}
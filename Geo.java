@@ -0,0 +1,42 @@
+package rapido;
+
+// Geo helpers - great-circle distance and a stand-in geocoder for typed place names
+class Geo {
+  private static final double EARTH_RADIUS_KM = 6371.0;
+
+  // Service area used by locate(): roughly Bengaluru city limits
+  private static final double AREA_MIN_LAT = 12.85;
+  private static final double AREA_MAX_LAT = 13.10;
+  private static final double AREA_MIN_LON = 77.45;
+  private static final double AREA_MAX_LON = 77.75;
+
+  private Geo() {
+  }
+
+  public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+            * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+  }
+
+  // There is no geocoding service here, so a place name maps to a stable point inside the service area
+  public static double[] locate(String place) {
+    String key = place == null ? "" : place.trim().toLowerCase();
+    long hash = 1125899906842597L;
+    for (int i = 0; i < key.length(); i++) {
+      hash = 31 * hash + key.charAt(i);
+    }
+    hash ^= (hash >>> 33);
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= (hash >>> 33);
+    double latFraction = (hash >>> 40) / (double) (1L << 24);
+    double lonFraction = ((hash >>> 16) & 0xFFFFFF) / (double) (1L << 24);
+    return new double[] {
+        AREA_MIN_LAT + latFraction * (AREA_MAX_LAT - AREA_MIN_LAT),
+        AREA_MIN_LON + lonFraction * (AREA_MAX_LON - AREA_MIN_LON)
+    };
+  }
+}
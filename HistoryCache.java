@@ -0,0 +1,79 @@
+package rapido;
+
+import java.util.*;
+import java.util.function.*;
+
+// History cache - riders' and drivers' archived rides, read back on first use and bounded by the rides it holds
+//
+// Least recently used histories are dropped once the total passes the bound; a history bigger than the whole bound
+// is handed out but not kept. Archiving more of a user's rides invalidates their entry, and a history read while
+// that happened is not kept either, since it may be missing the new rides.
+class HistoryCache {
+  private final long maxRides;
+  // Least recently used first
+  private final LinkedHashMap<User, List<Ride>> histories;
+  private long rides;
+  private long generation;
+  private long hits;
+  private long misses;
+
+  public HistoryCache(long maxRides) {
+    this.maxRides = maxRides;
+    this.histories = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  // Reads rapido.historyCacheRides
+  public static HistoryCache fromSystemProperties() {
+    return new HistoryCache(Math.max(0, Long.getLong("rapido.historyCacheRides", 100_000L)));
+  }
+
+  // The user's cached history, or one read with hydrate; callers must not change the list
+  public List<Ride> get(User user, Function<User, List<Ride>> hydrate) {
+    long readAt;
+    synchronized (this) {
+      List<Ride> history = histories.get(user);
+      if (history != null) {
+        hits++;
+        return history;
+      }
+      misses++;
+      readAt = generation;
+    }
+    // Read outside the lock so one slow history does not hold up the others
+    List<Ride> history = Collections.unmodifiableList(hydrate.apply(user));
+    synchronized (this) {
+      if (readAt == generation && history.size() <= maxRides) {
+        List<Ride> replaced = histories.put(user, history);
+        rides += history.size() - (replaced != null ? replaced.size() : 0);
+        Iterator<List<Ride>> eldest = histories.values().iterator();
+        while (rides > maxRides && eldest.hasNext()) {
+          rides -= eldest.next().size();
+          eldest.remove();
+        }
+      }
+    }
+    return history;
+  }
+
+  public synchronized void invalidate(Collection<? extends User> users) {
+    generation++;
+    for (User user : users) {
+      List<Ride> removed = histories.remove(user);
+      if (removed != null) {
+        rides -= removed.size();
+      }
+    }
+  }
+
+  public synchronized long getRides() {
+    return rides;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+}
@@ -0,0 +1,262 @@
+package rapido;
+
+import java.io.*;
+import java.util.*;
+
+// Streaming JSON tokenizer - reads one value at a time from a Reader
+class JsonReader implements Closeable {
+  private static final int BUFFER_SIZE = 16 * 1024;
+
+  private final Reader in;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int pos;
+  private int limit;
+  private int line = 1;
+  private final StringBuilder scratch = new StringBuilder();
+
+  public JsonReader(Reader in) {
+    this.in = in;
+  }
+
+  // Returns true when only whitespace is left in the input
+  public boolean isEmpty() throws IOException {
+    return peekChar() == -1;
+  }
+
+  public void beginObject() throws IOException {
+    expect('{');
+  }
+
+  public void endObject() throws IOException {
+    expect('}');
+  }
+
+  public void beginArray() throws IOException {
+    expect('[');
+  }
+
+  public void endArray() throws IOException {
+    expect(']');
+  }
+
+  // Returns true if the current object or array has another element, consuming the separating comma
+  public boolean hasNext() throws IOException {
+    int c = peekChar();
+    if (c == ',') {
+      pos++;
+      c = peekChar();
+    }
+    return c != '}' && c != ']' && c != -1;
+  }
+
+  public String nextName() throws IOException {
+    if (peekChar() != '"') {
+      throw syntaxError("Expected field name");
+    }
+    pos++;
+    String name = readString();
+    expect(':');
+    return name;
+  }
+
+  // Reads a string, number or literal value as text; JSON null is returned as null
+  public String nextValue() throws IOException {
+    int c = peekChar();
+    if (c == '"') {
+      pos++;
+      return readString();
+    }
+    if (c == '{' || c == '[' || c == -1) {
+      throw syntaxError("Expected a scalar value");
+    }
+    String literal = readLiteral();
+    return literal.equals("null") ? null : literal;
+  }
+
+  // Reads one flat object into a field map; nested objects and arrays are skipped
+  public Map<String, String> nextObject() throws IOException {
+    Map<String, String> fields = new HashMap<>();
+    beginObject();
+    while (hasNext()) {
+      String name = nextName();
+      int c = peekChar();
+      if (c == '{' || c == '[') {
+        skipValue();
+      } else {
+        fields.put(name, nextValue());
+      }
+    }
+    endObject();
+    return fields;
+  }
+
+  public void skipValue() throws IOException {
+    int c = peekChar();
+    if (c != '{' && c != '[') {
+      nextValue();
+      return;
+    }
+    int depth = 0;
+    do {
+      c = peekChar();
+      if (c == -1) {
+        throw syntaxError("Unterminated value");
+      }
+      pos++;
+      if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      } else if (c == '"') {
+        readString();
+      }
+    } while (depth > 0);
+  }
+
+  // Copies the next object or array to out as written, checking only strings and nesting; a fast way to find
+  // where a record ends without building it
+  public void copyValue(StringBuilder out) throws IOException {
+    int c = peekChar();
+    if (c != '{' && c != '[') {
+      throw syntaxError("Expected an object or array");
+    }
+    int depth = 0;
+    boolean inString = false;
+    boolean escaped = false;
+    do {
+      if (pos == limit && !fill()) {
+        throw syntaxError("Unterminated value");
+      }
+      int start = pos;
+      while (pos < limit) {
+        char ch = buffer[pos++];
+        if (ch == '\n') {
+          line++;
+        } else if (inString) {
+          if (escaped) {
+            escaped = false;
+          } else if (ch == '\\') {
+            escaped = true;
+          } else if (ch == '"') {
+            inString = false;
+          }
+        } else if (ch == '"') {
+          inString = true;
+        } else if (ch == '{' || ch == '[') {
+          depth++;
+        } else if ((ch == '}' || ch == ']') && --depth == 0) {
+          break;
+        }
+      }
+      out.append(buffer, start, pos - start);
+    } while (depth > 0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private String readString() throws IOException {
+    scratch.setLength(0);
+    while (true) {
+      if (pos == limit && !fill()) {
+        throw syntaxError("Unterminated string");
+      }
+      char c = buffer[pos++];
+      if (c == '"') {
+        return scratch.toString();
+      }
+      if (c == '\\') {
+        scratch.append(readEscape());
+      } else {
+        if (c == '\n') {
+          line++;
+        }
+        scratch.append(c);
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    if (pos == limit && !fill()) {
+      throw syntaxError("Unterminated escape sequence");
+    }
+    char c = buffer[pos++];
+    switch (c) {
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'u':
+        int code = 0;
+        for (int i = 0; i < 4; i++) {
+          if (pos == limit && !fill()) {
+            throw syntaxError("Unterminated escape sequence");
+          }
+          int digit = Character.digit(buffer[pos++], 16);
+          if (digit < 0) {
+            throw syntaxError("Invalid unicode escape");
+          }
+          code = (code << 4) | digit;
+        }
+        return (char) code;
+      default:
+        return c; // \" \\ \/
+    }
+  }
+
+  private String readLiteral() throws IOException {
+    scratch.setLength(0);
+    while (pos < limit || fill()) {
+      char c = buffer[pos];
+      if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+        break;
+      }
+      scratch.append(c);
+      pos++;
+    }
+    return scratch.toString();
+  }
+
+  private void expect(char expected) throws IOException {
+    if (peekChar() != expected) {
+      throw syntaxError("Expected '" + expected + "'");
+    }
+    pos++;
+  }
+
+  // Skips whitespace and returns the next character without consuming it, or -1 at end of input
+  private int peekChar() throws IOException {
+    while (pos < limit || fill()) {
+      char c = buffer[pos];
+      if (c == '\n') {
+        line++;
+      } else if (c != ' ' && c != '\t' && c != '\r') {
+        return c;
+      }
+      pos++;
+    }
+    return -1;
+  }
+
+  private boolean fill() throws IOException {
+    int read = in.read(buffer, 0, buffer.length);
+    if (read <= 0) {
+      return false;
+    }
+    pos = 0;
+    limit = read;
+    return true;
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException(message + " at line " + line);
+  }
+}
@@ -0,0 +1,250 @@
+package rapido;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// JSON snapshot format - streaming reader for rapido_data.json
+//
+// Rides are parsed in parallel: the reading thread only finds where each ride object ends and copies its text into
+// chunks, which a fork-join pool parses while the next ones are read. Parsed chunks reach the sink in file order,
+// so what gets loaded is the same as reading one ride at a time.
+class JsonSnapshot {
+  private static final int CHUNK_RIDES = 2048;
+  // Chunks read ahead per parsing thread; bounds the rides held beyond what the sink has taken
+  private static final int CHUNKS_PER_THREAD = 2;
+
+  private JsonSnapshot() {
+  }
+
+  // Threads parsing rides: rapido.loadThreads, or one per core; 1 parses on the reading thread
+  public static int loadThreads() {
+    int threads = Integer.getInteger("rapido.loadThreads", Runtime.getRuntime().availableProcessors());
+    return Math.max(1, threads);
+  }
+
+  public static void read(Reader in, SnapshotSink sink) throws IOException {
+    read(in, sink, loadThreads());
+  }
+
+  // Streams the file section by section, holding at most a few chunks of rides in memory at a time
+  public static void read(Reader in, SnapshotSink sink, int threads) throws IOException {
+    JsonReader reader = new JsonReader(in);
+    if (reader.isEmpty()) {
+      return;
+    }
+
+    // Users read so far, so rides can be linked back to their rider and driver
+    UserDirectory users = new UserDirectory();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String section = reader.nextName();
+      if (section.equals("basePricePerKm")) {
+        sink.basePrice(Double.parseDouble(reader.nextValue()));
+      } else if (section.equals("users")) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          User user = parseUser(reader.nextObject());
+          if (user != null && users.add(user)) {
+            sink.user(user);
+          }
+        }
+        reader.endArray();
+      } else if (section.equals("rides")) {
+        reader.beginArray();
+        if (threads > 1) {
+          readRidesInParallel(reader, users, sink, threads);
+        } else {
+          while (reader.hasNext()) {
+            Ride ride = parseRide(reader.nextObject(), users);
+            if (ride != null) {
+              sink.ride(ride);
+            }
+          }
+        }
+        reader.endArray();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private static void readRidesInParallel(JsonReader reader, UserDirectory users, SnapshotSink sink, int threads)
+      throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      Deque<Future<List<Ride>>> parsing = new ArrayDeque<>();
+      StringBuilder chunk = new StringBuilder();
+      int count = 0;
+      while (reader.hasNext()) {
+        if (count > 0) {
+          chunk.append(',');
+        }
+        reader.copyValue(chunk);
+        if (++count == CHUNK_RIDES) {
+          parsing.add(pool.submit(parseChunk(chunk.toString(), users)));
+          chunk.setLength(0);
+          count = 0;
+          if (parsing.size() >= threads * CHUNKS_PER_THREAD) {
+            deliver(parsing.poll(), sink);
+          }
+        }
+      }
+      if (count > 0) {
+        parsing.add(pool.submit(parseChunk(chunk.toString(), users)));
+      }
+      while (!parsing.isEmpty()) {
+        deliver(parsing.poll(), sink);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // Each chunk gets its own timestamp codec, since chunks on different days would keep replacing a shared one's
+  // cached day
+  private static Callable<List<Ride>> parseChunk(String chunk, UserDirectory users) {
+    return () -> {
+      TimestampCodec codec = new TimestampCodec(TimestampCodec.local().getZone());
+      List<Ride> rides = new ArrayList<>(CHUNK_RIDES);
+      JsonReader reader = new JsonReader(new StringReader(chunk));
+      while (reader.hasNext()) {
+        Ride ride = parseRide(reader.nextObject(), users, codec);
+        if (ride != null) {
+          rides.add(ride);
+        }
+      }
+      return rides;
+    };
+  }
+
+  private static void deliver(Future<List<Ride>> parsed, SnapshotSink sink) throws IOException {
+    List<Ride> rides;
+    try {
+      rides = parsed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading rides");
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+    for (Ride ride : rides) {
+      sink.ride(ride);
+    }
+  }
+
+  public static User parseUser(Map<String, String> fields) {
+    try {
+      String role = fields.get("role");
+      String name = fields.get("name");
+      String phone = fields.get("phone");
+      String username = fields.get("username");
+      String password = fields.get("password");
+
+      if ("RIDER".equals(role)) {
+        Rider rider = new Rider(name, phone, username, password);
+        return rider;
+      } else if ("DRIVER".equals(role)) {
+        String vehicleNo = fields.get("vehicleNo");
+        boolean approved = Boolean.parseBoolean(fields.get("approved"));
+        boolean online = Boolean.parseBoolean(fields.get("online"));
+
+        Driver driver = new Driver(name, phone, vehicleNo, username, password);
+        driver.setApproved(approved);
+        driver.setOnline(online);
+        // The saved "earnings" figure is not trusted; it is rebuilt from completed rides
+        if (fields.get("lat") != null && fields.get("lon") != null) {
+          driver.setPosition(Double.parseDouble(fields.get("lat")), Double.parseDouble(fields.get("lon")));
+        }
+
+        return driver;
+      } else if ("ADMIN".equals(role)) {
+        return new Admin(name, phone, username, password);
+      }
+    } catch (Exception e) {
+      System.out.println("Error parsing user object: " + e.getMessage());
+    }
+    return null;
+  }
+
+  // Builds the ride with its rider and driver resolved; the caller links it into their histories
+  public static Ride parseRide(Map<String, String> fields, UserDirectory users) {
+    return parseRide(fields, users, TimestampCodec.local());
+  }
+
+  public static Ride parseRide(Map<String, String> fields, UserDirectory users, TimestampCodec codec) {
+    try {
+      String pickupLocation = fields.get("pickupLocation");
+      String dropLocation = fields.get("dropLocation");
+      double distance = Double.parseDouble(fields.get("distance"));
+      double fare = Double.parseDouble(fields.get("fare"));
+      int eta = Integer.parseInt(fields.get("eta"));
+      RideStatus status = RideStatus.parse(fields.get("status"));
+
+      // Find rider by username
+      String riderUsername = fields.get("riderUsername");
+      Rider rider = users.findRider(riderUsername);
+
+      if (rider == null) {
+        System.out.println("Rider not found for ride: " + riderUsername);
+        return null;
+      }
+
+      String rideId = fields.get("rideId");
+      Ride ride = rideId != null
+          ? new Ride(rideId, pickupLocation, dropLocation, distance, fare, eta, rider)
+          : new Ride(pickupLocation, dropLocation, distance, fare, eta, rider);
+
+      // Find and set driver if exists
+      Driver driver = null;
+      String driverUsername = fields.get("driverUsername");
+      if (driverUsername != null && !driverUsername.equals("null")) {
+        driver = users.findDriver(driverUsername);
+      }
+      ride.restoreState(status, driver);
+
+      // Restore timestamps if present
+      long bookingTime = parseTime(fields.get("bookingTime"), codec);
+      if (bookingTime != Ride.NO_TIME) {
+        ride.setBookingTime(bookingTime);
+      }
+      ride.setCompletionTime(parseTime(fields.get("completionTime"), codec));
+
+      // Set payment info
+      ride.setPaymentMethod(nullIfMissing(fields.get("paymentMethod")));
+      ride.setUpiId(nullIfMissing(fields.get("upiId")));
+      return ride;
+
+    } catch (Exception e) {
+      System.out.println("Error parsing ride object: " + e.getMessage());
+    }
+    return null;
+  }
+
+  // Older snapshots write missing values as the string "null"
+  private static String nullIfMissing(String value) {
+    return value == null || value.equals("null") ? null : value;
+  }
+
+  // Local "yyyy-MM-dd HH:mm:ss" to epoch millis; Ride.NO_TIME if missing or unreadable
+  public static long parseTime(String value) {
+    return parseTime(value, TimestampCodec.local());
+  }
+
+  private static long parseTime(String value, TimestampCodec codec) {
+    if (value == null || value.equals("null")) {
+      return Ride.NO_TIME;
+    }
+    try {
+      return codec.parse(value);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error parsing date: " + e.getMessage());
+      return Ride.NO_TIME;
+    }
+  }
+
+  public static String formatTime(long millis) {
+    return millis != Ride.NO_TIME ? TimestampCodec.local().format(millis) : null;
+  }
+}
@@ -0,0 +1,152 @@
+package rapido;
+
+import java.io.*;
+
+// JSON snapshot format - streams users and rides into human-readable rapido_data.json
+class JsonSnapshotWriter implements SnapshotWriter {
+  // Between two rides in the rides array
+  static final String RIDE_SEPARATOR = ",\n";
+
+  private final Writer out;
+  private int usersWritten;
+  private long ridesWritten;
+  private boolean usersClosed;
+  private boolean ridesOpened;
+
+  public JsonSnapshotWriter(Writer out) throws IOException {
+    this.out = out;
+    out.write("{\n");
+  }
+
+  @Override
+  public void basePrice(double basePricePerKm) throws IOException {
+    out.write("  \"basePricePerKm\": " + basePricePerKm + ",\n");
+  }
+
+  @Override
+  public void user(User user) throws IOException {
+    if (usersWritten == 0) {
+      out.write("  \"users\": [\n");
+    } else {
+      out.write(",\n");
+    }
+    out.write(userToJson(user));
+    usersWritten++;
+  }
+
+  @Override
+  public void ride(Ride ride) throws IOException {
+    beginRides();
+    if (ridesWritten > 0) {
+      out.write(RIDE_SEPARATOR);
+    }
+    StringBuilder json = new StringBuilder(512);
+    appendRide(json, ride, TimestampCodec.local());
+    out.write(json.toString());
+    ridesWritten++;
+  }
+
+  // Ends the users section and opens the rides array. Rides can then also be written elsewhere with appendRide and
+  // RIDE_SEPARATOR, and counted with ridesWrittenElsewhere so close() ends the array right.
+  void beginRides() throws IOException {
+    closeUsers();
+    if (!ridesOpened) {
+      out.write("  \"rides\": [\n");
+      ridesOpened = true;
+    }
+  }
+
+  void ridesWrittenElsewhere(long count) {
+    ridesWritten += count;
+  }
+
+  // Finishes the document; the underlying writer is flushed and closed
+  @Override
+  public void close() throws IOException {
+    beginRides();
+    if (ridesWritten > 0) {
+      out.write("\n");
+    }
+    out.write("  ]\n");
+    out.write("}");
+    out.close();
+  }
+
+  private void closeUsers() throws IOException {
+    if (usersClosed) {
+      return;
+    }
+    if (usersWritten == 0) {
+      out.write("  \"users\": [\n");
+    } else {
+      out.write("\n");
+    }
+    out.write("  ],\n");
+    usersClosed = true;
+  }
+
+  private String userToJson(User user) {
+    StringBuilder json = new StringBuilder();
+    json.append("    {\n");
+    json.append("      \"name\": \"").append(escapeJson(user.getName())).append("\",\n");
+    json.append("      \"phone\": \"").append(escapeJson(user.getPhone())).append("\",\n");
+    json.append("      \"username\": \"").append(escapeJson(user.getUsername())).append("\",\n");
+    json.append("      \"password\": \"").append(escapeJson(user.getPassword())).append("\",\n");
+    json.append("      \"role\": \"").append(user.getRole()).append("\"");
+
+    if (user instanceof Driver) {
+      Driver driver = (Driver) user;
+      json.append(",\n");
+      json.append("      \"vehicleNo\": \"").append(escapeJson(driver.getVehicleNo())).append("\",\n");
+      json.append("      \"approved\": ").append(driver.isApproved()).append(",\n");
+      json.append("      \"online\": ").append(driver.isOnline()).append(",\n");
+      json.append("      \"earnings\": ").append(driver.getEarnings());
+      if (driver.hasPosition()) {
+        json.append(",\n");
+        json.append("      \"lat\": ").append(driver.getLatitude()).append(",\n");
+        json.append("      \"lon\": ").append(driver.getLongitude());
+      }
+    }
+
+    json.append("\n    }");
+    return json.toString();
+  }
+
+  static void appendRide(StringBuilder json, Ride ride, TimestampCodec codec) {
+    json.append("    {\n");
+    json.append("      \"rideId\": \"").append(ride.getRideId()).append("\",\n");
+    json.append("      \"pickupLocation\": \"").append(escapeJson(ride.getPickupLocation())).append("\",\n");
+    json.append("      \"dropLocation\": \"").append(escapeJson(ride.getDropLocation())).append("\",\n");
+    json.append("      \"distance\": ").append(ride.getDistance()).append(",\n");
+    json.append("      \"fare\": ").append(ride.getFare()).append(",\n");
+    json.append("      \"eta\": ").append(ride.getEta()).append(",\n");
+    json.append("      \"status\": \"").append(ride.getStatus()).append("\",\n");
+    json.append("      \"riderUsername\": \"").append(escapeJson(ride.getRider().getUsername())).append("\",\n");
+    json.append("      \"driverUsername\": \"")
+        .append(ride.getDriver() != null ? escapeJson(ride.getDriver().getUsername()) : "null").append("\",\n");
+    codec.appendTo(json.append("      \"bookingTime\": \""), ride.getBookingTime()).append("\",\n");
+    json.append("      \"completionTime\": \"");
+    if (ride.hasCompletionTime()) {
+      codec.appendTo(json, ride.getCompletionTime());
+    } else {
+      json.append("null");
+    }
+    json.append("\",\n");
+    json.append("      \"paymentMethod\": \"")
+        .append(ride.getPaymentMethod() != null ? escapeJson(ride.getPaymentMethod()) : "null").append("\",\n");
+    json.append("      \"upiId\": \"").append(ride.getUpiId() != null ? escapeJson(ride.getUpiId()) : "null")
+        .append("\"\n");
+    json.append("    }");
+  }
+
+  static String escapeJson(String str) {
+    if (str == null) {
+      return "";
+    }
+    return str.replace("\\", "\\\\")
+        .replace("\"", "\\\"")
+        .replace("\n", "\\n")
+        .replace("\r", "\\r")
+        .replace("\t", "\\t");
+  }
+}
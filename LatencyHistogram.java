@@ -0,0 +1,83 @@
+package rapido;
+
+import java.util.concurrent.atomic.*;
+
+// Latency histogram - log-linear buckets (about 3% wide) filled lock-free from any number of threads
+//
+// Values below 64 ns get a bucket each; above that every power of two is split into 32 buckets, so any
+// percentile is reported within ~3% of the true value in fixed memory, however many samples are recorded.
+class LatencyHistogram {
+  private static final int LINEAR = 64;
+  private static final int SUB_BUCKETS = 32;
+  private static final int BUCKETS = LINEAR + 58 * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final LongAdder total;
+  private final LongAdder sumNanos;
+  private final LongAccumulator maxNanos;
+
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.total = new LongAdder();
+    this.sumNanos = new LongAdder();
+    this.maxNanos = new LongAccumulator(Math::max, 0);
+  }
+
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(bucket(value));
+    total.increment();
+    sumNanos.add(value);
+    maxNanos.accumulate(value);
+  }
+
+  private static int bucket(long value) {
+    if (value < LINEAR) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+    return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  // Smallest value that lands in the bucket
+  private static long lowerBound(int bucket) {
+    if (bucket < LINEAR) {
+      return bucket;
+    }
+    int shift = (bucket - LINEAR) / SUB_BUCKETS + 1;
+    long mantissa = (bucket - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+    return mantissa << shift;
+  }
+
+  public long getCount() {
+    return total.sum();
+  }
+
+  public double getMeanNanos() {
+    long count = total.sum();
+    return count > 0 ? (double) sumNanos.sum() / count : 0;
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  // Value at the quantile (0.5 for p50, 0.999 for p999), reported as the middle of its bucket
+  public long getPercentileNanos(double quantile) {
+    long count = total.sum();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        long low = lowerBound(i);
+        long high = i + 1 < BUCKETS ? lowerBound(i + 1) : low;
+        return Math.min((low + high) / 2, maxNanos.get());
+      }
+    }
+    return maxNanos.get();
+  }
+}
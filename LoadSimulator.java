@@ -0,0 +1,357 @@
+package rapido;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Load simulator - drives riders and drivers through the whole ride lifecycle against RapidoSystem, no menus
+//
+// Usage: java rapido.LoadSimulator [riders=2000] [drivers=500] [threads=8] [duration=1800] [arrivalRate=1.0]
+//                                  [thinkMs=20000] [cashShare=0.3] [speedup=60]
+//
+// Every participant is signed up and every driver approved and put online, then bookings arrive as a Poisson
+// stream (arrivalRate per simulated second) for duration simulated seconds. Drivers poll for open requests after
+// an exponential think time, accept one, drive the trip and are paid, then think again. Simulated time runs
+// speedup times faster than the wall clock; only the waits are simulated, every call into the system is real and
+// is timed. Data goes to a temporary file that is deleted afterwards unless -Drapido.dataFile is given.
+public class LoadSimulator {
+  private static final String USAGE = "Usage: java rapido.LoadSimulator [riders=2000] [drivers=500] [threads=8]"
+      + " [duration=1800] [arrivalRate=1.0] [thinkMs=20000] [cashShare=0.3] [speedup=60]";
+  // Trips take the pickup ETA plus the distance at this average city speed
+  private static final double TRIP_SPEED_KMPH = 25.0;
+  // Places riders book between and drivers go online at
+  private static final int AREAS = 200;
+  // Drivers pick among the oldest open requests, so they race each other for the same rides
+  private static final int REQUESTS_CONSIDERED = 8;
+  // Real time allowed for trips still under way when bookings stop
+  private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+  enum Operation {
+    SIGNUP, APPROVE, ONLINE, BOOK, REQUESTS, ACCEPT, COMPLETE, PAY
+  }
+
+  // Simulated time: starts at zero and runs speedup times faster than the wall clock
+  static final class SimClock {
+    private final double speedup;
+    private final long startNanos;
+
+    SimClock(double speedup) {
+      this.speedup = speedup;
+      this.startNanos = System.nanoTime();
+    }
+
+    long nowMillis() {
+      return (long) ((System.nanoTime() - startNanos) / 1_000_000.0 * speedup);
+    }
+
+    // Wall-clock nanoseconds to wait for a simulated delay
+    long toRealNanos(long simMillis) {
+      return (long) (simMillis * 1_000_000.0 / speedup);
+    }
+  }
+
+  private final int riderCount;
+  private final int driverCount;
+  private final int threads;
+  private final long durationMillis;
+  private final double arrivalsPerSecond;
+  private final long thinkMillis;
+  private final double cashShare;
+  private final SimClock clock;
+
+  private final Map<Operation, LatencyHistogram> latencies;
+  private final Queue<Rider> idleRiders;
+  private final AtomicLong bookings;
+  private final AtomicLong lostRaces;
+  private final AtomicLong failedFinishes;
+  private final AtomicLong turnedAway;
+  private final AtomicLong tripsUnderWay;
+  private volatile boolean closing;
+
+  private RapidoSystem system;
+  private ScheduledExecutorService scheduler;
+
+  public LoadSimulator(Map<String, String> config) {
+    this.riderCount = Integer.parseInt(config.getOrDefault("riders", "2000"));
+    this.driverCount = Integer.parseInt(config.getOrDefault("drivers", "500"));
+    this.threads = Integer.parseInt(config.getOrDefault("threads", "8"));
+    this.durationMillis = Long.parseLong(config.getOrDefault("duration", "1800")) * 1000;
+    this.arrivalsPerSecond = Double.parseDouble(config.getOrDefault("arrivalRate", "1.0"));
+    this.thinkMillis = Long.parseLong(config.getOrDefault("thinkMs", "20000"));
+    this.cashShare = Double.parseDouble(config.getOrDefault("cashShare", "0.3"));
+    this.clock = new SimClock(Double.parseDouble(config.getOrDefault("speedup", "60")));
+    if (riderCount < 1 || driverCount < 1 || threads < 1 || arrivalsPerSecond <= 0 || clock.speedup <= 0) {
+      throw new IllegalArgumentException("riders, drivers, threads, arrivalRate and speedup must be positive");
+    }
+
+    this.latencies = new EnumMap<>(Operation.class);
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new LatencyHistogram());
+    }
+    this.idleRiders = new ConcurrentLinkedQueue<>();
+    this.bookings = new AtomicLong();
+    this.lostRaces = new AtomicLong();
+    this.failedFinishes = new AtomicLong();
+    this.turnedAway = new AtomicLong();
+    this.tripsUnderWay = new AtomicLong();
+  }
+
+  public static void main(String[] args) {
+    Map<String, String> config = new HashMap<>();
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (eq <= 0) {
+        System.out.println(USAGE);
+        return;
+      }
+      config.put(arg.substring(0, eq), arg.substring(eq + 1));
+    }
+
+    Path tempDir = null;
+    try {
+      if (System.getProperty("rapido.dataFile") == null) {
+        tempDir = Files.createTempDirectory("rapido-sim");
+        System.setProperty("rapido.dataFile", tempDir.resolve("rapido_sim.json").toString());
+      }
+      new LoadSimulator(config).run();
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error in simulator settings: " + e.getMessage());
+      System.out.println(USAGE);
+    } catch (IOException | InterruptedException e) {
+      System.out.println("Error running simulation: " + e.getMessage());
+    } finally {
+      deleteQuietly(tempDir);
+    }
+  }
+
+  public void run() throws InterruptedException {
+    system = new RapidoSystem();
+
+    long setupStart = System.nanoTime();
+    List<Driver> drivers = setUp();
+    double setupSeconds = (System.nanoTime() - setupStart) / 1e9;
+
+    scheduler = Executors.newScheduledThreadPool(threads);
+    long runStart = System.nanoTime();
+    long simStart = clock.nowMillis();
+    for (Driver driver : drivers) {
+      scheduleLook(driver);
+    }
+    scheduleArrival(simStart + durationMillis);
+
+    // Let bookings arrive for the simulated duration, then let trips already under way finish
+    Thread.sleep(clock.toRealNanos(durationMillis) / 1_000_000);
+    closing = true;
+    long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+    while (tripsUnderWay.get() > 0 && System.currentTimeMillis() < drainDeadline) {
+      Thread.sleep(10);
+    }
+    scheduler.shutdownNow();
+    scheduler.awaitTermination(5, TimeUnit.SECONDS);
+    double runSeconds = (System.nanoTime() - runStart) / 1e9;
+    long simSeconds = (clock.nowMillis() - simStart) / 1000;
+
+    report(setupSeconds, runSeconds, simSeconds);
+    system.shutdown();
+  }
+
+  // Signs up every rider and driver, approves the drivers and puts them online, spread over the worker threads
+  private List<Driver> setUp() throws InterruptedException {
+    List<Driver> drivers = new ArrayList<>();
+    for (int i = 0; i < driverCount; i++) {
+      drivers.add(new Driver("Sim Driver " + i, phone(8, i), "SIM" + i, "simdriver" + i, "pw"));
+    }
+    List<Rider> riders = new ArrayList<>();
+    for (int i = 0; i < riderCount; i++) {
+      riders.add(new Rider("Sim Rider " + i, phone(9, i), "simrider" + i, "pw"));
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (Rider rider : riders) {
+      tasks.add(() -> {
+        timed(Operation.SIGNUP, () -> system.registerUser(rider));
+        return null;
+      });
+    }
+    for (Driver driver : drivers) {
+      tasks.add(() -> {
+        timed(Operation.SIGNUP, () -> system.registerUser(driver));
+        timed(Operation.APPROVE, () -> system.approveDriver(driver.getUsername()));
+        timed(Operation.ONLINE, () -> system.setDriverOnline(driver, true, randomArea()));
+        return null;
+      });
+    }
+    Collections.shuffle(tasks);
+    workers.invokeAll(tasks);
+    workers.shutdown();
+
+    Collections.shuffle(riders);
+    idleRiders.addAll(riders);
+    return drivers;
+  }
+
+  private static String phone(int prefix, int i) {
+    return String.format("%d%09d", prefix, i);
+  }
+
+  private static String randomArea() {
+    return "Sim Area " + ThreadLocalRandom.current().nextInt(AREAS);
+  }
+
+  // Exponentially distributed delay with the given mean, as between events of a Poisson process
+  private static long exponential(double meanMillis) {
+    return (long) (-meanMillis * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+  }
+
+  private void after(long simMillis, Runnable task) {
+    try {
+      scheduler.schedule(() -> {
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          System.out.println("Error in simulated step: " + e.getMessage());
+        }
+      }, clock.toRealNanos(simMillis), TimeUnit.NANOSECONDS);
+    } catch (RejectedExecutionException e) {
+      // The run is over
+    }
+  }
+
+  // Each arrival schedules the next, so bookings form a Poisson stream until the end time
+  private void scheduleArrival(long endMillis) {
+    long delay = exponential(1000 / arrivalsPerSecond);
+    if (clock.nowMillis() + delay >= endMillis) {
+      return;
+    }
+    after(delay, () -> {
+      scheduleArrival(endMillis);
+      book();
+    });
+  }
+
+  // A rider with no ride in progress requests one; arrivals when every rider is busy are turned away
+  private void book() {
+    Rider rider = idleRiders.poll();
+    if (rider == null) {
+      turnedAway.incrementAndGet();
+      return;
+    }
+    String pickup = randomArea();
+    String drop = randomArea();
+    timed(Operation.BOOK, () -> system.createRide(system.quoteRide(rider, pickup, drop)));
+    bookings.incrementAndGet();
+  }
+
+  private void scheduleLook(Driver driver) {
+    after(exponential(thinkMillis), () -> look(driver));
+  }
+
+  // The driver checks open requests and tries to accept one of the oldest; losing a race means thinking again
+  private void look(Driver driver) {
+    if (closing) {
+      return;
+    }
+    List<Ride> requests = timed(Operation.REQUESTS, () -> system.getRideRequests(driver));
+    if (requests.isEmpty()) {
+      scheduleLook(driver);
+      return;
+    }
+    Ride ride = requests.get(ThreadLocalRandom.current().nextInt(Math.min(REQUESTS_CONSIDERED, requests.size())));
+    if (!timed(Operation.ACCEPT, () -> system.acceptRide(ride, driver))) {
+      lostRaces.incrementAndGet();
+      scheduleLook(driver);
+      return;
+    }
+    tripsUnderWay.incrementAndGet();
+    long tripMillis = (long) ((ride.getEta() + ride.getDistance() / TRIP_SPEED_KMPH * 60) * 60_000);
+    after(tripMillis, () -> endTrip(ride, driver));
+  }
+
+  // Cash trips are closed by the driver; the rest are closed by the rider paying from their ongoing rides
+  private void endTrip(Ride ride, Driver driver) {
+    Rider rider = ride.getRider();
+    boolean finished;
+    if (ThreadLocalRandom.current().nextDouble() < cashShare) {
+      finished = timed(Operation.COMPLETE, () -> system.finishRide(ride, null, null));
+    } else {
+      finished = timed(Operation.PAY, () -> {
+        for (Ride ongoing : system.getOngoingRides(rider)) {
+          if (ongoing == ride) {
+            return system.finishRide(ongoing, "UPI", rider.getUsername() + "@upi");
+          }
+        }
+        return false;
+      });
+    }
+    if (!finished) {
+      // The ride is left ongoing; the driver and rider still move on so the run keeps its pace
+      failedFinishes.incrementAndGet();
+    }
+    tripsUnderWay.decrementAndGet();
+    idleRiders.add(rider);
+    scheduleLook(driver);
+  }
+
+  private <T> T timed(Operation operation, Callable<T> call) {
+    long start = System.nanoTime();
+    try {
+      return call.call();
+    } catch (Exception e) {
+      throw new IllegalStateException(operation + " failed: " + e.getMessage(), e);
+    } finally {
+      latencies.get(operation).record(System.nanoTime() - start);
+    }
+  }
+
+  private void timed(Operation operation, Runnable call) {
+    timed(operation, () -> {
+      call.run();
+      return null;
+    });
+  }
+
+  private void report(double setupSeconds, double runSeconds, long simSeconds) {
+    RideAnalytics analytics = system.getAnalytics();
+    System.out.printf("%nSimulated %d riders and %d drivers on %d threads: %d s simulated in %.1f s (setup %.1f s)%n",
+        riderCount, driverCount, threads, simSeconds, runSeconds, setupSeconds);
+    System.out.printf("Bookings %d (turned away %d), completed %d, still requested %d, ongoing %d, lost accept races %d,"
+        + " failed finishes %d%n", bookings.get(), turnedAway.get(), analytics.getCount(RideStatus.COMPLETED),
+        analytics.getCount(RideStatus.REQUESTED), analytics.getCount(RideStatus.ONGOING), lostRaces.get(),
+        failedFinishes.get());
+
+    System.out.println();
+    System.out.printf("%-10s %10s %10s %10s %10s %10s %10s %10s%n",
+        "Operation", "Count", "Ops/s", "Mean us", "p50 us", "p99 us", "p999 us", "Max us");
+    for (Operation operation : Operation.values()) {
+      LatencyHistogram histogram = latencies.get(operation);
+      if (histogram.getCount() == 0) {
+        continue;
+      }
+      // Setup operations are timed against the setup phase, the rest against the simulated run
+      boolean setup = operation.ordinal() <= Operation.ONLINE.ordinal();
+      System.out.printf("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+          operation, histogram.getCount(), histogram.getCount() / (setup ? setupSeconds : runSeconds),
+          histogram.getMeanNanos() / 1000.0,
+          histogram.getPercentileNanos(0.50) / 1000.0,
+          histogram.getPercentileNanos(0.99) / 1000.0,
+          histogram.getPercentileNanos(0.999) / 1000.0,
+          histogram.getMaxNanos() / 1000.0);
+    }
+  }
+
+  private static void deleteQuietly(Path dir) {
+    if (dir == null) {
+      return;
+    }
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.toFile().delete();
+  }
+}
@@ -7,12 +7,23 @@ public class Main {
   public static void main(String[] args) {
     try {
       RapidoSystem rapidoSystem = new RapidoSystem();
-      Scanner scanner = new Scanner(System.in);
-      rapidoSystem.showMainMenu(scanner);
-      scanner.close();
+      // -Drapido.serverPort=7070 also serves network sessions; add -Drapido.headless=true to skip the console menu
+      RapidoServer server = RapidoServer.fromSystemProperties(rapidoSystem);
+      if (server != null && Boolean.getBoolean("rapido.headless")) {
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "rapido-server-shutdown"));
+        server.awaitClose();
+      } else {
+        Scanner scanner = new Scanner(System.in);
+        rapidoSystem.showMainMenu(scanner);
+        scanner.close();
+      }
+      if (server != null) {
+        server.close();
+      }
+      rapidoSystem.shutdown();
     } catch (Exception e) {
       System.out.println("An unexpected error occurred: " + e.getMessage());
       e.printStackTrace();
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package rapido;
+
+import java.io.*;
+import java.util.*;
+
+// Mutation class - one typed change record in the write-ahead log
+class Mutation {
+  enum Type {
+    USER_CREATED, USER_REMOVED, DRIVER_APPROVED, DRIVER_STATUS_CHANGED,
+    RIDE_CREATED, RIDE_ACCEPTED, RIDE_COMPLETED, RIDE_CANCELLED, PRICE_CHANGED
+  }
+
+  private final Type type;
+  private final Map<String, String> fields;
+
+  public Mutation(Type type, Map<String, String> fields) {
+    this.type = type;
+    this.fields = fields;
+  }
+
+  public Mutation(Type type) {
+    this(type, new LinkedHashMap<String, String>());
+  }
+
+  // A ride in its current state, with the snapshot's field names; also the record layout of archive segments
+  public static Mutation rideCreated(Ride ride) {
+    return new Mutation(Type.RIDE_CREATED)
+        .with("rideId", ride.getRideId())
+        .with("pickupLocation", ride.getPickupLocation())
+        .with("dropLocation", ride.getDropLocation())
+        .with("distance", ride.getDistance())
+        .with("fare", ride.getFare())
+        .with("eta", ride.getEta())
+        .with("status", ride.getStatus())
+        .with("riderUsername", ride.getRider().getUsername())
+        .with("driverUsername", ride.getDriver() != null ? ride.getDriver().getUsername() : null)
+        .with("bookingTime", JsonSnapshot.formatTime(ride.getBookingTime()))
+        .with("completionTime", JsonSnapshot.formatTime(ride.getCompletionTime()))
+        .with("paymentMethod", ride.getPaymentMethod())
+        .with("upiId", ride.getUpiId());
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public Map<String, String> getFields() {
+    return fields;
+  }
+
+  public String get(String field) {
+    return fields.get(field);
+  }
+
+  public Mutation with(String field, Object value) {
+    fields.put(field, value != null ? value.toString() : null);
+    return this;
+  }
+
+  // Encodes the record as a single JSON line; all values are written as strings
+  public String toJsonLine() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"type\":\"").append(type.name()).append('"');
+    for (Map.Entry<String, String> field : fields.entrySet()) {
+      json.append(",\"").append(field.getKey()).append("\":");
+      if (field.getValue() == null) {
+        json.append("null");
+      } else {
+        json.append('"').append(JsonSnapshotWriter.escapeJson(field.getValue())).append('"');
+      }
+    }
+    json.append('}');
+    return json.toString();
+  }
+
+  public static Mutation parse(String line) throws IOException {
+    try (JsonReader reader = new JsonReader(new StringReader(line))) {
+      Map<String, String> fields = reader.nextObject();
+      String type = fields.remove("type");
+      if (type == null) {
+        throw new IOException("Log record has no type");
+      }
+      try {
+        return new Mutation(Type.valueOf(type), fields);
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Unknown log record type: " + type);
+      }
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package rapido;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.*;
+
+// Append-only write-ahead log - one JSON line per mutation, replayed on top of the last snapshot
+//
+// A log named *.gz is gzip-compressed, one member per time it is opened for appending; every flush ends a deflate
+// block, so after a crash everything flushed can still be inflated. Replay recognises compression by the gzip
+// header, and rewrites a compressed log with a torn end, since a new member cannot follow an unfinished one.
+class MutationLog implements Closeable {
+  private final File file;
+  private final boolean compressed;
+  private FileOutputStream out;
+  private OutputStream buffer;
+  private long recordCount;
+  private CompressionStats replayStats;
+
+  public MutationLog(String fileName) {
+    this.file = new File(fileName);
+    this.compressed = SnapshotFormat.isCompressed(fileName);
+  }
+
+  // Applies every complete record in the log and drops a torn final line left by a crash
+  public long replay(Consumer<Mutation> handler) throws IOException {
+    recordCount = 0;
+    replayStats = null;
+    if (!file.exists()) {
+      return 0;
+    }
+
+    boolean gzipped = SnapshotFormat.hasGzipHeader(file);
+    CompressionStats stats = gzipped ? new CompressionStats() : null;
+    // Records kept when the log is to be rewritten in the other encoding or without a torn compressed end
+    ByteArrayOutputStream kept = gzipped || compressed ? new ByteArrayOutputStream() : null;
+    boolean torn = false;
+    long validLength = 0;
+    long offset = 0;
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    InputStream raw = new FileInputStream(file);
+    try (InputStream in = gzipped
+        ? new BufferedInputStream(stats.counting(new GZIPInputStream(stats.counting(raw, false), 64 * 1024), true))
+        : new BufferedInputStream(raw)) {
+      int b;
+      while ((b = in.read()) != -1) {
+        offset++;
+        if (b != '\n') {
+          line.write(b);
+          continue;
+        }
+        String text = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+        line.reset();
+        if (text.isEmpty()) {
+          validLength = offset;
+          continue;
+        }
+        try {
+          handler.accept(Mutation.parse(text));
+          recordCount++;
+          validLength = offset;
+          if (kept != null) {
+            kept.write((text + "\n").getBytes(StandardCharsets.UTF_8));
+          }
+        } catch (IOException e) {
+          System.out.println("Skipping unreadable log record: " + e.getMessage());
+          validLength = offset;
+        } catch (RuntimeException e) {
+          // A bad field (a number that isn't one, an unknown status) loses this change, not the whole startup
+          System.out.println("Skipping log record that could not be applied: " + e.getMessage());
+          validLength = offset;
+        }
+      }
+    } catch (EOFException | ZipException e) {
+      // A compressed log cut off by a crash ends in an error rather than at the end of the stream; unless the cut
+      // fell inside a record, only the gzip trailer is missing and nothing is lost
+      torn = true;
+    }
+
+    if (gzipped) {
+      stats.finish();
+      replayStats = stats;
+    }
+    if (validLength < offset) {
+      System.out.println("Discarding incomplete log record at end of " + file.getName());
+    }
+    if (gzipped != compressed || gzipped && (torn || validLength < offset)) {
+      PersistenceWriter.replaceAtomically(file, encode(kept.toByteArray()));
+    } else if (validLength < file.length()) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(validLength);
+      }
+    }
+    return recordCount;
+  }
+
+  private byte[] encode(byte[] records) throws IOException {
+    if (!compressed || records.length == 0) {
+      return records;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream gzip = SnapshotFormat.gzip(bytes, false)) {
+      gzip.write(records);
+    }
+    return bytes.toByteArray();
+  }
+
+  // How a compressed log was inflated on the last replay, or null if it was not compressed
+  public CompressionStats getReplayStats() {
+    return replayStats;
+  }
+
+  // Buffers one record; it reaches the disk on the next flush()
+  public void append(Mutation mutation) throws IOException {
+    if (out == null) {
+      out = new FileOutputStream(file, true);
+      buffer = new BufferedOutputStream(compressed ? SnapshotFormat.gzip(out, true) : out, 64 * 1024);
+    }
+    buffer.write((mutation.toJsonLine() + "\n").getBytes(StandardCharsets.UTF_8));
+    recordCount++;
+  }
+
+  // Hands buffered records to the OS; with force they are also fsynced to disk
+  public void flush(boolean force) throws IOException {
+    if (out == null) {
+      return;
+    }
+    buffer.flush();
+    if (force) {
+      out.getChannel().force(false);
+    }
+  }
+
+  // Empties the log once its records are covered by a fresh snapshot
+  public void reset() throws IOException {
+    close();
+    try (FileOutputStream truncate = new FileOutputStream(file, false)) {
+      truncate.getChannel().force(false);
+    }
+    recordCount = 0;
+  }
+
+  public long getRecordCount() {
+    return recordCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (out != null) {
+      flush(true);
+      buffer.close();
+      out = null;
+      buffer = null;
+    }
+  }
+}
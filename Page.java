@@ -0,0 +1,121 @@
+package rapido;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Page class - one page of rides in booking order plus an opaque cursor for the next page
+//
+// A cursor holds the booking time and ID of the last ride handed out, and the next page resumes after that ride,
+// so it stays valid however rides are added to or removed from the listing meanwhile.
+class Page<T> {
+  private static final String CURSOR_PREFIX = "b:";
+
+  private final List<T> items;
+  private final String nextCursor;
+
+  // Where a cursor resumes: the booking time and ID of the last ride handed out
+  private static final class Position {
+    final long bookingTime;
+    final String rideId;
+
+    Position(long bookingTime, String rideId) {
+      this.bookingTime = bookingTime;
+      this.rideId = rideId;
+    }
+
+    // True if the ride comes at or before this position in RideIndex.BOOKING_ORDER
+    boolean covers(Ride ride) {
+      int byTime = Long.compare(ride.getBookingTime(), bookingTime);
+      return byTime != 0 ? byTime < 0 : ride.getRideId().compareTo(rideId) <= 0;
+    }
+  }
+
+  Page(List<T> items, String nextCursor) {
+    this.items = items;
+    this.nextCursor = nextCursor;
+  }
+
+  // Rides after the cursor (from the start if null); the list must be in booking order and allow random access
+  static Page<Ride> of(List<Ride> list, String cursor, int pageSize) {
+    return merged(Collections.singletonList(list), cursor, pageSize);
+  }
+
+  // As above over several lists at once, each in booking order, merged into one listing
+  static Page<Ride> merged(List<List<Ride>> lists, String cursor, int pageSize) {
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+    }
+    Position after = decode(cursor);
+    int[] next = new int[lists.size()];
+    for (int k = 0; k < next.length; k++) {
+      next[k] = after != null ? firstAfter(lists.get(k), after) : 0;
+    }
+    List<Ride> items = new ArrayList<>(pageSize);
+    while (true) {
+      int first = -1;
+      for (int k = 0; k < next.length; k++) {
+        List<Ride> list = lists.get(k);
+        if (next[k] < list.size() && (first < 0
+            || RideIndex.BOOKING_ORDER.compare(list.get(next[k]), lists.get(first).get(next[first])) < 0)) {
+          first = k;
+        }
+      }
+      if (first < 0) {
+        return new Page<>(items, null);
+      }
+      if (items.size() == pageSize) {
+        return new Page<>(items, encode(items.get(items.size() - 1)));
+      }
+      items.add(lists.get(first).get(next[first]++));
+    }
+  }
+
+  // Index of the first ride booked after the position
+  private static int firstAfter(List<Ride> list, Position after) {
+    int low = 0;
+    int high = list.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (after.covers(list.get(middle))) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  public List<T> getItems() {
+    return items;
+  }
+
+  // Null on the last page
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  public boolean hasNext() {
+    return nextCursor != null;
+  }
+
+  private static String encode(Ride last) {
+    byte[] raw = (CURSOR_PREFIX + last.getBookingTime() + ":" + last.getRideId()).getBytes(StandardCharsets.UTF_8);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+  }
+
+  private static Position decode(String cursor) {
+    if (cursor == null || cursor.isEmpty()) {
+      return null;
+    }
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int colon = raw.indexOf(':', CURSOR_PREFIX.length());
+      if (raw.startsWith(CURSOR_PREFIX) && colon > 0 && colon < raw.length() - 1) {
+        return new Position(Long.parseLong(raw.substring(CURSOR_PREFIX.length(), colon)), raw.substring(colon + 1));
+      }
+    } catch (IllegalArgumentException e) {
+      // Not base64 or not a number - reported below
+    }
+    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+  }
+}
@@ -0,0 +1,388 @@
+package rapido;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Background persistence thread - group-commits log records and writes snapshots atomically
+//
+// A snapshot is written to a temp file by the thread that takes it, while its state is held still; this thread
+// then fsyncs it, renames it over the snapshot file and empties the log, in order with the log records.
+class PersistenceWriter implements Closeable {
+  // Writes a full snapshot to the temp file's channel, without closing it
+  interface SnapshotContent {
+    void writeTo(FileChannel channel) throws IOException;
+  }
+
+  // SYNC: caller waits for fsync, GROUP: fsync every groupCommitMs, ASYNC: OS-buffered only
+  enum Durability {
+    SYNC, GROUP, ASYNC
+  }
+
+  private static final Object SHUTDOWN = new Object();
+
+  private final File snapshotFile;
+  private final MutationLog log;
+  private final Durability durability;
+  private final long groupCommitMs;
+  private final BlockingQueue<Object> queue;
+  private final Thread thread;
+  private final Thread shutdownHook;
+  private volatile boolean closed;
+  // Its temp file is reused by the next snapshot once it has been renamed
+  private Snapshot lastSnapshot;
+
+  // Full snapshot written to temp, or with a null channel a marker that forces everything before it to disk
+  private static class Snapshot {
+    final File temp;
+    final FileChannel channel;
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    Snapshot(File temp, FileChannel channel) {
+      this.temp = temp;
+      this.channel = channel;
+    }
+  }
+
+  private static class Record {
+    final Mutation mutation;
+    final CompletableFuture<Void> done;
+
+    Record(Mutation mutation, CompletableFuture<Void> done) {
+      this.mutation = mutation;
+      this.done = done;
+    }
+  }
+
+  // log may be null, in which case only snapshots are written and the log file is left alone
+  public PersistenceWriter(String snapshotFile, MutationLog log, Durability durability, long groupCommitMs) {
+    this.snapshotFile = new File(snapshotFile);
+    this.log = log;
+    this.durability = durability;
+    this.groupCommitMs = groupCommitMs;
+    this.queue = new LinkedBlockingQueue<>();
+    this.thread = new Thread(this::run, "rapido-persistence");
+    this.thread.setDaemon(true);
+    this.thread.start();
+    // Removed again by close(), so writers opened and closed in one JVM do not pile up hooks
+    this.shutdownHook = new Thread(this::close, "rapido-persistence-shutdown");
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  // Reads rapido.durability (sync|group|async) and rapido.groupCommitMs
+  public static PersistenceWriter fromSystemProperties(String snapshotFile, MutationLog log) {
+    Durability durability = Durability.GROUP;
+    String mode = System.getProperty("rapido.durability");
+    if (mode != null) {
+      try {
+        durability = Durability.valueOf(mode.trim().toUpperCase());
+      } catch (IllegalArgumentException e) {
+        System.out.println("Unknown durability mode '" + mode + "', using GROUP");
+      }
+    }
+    long groupCommitMs = Long.getLong("rapido.groupCommitMs", 50L);
+    return new PersistenceWriter(snapshotFile, log, durability, Math.max(1, groupCommitMs));
+  }
+
+  public Durability getDurability() {
+    return durability;
+  }
+
+  // Queues a log record; in SYNC mode returns only once it is on disk, and false if it could not be written
+  public boolean commit(Mutation mutation) {
+    return commit(mutation, true);
+  }
+
+  // With await false the record is only queued, even in SYNC mode; flush() then waits for a whole batch at once
+  public boolean commit(Mutation mutation, boolean await) {
+    return await(enqueue(mutation, await));
+  }
+
+  // Queues a log record and returns what to pass to await(), or null if there is nothing to wait for. Records go
+  // to the log in the order they are queued, so a caller can queue under a lock and wait once it has let go.
+  public CompletableFuture<Void> enqueue(Mutation mutation, boolean await) {
+    if (closed) {
+      throw new IllegalStateException("Persistence writer is closed");
+    }
+    if (log == null) {
+      return null;
+    }
+    CompletableFuture<Void> done = await && durability == Durability.SYNC ? new CompletableFuture<Void>() : null;
+    if (!offer(new Record(mutation, done))) {
+      throw new IllegalStateException("Persistence writer is closed");
+    }
+    return done;
+  }
+
+  // Queues the item unless the writer closed meanwhile. An item racing close() is either taken by the persistence
+  // thread, which settles it, or taken back here, so nothing is left in the queue with a caller waiting on it.
+  private boolean offer(Object item) {
+    queue.add(item);
+    return !closed || !queue.remove(item);
+  }
+
+  // Writes a full snapshot to a temp file and queues it; records committed before it are covered, so the log is
+  // emptied after it lands
+  public void snapshot(SnapshotContent content) {
+    Snapshot snapshot = stage(content);
+    if (snapshot != null && durability == Durability.SYNC) {
+      await(snapshot.done);
+    }
+  }
+
+  // As snapshot, but waits for it whatever the durability mode; returns false if it could not be written
+  public boolean snapshotAndWait(SnapshotContent content) {
+    Snapshot snapshot = stage(content);
+    if (snapshot == null) {
+      return false;
+    }
+    return await(snapshot.done);
+  }
+
+  private synchronized Snapshot stage(SnapshotContent content) {
+    if (closed) {
+      return null;
+    }
+    if (lastSnapshot != null) {
+      // Its failure, if any, has been reported already
+      lastSnapshot.done.exceptionally(e -> null).join();
+    }
+    File temp = new File(snapshotFile.getPath() + ".tmp");
+    FileChannel channel = null;
+    try {
+      channel = FileChannel.open(temp.toPath(),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      content.writeTo(channel);
+    } catch (IOException e) {
+      System.out.println("Error saving data: " + e.getMessage());
+      closeQuietly(channel);
+      return null;
+    }
+    Snapshot snapshot = new Snapshot(temp, channel);
+    if (!offer(snapshot)) {
+      closeQuietly(channel);
+      return null;
+    }
+    lastSnapshot = snapshot;
+    return snapshot;
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // Already failing
+    }
+  }
+
+  // Blocks until everything queued so far is on disk; returns false if some of it could not be written
+  public boolean flush() {
+    if (closed) {
+      return false;
+    }
+    Snapshot marker = new Snapshot(null, null);
+    return offer(marker) && await(marker.done);
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    queue.add(SHUTDOWN);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException e) {
+      // Already shutting down, possibly in the hook itself
+    }
+  }
+
+  // False if what it waited for failed; the persistence thread has reported why. Null is done already.
+  public boolean await(CompletableFuture<Void> done) {
+    if (done == null) {
+      return true;
+    }
+    try {
+      done.get();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      return false;
+    }
+  }
+
+  private void run() {
+    List<Object> batch = new ArrayList<>();
+    List<CompletableFuture<Void>> waiting = new ArrayList<>();
+    // A record failed to append since the last snapshot; until one lands, flush markers fail with it
+    IOException unlogged = null;
+    boolean running = true;
+    while (running) {
+      try {
+        Object next = queue.take();
+        batch.add(next);
+        if (durability == Durability.GROUP) {
+          // Let a burst of changes accumulate so they share one fsync; a shutdown ends the wait at once
+          long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(groupCommitMs);
+          long remaining;
+          while (next != SHUTDOWN && (remaining = deadline - System.nanoTime()) > 0) {
+            next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+              break;
+            }
+            batch.add(next);
+          }
+        }
+        queue.drainTo(batch);
+      } catch (InterruptedException e) {
+        running = false;
+      }
+
+      boolean pendingRecords = false;
+      boolean forceRequested = false;
+      for (Object item : batch) {
+        if (item == SHUTDOWN) {
+          running = false;
+        } else if (item instanceof Record) {
+          Record record = (Record) item;
+          try {
+            log.append(record.mutation);
+            pendingRecords = true;
+            if (record.done != null) {
+              waiting.add(record.done);
+            }
+          } catch (IOException e) {
+            System.out.println("Error writing change log: " + e.getMessage());
+            unlogged = e;
+            if (record.done != null) {
+              record.done.completeExceptionally(e);
+            }
+          }
+        } else {
+          Snapshot snapshot = (Snapshot) item;
+          forceRequested = true;
+          try {
+            if (snapshot.channel != null) {
+              writeSnapshot(snapshot);
+              if (log != null) {
+                log.reset();
+              }
+              pendingRecords = false;
+              unlogged = null;
+              waiting.add(snapshot.done);
+            } else if (unlogged != null) {
+              snapshot.done.completeExceptionally(unlogged);
+            } else {
+              waiting.add(snapshot.done);
+            }
+          } catch (IOException e) {
+            System.out.println("Error saving data: " + e.getMessage());
+            snapshot.done.completeExceptionally(e);
+          }
+        }
+      }
+
+      IOException flushFailure = null;
+      if (pendingRecords || forceRequested || !running) {
+        try {
+          if (log != null) {
+            log.flush(durability != Durability.ASYNC || forceRequested || !running);
+          }
+        } catch (IOException e) {
+          System.out.println("Error writing change log: " + e.getMessage());
+          flushFailure = e;
+        }
+      }
+      // Nothing waiting here is known to be on disk if the flush failed
+      for (CompletableFuture<Void> done : waiting) {
+        if (flushFailure != null) {
+          done.completeExceptionally(flushFailure);
+        } else {
+          done.complete(null);
+        }
+      }
+      waiting.clear();
+      batch.clear();
+    }
+
+    // Anything that slipped in behind the shutdown marker is not written
+    int dropped = 0;
+    Object item;
+    while ((item = queue.poll()) != null) {
+      CompletableFuture<Void> done = null;
+      if (item instanceof Record) {
+        dropped++;
+        done = ((Record) item).done;
+      } else if (item instanceof Snapshot) {
+        closeQuietly(((Snapshot) item).channel);
+        done = ((Snapshot) item).done;
+      }
+      if (done != null) {
+        done.completeExceptionally(new IOException("Persistence writer is closed"));
+      }
+    }
+    if (dropped > 0) {
+      System.out.println("Error writing change log: " + dropped + " changes arrived after shutdown");
+    }
+
+    try {
+      if (log != null) {
+        log.close();
+      }
+    } catch (IOException e) {
+      System.out.println("Error closing change log: " + e.getMessage());
+    }
+  }
+
+  private void writeSnapshot(Snapshot snapshot) throws IOException {
+    try (FileChannel channel = snapshot.channel) {
+      channel.force(true);
+    }
+    moveIntoPlace(snapshot.temp, snapshotFile);
+  }
+
+  // Writes to a temp file, fsyncs it, then atomically renames it over the previous version of the file
+  static void replaceAtomically(File file, byte[] content) throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temp)) {
+      out.write(content);
+      out.getFD().sync();
+    }
+    moveIntoPlace(temp, file);
+  }
+
+  private static void moveIntoPlace(File temp, File file) throws IOException {
+    Path target = file.toPath();
+    try {
+      Files.move(temp.toPath(), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    syncDirectory(target.toAbsolutePath().getParent());
+  }
+
+  // Makes the rename itself durable; not every platform allows opening a directory
+  static void syncDirectory(Path directory) {
+    if (directory == null) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // Best effort only
+    }
+  }
+}
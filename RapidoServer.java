@@ -0,0 +1,452 @@
+package rapido;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+// Localhost front-end - one JSON object per line in each direction, one lightweight thread per connection
+//
+// Requests look like {"op":"login","username":"ravi","password":"pw"}; every reply carries "ok" and,
+// on failure, "error". Ops: ping, signup, login, logout, quit, nearest, status; riders: request, cancel, history,
+// archived; drivers: online, offline, requests, accept, complete; admins: approve, rides, analytics. Listings are
+// paged with "limit" and "cursor" and reply with "nextCursor" (null on the last page); history with
+// "month":"yyyy-MM" lists that month's archived rides, and archived lists the months there are.
+class RapidoServer implements Closeable {
+  private static final int BACKLOG = 4096;
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 500;
+
+  private final RapidoSystem system;
+  private final ServerSocket serverSocket;
+  private final ExecutorService connections;
+  private final Set<Socket> open;
+  private final Thread acceptor;
+  private final boolean virtualThreads;
+  private volatile boolean closed;
+
+  public RapidoServer(RapidoSystem system, int port) throws IOException {
+    this.system = system;
+    this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+    ExecutorService virtual = newVirtualThreadExecutor();
+    this.virtualThreads = virtual != null;
+    this.connections = virtual != null ? virtual : Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "rapido-connection");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.open = ConcurrentHashMap.newKeySet();
+    this.acceptor = new Thread(this::acceptLoop, "rapido-server");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+  }
+
+  // Starts a server if rapido.serverPort is set; returns null otherwise or if the port cannot be bound
+  public static RapidoServer fromSystemProperties(RapidoSystem system) {
+    Integer port = Integer.getInteger("rapido.serverPort");
+    if (port == null) {
+      return null;
+    }
+    try {
+      RapidoServer server = new RapidoServer(system, port);
+      System.out.println("Listening on localhost:" + server.getPort()
+          + (server.usesVirtualThreads() ? " (virtual threads)" : " (thread pool)"));
+      return server;
+    } catch (IOException e) {
+      System.out.println("Error starting server: " + e.getMessage());
+      return null;
+    }
+  }
+
+  // Virtual threads need Java 21; looked up reflectively so the code still builds and runs on older JDKs
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public boolean usesVirtualThreads() {
+    return virtualThreads;
+  }
+
+  public int getConnectionCount() {
+    return open.size();
+  }
+
+  // Blocks until the server is closed
+  public void awaitClose() throws InterruptedException {
+    acceptor.join();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // Already closed
+    }
+    for (Socket socket : open) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Best effort only
+      }
+    }
+    connections.shutdown();
+  }
+
+  private void acceptLoop() {
+    while (!closed) {
+      try {
+        Socket socket = serverSocket.accept();
+        open.add(socket);
+        connections.execute(() -> serve(socket));
+      } catch (IOException e) {
+        if (!closed) {
+          System.out.println("Error accepting connection: " + e.getMessage());
+        }
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    Session session = new Session();
+    try (Socket s = socket;
+        BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        Reply reply;
+        try {
+          reply = handle(session, parse(line));
+        } catch (IOException e) {
+          reply = Reply.error("Bad request: " + e.getMessage());
+        } catch (RuntimeException e) {
+          reply = Reply.error("Server error: " + e.getMessage());
+        }
+        out.write(reply.toJson());
+        out.write('\n');
+        out.flush();
+        if (session.quit) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      // Client went away
+    } finally {
+      open.remove(socket);
+    }
+  }
+
+  private static Map<String, String> parse(String line) throws IOException {
+    try (JsonReader reader = new JsonReader(new StringReader(line))) {
+      return reader.nextObject();
+    }
+  }
+
+  // Per-connection state
+  private static class Session {
+    User user;
+    boolean quit;
+  }
+
+  private Reply handle(Session session, Map<String, String> request) {
+    String op = request.get("op");
+    if (op == null) {
+      return Reply.error("Missing op");
+    }
+    switch (op) {
+      case "ping":
+        return Reply.ok();
+      case "signup":
+        return signup(request);
+      case "login": {
+        User user = system.login(request.get("username"), request.get("password"));
+        if (user == null) {
+          return Reply.error("Invalid username or password");
+        }
+        session.user = user;
+        return Reply.ok().with("role", user.getRole()).with("name", user.getName());
+      }
+      case "logout":
+        session.user = null;
+        return Reply.ok();
+      case "quit":
+        session.quit = true;
+        return Reply.ok();
+      case "nearest":
+        return nearest(request);
+      case "status":
+        return status(request);
+      default:
+        break;
+    }
+
+    if (session.user == null) {
+      return Reply.error("Log in first");
+    }
+    if (session.user instanceof Rider) {
+      Rider rider = (Rider) session.user;
+      if (op.equals("request")) {
+        return requestRide(rider, request);
+      }
+      if (op.equals("cancel")) {
+        Ride ride = system.findRide(request.get("rideId"));
+        if (ride == null || ride.getRider() != rider) {
+          return Reply.error("No such ride");
+        }
+        return system.cancelRide(ride) ? rideReply(ride) : Reply.error("Ride is already completed or cancelled");
+      }
+      if (op.equals("history")) {
+        if (request.get("month") == null) {
+          return page(request, (cursor, limit) -> system.getRideHistory(rider, cursor, limit));
+        }
+        YearMonth month;
+        try {
+          month = YearMonth.parse(request.get("month"));
+        } catch (DateTimeParseException e) {
+          return Reply.error("month must be yyyy-MM");
+        }
+        return page(request, (cursor, limit) -> system.getArchivedHistory(rider, month, cursor, limit));
+      }
+      if (op.equals("archived")) {
+        List<String> months = new ArrayList<>();
+        for (YearMonth month : system.getArchivedMonths(rider)) {
+          months.add(month.toString());
+        }
+        return Reply.ok().with("months", months);
+      }
+    } else if (session.user instanceof Driver) {
+      Driver driver = (Driver) session.user;
+      switch (op) {
+        case "online":
+        case "offline":
+          if (!driver.isApproved()) {
+            return Reply.error("Driver is not approved yet");
+          }
+          system.setDriverOnline(driver, op.equals("online"), op.equals("online") ? request.get("location") : null);
+          return Reply.ok().with("online", driver.isOnline());
+        case "requests": {
+          if (!driver.isApproved() || !driver.isOnline()) {
+            return Reply.error("Driver must be approved and online to see ride requests");
+          }
+          List<String> ids = new ArrayList<>();
+          for (Ride ride : system.getRideRequests(driver)) {
+            ids.add(ride.getRideId());
+          }
+          return Reply.ok().with("rides", ids);
+        }
+        case "accept": {
+          if (!driver.isApproved() || !driver.isOnline()) {
+            return Reply.error("Driver must be approved and online to accept rides");
+          }
+          Ride ride = system.findRide(request.get("rideId"));
+          if (ride == null) {
+            return Reply.error("No such ride");
+          }
+          return system.acceptRide(ride, driver) ? rideReply(ride) : Reply.error("Ride already taken");
+        }
+        case "complete": {
+          Ride ride = system.findRide(request.get("rideId"));
+          if (ride == null || ride.getDriver() != driver) {
+            return Reply.error("No such ride");
+          }
+          String paymentError = RapidoSystem.checkPayment(request.get("paymentMethod"), request.get("upiId"));
+          if (paymentError != null) {
+            return Reply.error(paymentError);
+          }
+          return system.finishRide(ride, request.get("paymentMethod"), request.get("upiId"))
+              ? rideReply(ride)
+              : Reply.error("Ride is not ongoing");
+        }
+        default:
+          break;
+      }
+    } else if (session.user instanceof Admin) {
+      if (op.equals("approve")) {
+        return system.approveDriver(request.get("username")) ? Reply.ok() : Reply.error("Driver not found");
+      }
+      if (op.equals("rides")) {
+        return page(request, system::getRides);
+      }
+      if (op.equals("analytics")) {
+        return analytics();
+      }
+    }
+    return Reply.error("Unknown op for " + session.user.getRole() + ": " + op);
+  }
+
+  private Reply signup(Map<String, String> request) {
+    String role = request.get("role");
+    String name = request.get("name");
+    String phone = request.get("phone");
+    String username = request.get("username");
+    String password = request.get("password");
+    if (name == null || username == null || password == null) {
+      return Reply.error("name, username and password are required");
+    }
+    User user;
+    if ("RIDER".equalsIgnoreCase(role)) {
+      user = new Rider(name, phone, username, password);
+    } else if ("DRIVER".equalsIgnoreCase(role)) {
+      user = new Driver(name, phone, request.get("vehicleNo"), username, password);
+    } else {
+      return Reply.error("role must be RIDER or DRIVER");
+    }
+    return system.registerUser(user) ? Reply.ok() : Reply.error("Username already exists");
+  }
+
+  private Reply nearest(Map<String, String> request) {
+    int count = 10;
+    try {
+      if (request.get("count") != null) {
+        count = Math.max(1, Math.min(100, Integer.parseInt(request.get("count"))));
+      }
+    } catch (NumberFormatException e) {
+      return Reply.error("count must be a number");
+    }
+    List<String> drivers = new ArrayList<>();
+    for (DriverLocator.Match match : system.getNearestDrivers(request.get("location"), count)) {
+      drivers.add(String.format("%s %.2f", match.getDriver().getUsername(), match.getDistanceKm()));
+    }
+    return Reply.ok().with("drivers", drivers);
+  }
+
+  // Books a REQUESTED ride for the dispatcher; with "wait":"true" replies once a driver is assigned or the wait runs out
+  private Reply requestRide(Rider rider, Map<String, String> request) {
+    String pickup = request.get("pickup");
+    String drop = request.get("drop");
+    if (pickup == null || drop == null) {
+      return Reply.error("pickup and drop are required");
+    }
+    Ride ride = system.quoteRide(rider, pickup, drop);
+    system.requestRide(ride);
+    if (Boolean.parseBoolean(request.get("wait"))) {
+      Dispatcher dispatcher = system.getDispatcher();
+      dispatcher.awaitAssignment(ride, dispatcher.getWindowMs() * 3 + 1000);
+    }
+    return rideReply(ride);
+  }
+
+  // Ride IDs of one page of a listing
+  private Reply page(Map<String, String> request, BiFunction<String, Integer, Page<Ride>> listing) {
+    int limit = DEFAULT_PAGE_SIZE;
+    try {
+      if (request.get("limit") != null) {
+        limit = Math.max(1, Math.min(MAX_PAGE_SIZE, Integer.parseInt(request.get("limit"))));
+      }
+    } catch (NumberFormatException e) {
+      return Reply.error("limit must be a number");
+    }
+    Page<Ride> page;
+    try {
+      page = listing.apply(request.get("cursor"), limit);
+    } catch (IllegalArgumentException e) {
+      return Reply.error(e.getMessage());
+    }
+    List<String> ids = new ArrayList<>();
+    for (Ride ride : page.getItems()) {
+      ids.add(ride.getRideId());
+    }
+    return Reply.ok().with("rides", ids).with("nextCursor", page.getNextCursor());
+  }
+
+  private Reply analytics() {
+    RideAnalytics analytics = system.getAnalytics();
+    Reply reply = Reply.ok().with("rides", analytics.getRideCount());
+    for (RideStatus status : RideStatus.values()) {
+      reply.with(status.name().toLowerCase(), analytics.getCount(status));
+    }
+    return reply
+        .with("grossRevenue", analytics.getGrossRevenue())
+        .with("averageEta", analytics.getAverageEta())
+        .with("averageDistance", analytics.getAverageDistance())
+        .with("bookingsPerHour5m", analytics.getBookingsPerHour(5))
+        .with("bookingsPerHour60m", analytics.getBookingsPerHour(60));
+  }
+
+  private Reply status(Map<String, String> request) {
+    Ride ride = system.findRide(request.get("rideId"));
+    return ride != null ? rideReply(ride) : Reply.error("No such ride");
+  }
+
+  private static Reply rideReply(Ride ride) {
+    return Reply.ok()
+        .with("rideId", ride.getRideId())
+        .with("status", ride.getStatus())
+        .with("driver", ride.getDriver() != null ? ride.getDriver().getUsername() : null)
+        .with("distance", ride.getDistance())
+        .with("fare", ride.getFare())
+        .with("eta", ride.getEta());
+  }
+
+  // Response object; strings are quoted, numbers and booleans written bare, lists as arrays of strings
+  static class Reply {
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+
+    static Reply ok() {
+      return new Reply().with("ok", true);
+    }
+
+    static Reply error(String message) {
+      return new Reply().with("ok", false).with("error", message);
+    }
+
+    Reply with(String field, Object value) {
+      fields.put(field, value);
+      return this;
+    }
+
+    String toJson() {
+      StringBuilder json = new StringBuilder("{");
+      for (Map.Entry<String, Object> field : fields.entrySet()) {
+        if (json.length() > 1) {
+          json.append(',');
+        }
+        json.append('"').append(field.getKey()).append("\":");
+        appendValue(json, field.getValue());
+      }
+      return json.append('}').toString();
+    }
+
+    private static void appendValue(StringBuilder json, Object value) {
+      if (value == null) {
+        json.append("null");
+      } else if (value instanceof Number || value instanceof Boolean) {
+        json.append(value);
+      } else if (value instanceof List) {
+        json.append('[');
+        boolean first = true;
+        for (Object item : (List<?>) value) {
+          if (!first) {
+            json.append(',');
+          }
+          appendValue(json, item);
+          first = false;
+        }
+        json.append(']');
+      } else {
+        json.append('"').append(JsonSnapshotWriter.escapeJson(value.toString())).append('"');
+      }
+    }
+  }
+}
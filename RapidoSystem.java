@@ -1,499 +1,963 @@
 package rapido;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.text.SimpleDateFormat;
-
-// Main System Class
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+// Main System Class - safe to call from many sessions at once
 class RapidoSystem implements Serializable {
-  private List<User> users;
+  private UserDirectory users;
   private List<Ride> rides;
-  private double basePricePerKm;
+  private Map<String, Ride> ridesById;
+  // Open, ongoing and per-participant rides, so menus don't scan every ride ever booked
+  private transient RideIndex rideIndex;
+  // Primitive column copy of every ride for report scans
+  private transient RideColumns rideColumns;
+  // Running totals for the analytics screen
+  private transient RideAnalytics analytics;
+  // Driver earnings per completed ride; rebuilt from the rides on load
+  private transient EarningsLedger ledger;
+  // Finished rides of past months, on disk and read back by month
+  private transient RideArchive archive;
+  // With lazy startup, histories read back from the archive
+  private transient HistoryCache histories;
+  private volatile double basePricePerKm;
   private Random random;
-
-  // File names for data persistence - changed to JSON
-  private static final String DATA_FILE = "rapido_data.json";
+  private transient PersistenceWriter persistence;
+  private transient Dispatcher dispatcher;
+  private transient boolean logAvailable;
+  private final transient AtomicLong changesSinceSnapshot;
+  // Guards the rides list; ridesById is concurrent and users lock themselves
+  private final transient ReadWriteLock ridesLock;
+  // Changes hold the read side so none straddles a snapshot; snapshots take the write side
+  private final transient ReadWriteLock checkpointLock;
+  // Receipt exports under way; archiving waits for the next checkpoint while any are
+  private final transient AtomicInteger exportsRunning;
+  // Set only while loading: each user's loaded and replayed rides, linked in one go rather than one copy per ride
+  private transient Map<User, List<Ride>> loadingLinks;
+
+  // File names for data persistence - JSON by default, -Drapido.dataFile=rapido_data.bin for binary, .gz to compress
+  private static final String DATA_FILE = System.getProperty("rapido.dataFile", "rapido_data.json");
+  // Compressed along with the snapshot
+  private static final String LOG_FILE = SnapshotFormat.baseName(DATA_FILE)
+      + (SnapshotFormat.isCompressed(DATA_FILE) ? ".log.gz" : ".log");
+  // Logged changes after which the snapshot is rewritten and the log emptied
+  private static final int CHECKPOINT_INTERVAL = 10000;
+  // Driver search limits for booking and the nearby-drivers screen
+  private static final int NEAREST_DRIVERS_SHOWN = 10;
+  private static final double NEARBY_RADIUS_KM = 5.0;
+  // Rows per page on the ride listing screens
+  private static final int RIDES_PER_PAGE = 20;
+  // Rides copied out per read-lock hold while exporting
+  private static final int EXPORT_CHUNK = 4096;
 
   public RapidoSystem() {
-    this.users = new ArrayList<>();
+    this.users = new UserDirectory();
     this.rides = new ArrayList<>();
+    this.ridesById = new ConcurrentHashMap<>();
+    this.rideIndex = new RideIndex();
+    this.rideColumns = new RideColumns();
+    this.analytics = new RideAnalytics();
+    this.ledger = new EarningsLedger();
     this.basePricePerKm = 8.0;
     this.random = new Random();
+    this.changesSinceSnapshot = new AtomicLong();
+    this.ridesLock = new ReentrantReadWriteLock();
+    this.checkpointLock = new ReentrantReadWriteLock();
+    this.exportsRunning = new AtomicInteger();
+    this.archive = RideArchive.fromSystemProperties(DATA_FILE);
+    this.histories = HistoryCache.fromSystemProperties();
+    this.loadingLinks = new IdentityHashMap<>();
     loadData();
+    replayLog();
+    linkLoadedRides();
+    restoreArchivedTotals();
+    if (archive.isPending() || !archive.selectDue(finishedRides(), System.currentTimeMillis()).isEmpty()) {
+      saveData();
+    }
     initializeDefaultAdmin();
+    startDispatcher();
   }
 
-  // File handling methods - changed to JSON format
+  // File handling methods
   private void loadData() {
-    try (BufferedReader reader = new BufferedReader(new FileReader(DATA_FILE))) {
-      StringBuilder jsonContent = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        jsonContent.append(line);
-      }
-      parseJsonData(jsonContent.toString());
-      System.out.println("Data loaded successfully from JSON!");
-    } catch (FileNotFoundException e) {
+    File file = new File(DATA_FILE);
+    if (!file.exists()) {
       System.out.println("No existing data file found. Starting fresh...");
+      return;
+    }
+    try {
+      CompressionStats stats = SnapshotFormat.read(file, new SnapshotSink() {
+        @Override
+        public void basePrice(double price) {
+          basePricePerKm = price;
+        }
+
+        @Override
+        public void user(User user) {
+          users.add(user);
+        }
+
+        @Override
+        public void ride(Ride ride) {
+          restoreRide(ride);
+        }
+      });
+      System.out.println("Data loaded successfully from " + SnapshotFormat.describe(DATA_FILE) + "!");
+      if (stats != null) {
+        System.out.println("Snapshot inflated: " + stats);
+      }
     } catch (IOException e) {
       System.out.println("Error loading data: " + e.getMessage());
       // Initialize fresh data if loading fails
-      this.users = new ArrayList<>();
+      this.users = new UserDirectory();
       this.rides = new ArrayList<>();
+      this.ridesById = new ConcurrentHashMap<>();
+      this.rideIndex = new RideIndex();
+      this.rideColumns = new RideColumns();
+      this.analytics = new RideAnalytics();
+      this.ledger = new EarningsLedger();
+      this.loadingLinks.clear();
     }
   }
 
-  private void parseJsonData(String jsonData) {
-    if (jsonData.trim().isEmpty())
-      return;
-
+  // Re-applies changes logged since the last snapshot, then hands the log to the persistence thread
+  private void replayLog() {
+    MutationLog log = new MutationLog(LOG_FILE);
     try {
-      // Remove outer braces and split main sections
-      String cleanData = jsonData.trim().substring(1, jsonData.length() - 1);
-      String[] sections = cleanData.split("\"rides\":");
-
-      if (sections.length >= 1) {
-        // Parse users section
-        String usersSection = sections[0].replace("\"users\":", "").trim();
-        usersSection = usersSection.substring(1, usersSection.length() - 1); // Remove array brackets
-        parseUsers(usersSection);
+      long replayed = log.replay(this::applyMutation);
+      changesSinceSnapshot.set(replayed);
+      if (replayed > 0) {
+        System.out.println("Replayed " + replayed + " logged changes.");
       }
-
-      if (sections.length >= 2) {
-        // Parse rides section
-        String ridesSection = sections[1].trim();
-        if (ridesSection.endsWith("}")) {
-          ridesSection = ridesSection.substring(0, ridesSection.length() - 1);
-        }
-        ridesSection = ridesSection.substring(1, ridesSection.length() - 1); // Remove array brackets
-        parseRides(ridesSection);
+      if (log.getReplayStats() != null && replayed > 0) {
+        System.out.println("Change log inflated: " + log.getReplayStats());
       }
-    } catch (Exception e) {
-      System.out.println("Error parsing JSON data: " + e.getMessage());
+      logAvailable = true;
+    } catch (IOException e) {
+      System.out.println("Error replaying change log: " + e.getMessage());
     }
+    this.persistence = PersistenceWriter.fromSystemProperties(DATA_FILE, logAvailable ? log : null);
   }
 
-  private void parseUsers(String usersJson) {
-    if (usersJson.trim().isEmpty())
-      return;
-
-    String[] userObjects = usersJson.split("\\},\\s*\\{");
-    for (int i = 0; i < userObjects.length; i++) {
-      String userStr = userObjects[i];
-      if (i == 0)
-        userStr = userStr.substring(1); // Remove first {
-      if (i == userObjects.length - 1)
-        userStr = userStr.substring(0, userStr.length() - 1); // Remove last }
-
-      try {
-        User user = parseUserObject("{" + userStr + "}");
-        if (user != null) {
-          users.add(user);
-        }
-      } catch (Exception e) {
-        System.out.println("Error parsing user: " + e.getMessage());
+  // Hands each rider and driver the rides gathered while loading; from here on rides are linked one at a time
+  private void linkLoadedRides() {
+    for (Map.Entry<User, List<Ride>> links : loadingLinks.entrySet()) {
+      if (links.getKey() instanceof Rider) {
+        ((Rider) links.getKey()).addRidesToHistory(links.getValue());
+      } else {
+        ((Driver) links.getKey()).addAssignedRides(links.getValue());
       }
     }
+    loadingLinks = null;
   }
 
-  private User parseUserObject(String userJson) {
-    try {
-      Map<String, String> fields = parseObjectFields(userJson);
-
-      String role = fields.get("role");
-      String name = fields.get("name");
-      String phone = fields.get("phone");
-      String username = fields.get("username");
-      String password = fields.get("password");
-
-      if ("RIDER".equals(role)) {
-        Rider rider = new Rider(name, phone, username, password);
-        return rider;
-      } else if ("DRIVER".equals(role)) {
-        String vehicleNo = fields.get("vehicleNo");
-        boolean approved = Boolean.parseBoolean(fields.get("approved"));
-        boolean online = Boolean.parseBoolean(fields.get("online"));
-        double earnings = Double.parseDouble(fields.get("earnings"));
-
-        Driver driver = new Driver(name, phone, vehicleNo, username, password);
-        driver.setApproved(approved);
-        driver.setOnline(online);
-        driver.addEarnings(earnings); // Set initial earnings
-
-        return driver;
-      } else if ("ADMIN".equals(role)) {
-        return new Admin(name, phone, username, password);
+  // Archived rides no longer count through restoreRide, so their totals come from the archive index
+  private void restoreArchivedTotals() {
+    for (Map.Entry<String, Long> earnings : archive.getEarnings().entrySet()) {
+      Driver driver = users.findDriver(earnings.getKey());
+      if (driver != null) {
+        ledger.carryOver(driver, earnings.getValue());
+        analytics.addArchivedRevenue(driver, earnings.getValue());
       }
-    } catch (Exception e) {
-      System.out.println("Error parsing user object: " + e.getMessage());
     }
-    return null;
+    analytics.addArchived(archive.getCountsByStatus(), archive.getEtaMinutes(), archive.getDistanceMetres(),
+        archive.getRevenuePaise());
   }
 
-  private void parseRides(String ridesJson) {
-    if (ridesJson.trim().isEmpty())
-      return;
-
-    String[] rideObjects = ridesJson.split("\\},\\s*\\{");
-    for (int i = 0; i < rideObjects.length; i++) {
-      String rideStr = rideObjects[i];
-      if (i == 0)
-        rideStr = rideStr.substring(1); // Remove first {
-      if (i == rideObjects.length - 1)
-        rideStr = rideStr.substring(0, rideStr.length() - 1); // Remove last }
-
-      try {
-        Ride ride = parseRideObject("{" + rideStr + "}");
-        if (ride != null) {
-          rides.add(ride);
+  // Replay is idempotent so a log that overlaps a newer snapshot is harmless
+  private void applyMutation(Mutation mutation) {
+    switch (mutation.getType()) {
+      case USER_CREATED: {
+        User user = JsonSnapshot.parseUser(mutation.getFields());
+        if (user != null) {
+          users.add(user);
         }
-      } catch (Exception e) {
-        System.out.println("Error parsing ride: " + e.getMessage());
+        break;
       }
-    }
-  }
-
-  private Ride parseRideObject(String rideJson) {
-    try {
-      Map<String, String> fields = parseObjectFields(rideJson);
-
-      String pickupLocation = fields.get("pickupLocation");
-      String dropLocation = fields.get("dropLocation");
-      double distance = Double.parseDouble(fields.get("distance"));
-      double fare = Double.parseDouble(fields.get("fare"));
-      int eta = Integer.parseInt(fields.get("eta"));
-      String status = fields.get("status");
-
-      // Find rider by username
-      String riderUsername = fields.get("riderUsername");
-      Rider rider = null;
-      for (User user : users) {
-        if (user instanceof Rider && user.getUsername().equals(riderUsername)) {
-          rider = (Rider) user;
-          break;
+      case USER_REMOVED:
+        users.remove(mutation.get("username"));
+        break;
+      case DRIVER_APPROVED: {
+        Driver driver = users.findDriver(mutation.get("username"));
+        if (driver != null) {
+          users.approveDriver(driver);
         }
+        break;
       }
-
-      if (rider == null) {
-        System.out.println("Rider not found for ride: " + riderUsername);
-        return null;
+      case DRIVER_STATUS_CHANGED: {
+        Driver driver = users.findDriver(mutation.get("username"));
+        if (driver != null) {
+          if (mutation.get("lat") != null && mutation.get("lon") != null) {
+            users.moveDriver(driver, Double.parseDouble(mutation.get("lat")), Double.parseDouble(mutation.get("lon")));
+          }
+          users.setDriverOnline(driver, Boolean.parseBoolean(mutation.get("online")));
+        }
+        break;
       }
-
-      Ride ride = new Ride(pickupLocation, dropLocation, distance, fare, eta, rider);
-      ride.setStatus(status);
-
-      // Find and set driver if exists
-      String driverUsername = fields.get("driverUsername");
-      if (driverUsername != null && !driverUsername.equals("null")) {
-        for (User user : users) {
-          if (user instanceof Driver && user.getUsername().equals(driverUsername)) {
-            ride.setDriver((Driver) user);
-            ((Driver) user).addAssignedRide(ride);
-            break;
+      case RIDE_CREATED:
+        if (!ridesById.containsKey(mutation.get("rideId"))) {
+          Ride ride = JsonSnapshot.parseRide(mutation.getFields(), users);
+          if (ride != null) {
+            restoreRide(ride);
           }
         }
+        break;
+      case RIDE_ACCEPTED: {
+        Ride ride = ridesById.get(mutation.get("rideId"));
+        Driver driver = users.findDriver(mutation.get("driverUsername"));
+        if (ride != null && driver != null) {
+          assignDriver(ride, driver);
+        }
+        break;
       }
-
-      // Set completion time if exists
-      String completionTimeStr = fields.get("completionTime");
-      if (completionTimeStr != null && !completionTimeStr.equals("null")) {
-        try {
-          SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-          ride.setCompletionTime(sdf.parse(completionTimeStr));
-        } catch (Exception e) {
-          System.out.println("Error parsing completion time: " + e.getMessage());
+      case RIDE_COMPLETED: {
+        Ride ride = ridesById.get(mutation.get("rideId"));
+        if (ride != null) {
+          completeRide(ride, JsonSnapshot.parseTime(mutation.get("completionTime")),
+              mutation.get("paymentMethod"), mutation.get("upiId"));
         }
+        break;
       }
+      case RIDE_CANCELLED: {
+        Ride ride = ridesById.get(mutation.get("rideId"));
+        if (ride != null) {
+          cancelFrom(ride, ride.getStatus());
+        }
+        break;
+      }
+      case PRICE_CHANGED:
+        this.basePricePerKm = Double.parseDouble(mutation.get("basePricePerKm"));
+        break;
+    }
+  }
 
-      // Set payment info
-      ride.setPaymentMethod(fields.get("paymentMethod"));
-      ride.setUpiId(fields.get("upiId"));
+  // Records a change with one small append; without a log every change needs a full snapshot instead
+  private void logMutation(Mutation mutation) {
+    logMutation(mutation, true);
+  }
 
-      rider.addRideToHistory(ride);
-      return ride;
+  // Batches pass awaitCommit=false and wait once for all their records instead
+  private void logMutation(Mutation mutation, boolean awaitCommit) {
+    awaitLogged(queueMutation(mutation, awaitCommit));
+  }
 
-    } catch (Exception e) {
-      System.out.println("Error parsing ride object: " + e.getMessage());
+  // Queues the record in log order and returns the commit to pass to awaitLogged, once any lock is let go
+  private CompletableFuture<Void> queueMutation(Mutation mutation, boolean awaitCommit) {
+    if (!logAvailable) {
+      changesSinceSnapshot.set(CHECKPOINT_INTERVAL);
+      return null;
     }
-    return null;
+    CompletableFuture<Void> done = persistence.enqueue(mutation, awaitCommit);
+    changesSinceSnapshot.incrementAndGet();
+    return done;
   }
 
-  private Map<String, String> parseObjectFields(String json) {
-    Map<String, String> fields = new HashMap<>();
-    String content = json.substring(1, json.length() - 1); // Remove outer braces
-    String[] pairs = content.split(",");
+  private void awaitLogged(CompletableFuture<Void> done) {
+    if (!persistence.await(done)) {
+      // Not in the log, so only a snapshot can keep it
+      changesSinceSnapshot.set(CHECKPOINT_INTERVAL);
+    }
+  }
 
-    for (String pair : pairs) {
-      String[] keyValue = pair.split(":", 2);
-      if (keyValue.length == 2) {
-        String key = keyValue[0].trim().replace("\"", "");
-        String value = keyValue[1].trim();
+  // Applies a change and logs it as one step with respect to snapshots; changes run concurrently with each other
+  private <T> T change(Supplier<T> operation) {
+    T result;
+    checkpointLock.readLock().lock();
+    try {
+      result = operation.get();
+    } finally {
+      checkpointLock.readLock().unlock();
+    }
+    if (changesSinceSnapshot.get() >= CHECKPOINT_INTERVAL) {
+      checkpoint();
+    }
+    return result;
+  }
 
-        // Remove quotes from string values
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-          value = value.substring(1, value.length() - 1);
-        }
+  private void change(Runnable operation) {
+    change(() -> {
+      operation.run();
+      return null;
+    });
+  }
 
-        fields.put(key, value);
+  // Snapshots once enough changes have piled up; concurrent callers only snapshot once
+  private void checkpoint() {
+    checkpointLock.writeLock().lock();
+    try {
+      if (changesSinceSnapshot.get() >= CHECKPOINT_INTERVAL) {
+        saveData();
       }
+    } finally {
+      checkpointLock.writeLock().unlock();
     }
-    return fields;
   }
 
+  // Writes a full snapshot to a temp file that the persistence thread fsyncs and renames into place; the change
+  // log is emptied once it lands. Finished rides of past months are archived first, so they leave the snapshot and
+  // memory together.
   private void saveData() {
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(DATA_FILE))) {
-      writer.write(toJsonString());
+    checkpointLock.writeLock().lock();
+    try {
+      archiveOldRides();
+      if (archive.isPending()) {
+        // Until this snapshot is on disk the archived rides are still in the old one, so the index stays pending
+        if (persistence.snapshotAndWait(this::writeSnapshot)) {
+          archive.commit();
+        }
+      } else {
+        persistence.snapshot(this::writeSnapshot);
+      }
+      changesSinceSnapshot.set(0);
     } catch (IOException e) {
-      System.out.println("Error saving data: " + e.getMessage());
+      System.out.println("Error saving ride archive: " + e.getMessage());
+    } finally {
+      checkpointLock.writeLock().unlock();
     }
   }
 
-  private String toJsonString() {
-    StringBuilder json = new StringBuilder();
-    json.append("{\n");
+  // Completed and cancelled rides still in memory
+  private List<Ride> finishedRides() {
+    List<Ride> finished = rideIndex.withStatus(RideStatus.COMPLETED);
+    finished.addAll(rideIndex.withStatus(RideStatus.CANCELLED));
+    return finished;
+  }
 
-    // Users array
-    json.append("  \"users\": [\n");
-    for (int i = 0; i < users.size(); i++) {
-      json.append(userToJson(users.get(i)));
-      if (i < users.size() - 1)
-        json.append(",");
-      json.append("\n");
+  // Moves rides the archive says are due into new segments and drops them from memory; callers hold the
+  // checkpoint write lock. The running analytics keep counting them. Skipped while a receipt export runs, as the
+  // rides would leave memory after the export had passed the archive; the next checkpoint picks them up.
+  private void archiveOldRides() {
+    if (exportsRunning.get() > 0) {
+      return;
+    }
+    List<Ride> due = archive.selectDue(finishedRides(), System.currentTimeMillis());
+    if (due.isEmpty()) {
+      return;
+    }
+    try {
+      archive.append(due);
+    } catch (IOException e) {
+      System.out.println("Error archiving rides: " + e.getMessage());
+      return;
+    }
+    Set<Ride> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+    archived.addAll(due);
+    Set<Rider> riders = new HashSet<>();
+    Set<Driver> drivers = new HashSet<>();
+    ridesLock.writeLock().lock();
+    try {
+      rides.removeIf(archived::contains);
+    } finally {
+      ridesLock.writeLock().unlock();
+    }
+    for (Ride ride : due) {
+      ridesById.remove(ride.getRideId());
+      rideIndex.remove(ride);
+      ledger.archived(ride);
+      riders.add(ride.getRider());
+      if (ride.getDriver() != null) {
+        drivers.add(ride.getDriver());
+      }
     }
-    json.append("  ],\n");
+    rideColumns.removeAll(archived);
+    for (Rider rider : riders) {
+      rider.removeFromHistory(archived);
+    }
+    for (Driver driver : drivers) {
+      driver.removeAssignedRides(archived);
+    }
+    histories.invalidate(riders);
+    histories.invalidate(drivers);
+    System.out.println("Archived " + due.size() + " finished rides.");
+  }
 
-    // Rides array
-    json.append("  \"rides\": [\n");
-    for (int i = 0; i < rides.size(); i++) {
-      json.append(rideToJson(rides.get(i)));
-      if (i < rides.size() - 1)
-        json.append(",");
-      json.append("\n");
+  // Writes the current state in the format of DATA_FILE; callers hold the checkpoint lock
+  private void writeSnapshot(FileChannel channel) throws IOException {
+    CompressionStats stats = SnapshotEncoder.write(DATA_FILE, basePricePerKm, users.getUsers(), getRides(), channel);
+    if (stats != null) {
+      System.out.println("Snapshot compressed: " + stats);
     }
-    json.append("  ]\n");
+  }
 
-    json.append("}");
-    return json.toString();
+  // Starts automatic matching and queues rides that were still waiting for a driver
+  private void startDispatcher() {
+    this.dispatcher = Dispatcher.fromSystemProperties(this);
+    for (Ride ride : rideIndex.withStatus(RideStatus.REQUESTED)) {
+      if (ride.getDriver() == null) {
+        dispatcher.submit(ride);
+      }
+    }
   }
 
-  private String userToJson(User user) {
-    StringBuilder json = new StringBuilder();
-    json.append("    {\n");
-    json.append("      \"name\": \"").append(escapeJson(user.getName())).append("\",\n");
-    json.append("      \"phone\": \"").append(escapeJson(user.getPhone())).append("\",\n");
-    json.append("      \"username\": \"").append(escapeJson(user.getUsername())).append("\",\n");
-    json.append("      \"password\": \"").append(escapeJson(user.getPassword())).append("\",\n");
-    json.append("      \"role\": \"").append(user.getRole()).append("\"");
+  // Stops matching, then flushes pending writes and stops the persistence thread
+  public void shutdown() {
+    dispatcher.close();
+    persistence.close();
+  }
 
+  // Change-log record for a new user; field names match the snapshot objects
+  private Mutation userCreated(User user) {
+    Mutation record = new Mutation(Mutation.Type.USER_CREATED)
+        .with("name", user.getName())
+        .with("phone", user.getPhone())
+        .with("username", user.getUsername())
+        .with("password", user.getPassword())
+        .with("role", user.getRole());
     if (user instanceof Driver) {
       Driver driver = (Driver) user;
-      json.append(",\n");
-      json.append("      \"vehicleNo\": \"").append(escapeJson(driver.getVehicleNo())).append("\",\n");
-      json.append("      \"approved\": ").append(driver.isApproved()).append(",\n");
-      json.append("      \"online\": ").append(driver.isOnline()).append(",\n");
-      json.append("      \"earnings\": ").append(driver.getEarnings());
-    }
-
-    json.append("\n    }");
-    return json.toString();
-  }
-
-  private String rideToJson(Ride ride) {
-    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    StringBuilder json = new StringBuilder();
-    json.append("    {\n");
-    json.append("      \"rideId\": \"").append(ride.getRideId()).append("\",\n");
-    json.append("      \"pickupLocation\": \"").append(escapeJson(ride.getPickupLocation())).append("\",\n");
-    json.append("      \"dropLocation\": \"").append(escapeJson(ride.getDropLocation())).append("\",\n");
-    json.append("      \"distance\": ").append(ride.getDistance()).append(",\n");
-    json.append("      \"fare\": ").append(ride.getFare()).append(",\n");
-    json.append("      \"eta\": ").append(ride.getEta()).append(",\n");
-    json.append("      \"status\": \"").append(ride.getStatus()).append("\",\n");
-    json.append("      \"riderUsername\": \"").append(ride.getRider().getUsername()).append("\",\n");
-    json.append("      \"driverUsername\": \"")
-        .append(ride.getDriver() != null ? ride.getDriver().getUsername() : "null").append("\",\n");
-    json.append("      \"bookingTime\": \"").append(sdf.format(ride.getBookingTime())).append("\",\n");
-    json.append("      \"completionTime\": \"")
-        .append(ride.getCompletionTime() != null ? sdf.format(ride.getCompletionTime()) : "null").append("\",\n");
-    json.append("      \"paymentMethod\": \"")
-        .append(ride.getPaymentMethod() != null ? escapeJson(ride.getPaymentMethod()) : "null").append("\",\n");
-    json.append("      \"upiId\": \"").append(ride.getUpiId() != null ? escapeJson(ride.getUpiId()) : "null")
-        .append("\"\n");
-    json.append("    }");
-    return json.toString();
-  }
-
-  private String escapeJson(String str) {
-    if (str == null)
-      return "";
-    return str.replace("\\", "\\\\")
-        .replace("\"", "\\\"")
-        .replace("\n", "\\n")
-        .replace("\r", "\\r")
-        .replace("\t", "\\t");
+      record.with("vehicleNo", driver.getVehicleNo())
+          .with("approved", driver.isApproved())
+          .with("online", driver.isOnline())
+          .with("earnings", driver.getEarnings());
+      if (driver.hasPosition()) {
+        record.with("lat", driver.getLatitude()).with("lon", driver.getLongitude());
+      }
+    }
+    return record;
   }
 
   private void initializeDefaultAdmin() {
-    boolean adminExists = false;
-    for (User user : users) {
-      if (user.getRole().equals("ADMIN")) {
-        adminExists = true;
-        break;
-      }
-    }
-    if (!adminExists) {
-      users.add(new Admin("System Admin", "0000000000", "adminhemant", "hemant123"));
+    if (users.getAdmins().isEmpty()) {
+      Admin admin = new Admin("System Admin", "0000000000", "adminhemant", "hemant123");
+      registerUser(admin);
       System.out.println("Default admin created: adminhemant/hemant123");
-      saveData();
     }
   }
 
   // User management methods
   public boolean usernameExists(String username) {
-    for (User user : users) {
-      if (user.getUsername().equals(username)) {
-        return true;
-      }
-    }
-    return false;
+    return users.contains(username);
   }
 
   public User login(String username, String password) {
-    for (User user : users) {
-      if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-        return user;
-      }
+    User user = users.findByUsername(username);
+    if (user != null && user.getPassword().equals(password)) {
+      return user;
     }
     return null;
   }
 
+  // Adds and logs a new user; returns false if the username is already taken
+  public boolean registerUser(User user) {
+    return change(() -> {
+      if (!users.add(user)) {
+        return false;
+      }
+      logMutation(userCreated(user));
+      return true;
+    });
+  }
+
   public void signupRider(String name, String phone, String username, String password) {
-    if (usernameExists(username)) {
+    if (!registerUser(new Rider(name, phone, username, password))) {
       System.out.println("Username already exists!");
       return;
     }
-    users.add(new Rider(name, phone, username, password));
-    saveData();
     System.out.println("Rider registered successfully!");
   }
 
   public void signupDriver(String name, String phone, String vehicleNo, String username, String password) {
-    if (usernameExists(username)) {
+    if (!registerUser(new Driver(name, phone, vehicleNo, username, password))) {
       System.out.println("Username already exists!");
       return;
     }
-    users.add(new Driver(name, phone, vehicleNo, username, password));
-    saveData();
     System.out.println("Driver registered successfully! Waiting for admin approval.");
   }
 
+  // Moves the driver to the location (if given) and updates the driver index
+  public void setDriverOnline(Driver driver, boolean online, String location) {
+    change(() -> {
+      if (location != null) {
+        double[] position = Geo.locate(location);
+        users.moveDriver(driver, position[0], position[1]);
+      }
+      users.setDriverOnline(driver, online);
+      logMutation(new Mutation(Mutation.Type.DRIVER_STATUS_CHANGED)
+          .with("username", driver.getUsername())
+          .with("online", driver.isOnline())
+          .with("lat", driver.hasPosition() ? driver.getLatitude() : null)
+          .with("lon", driver.hasPosition() ? driver.getLongitude() : null));
+    });
+  }
+
   // Ride management methods
   public List<Driver> getAvailableDrivers() {
-    List<Driver> availableDrivers = new ArrayList<>();
-    for (User user : users) {
-      if (user instanceof Driver) {
-        Driver driver = (Driver) user;
-        if (driver.isApproved() && driver.isOnline()) {
-          availableDrivers.add(driver);
-        }
-      }
-    }
-    return availableDrivers;
+    return users.getDriverLocator().getDrivers();
   }
 
+  // Closest approved, online drivers not already on a ride, nearest first
+  public List<DriverLocator.Match> getNearestDrivers(String location, int count) {
+    double[] point = Geo.locate(location);
+    return getNearestAvailable(point[0], point[1], count);
+  }
+
+  // Busy drivers leave the index when they claim a ride; one claimed a moment ago may still be in it, so is skipped
+  List<DriverLocator.Match> getNearestAvailable(double latitude, double longitude, int count) {
+    List<DriverLocator.Match> available = users.getDriverLocator().nearest(latitude, longitude, count);
+    available.removeIf(match -> !isDriverAvailable(match.getDriver()));
+    return available;
+  }
+
+  public List<DriverLocator.Match> getDriversWithin(String location, double radiusKm) {
+    double[] point = Geo.locate(location);
+    return users.getDriverLocator().withinRadius(point[0], point[1], radiusKm);
+  }
+
+  // Only drivers without an ongoing ride can take another
+  boolean isDriverAvailable(Driver driver) {
+    return driver.getActiveRide() == null;
+  }
+
+  // Ride queries below read the ride indexes, so they cost the size of the answer rather than of all rides
   public List<Ride> getRideRequests(Driver driver) {
-    List<Ride> requests = new ArrayList<>();
-    for (Ride ride : rides) {
-      if (ride.getStatus().equals("REQUESTED") && ride.getDriver() == null) {
-        requests.add(ride);
-      }
-    }
+    List<Ride> requests = rideIndex.withStatus(RideStatus.REQUESTED);
+    requests.removeIf(ride -> ride.getDriver() != null);
     return requests;
   }
 
   public List<Ride> getDriverRides(Driver driver) {
-    List<Ride> driverRides = new ArrayList<>();
-    for (Ride ride : rides) {
-      if (ride.getDriver() == driver) {
-        driverRides.add(ride);
+    List<Ride> archived = archivedHistory(driver);
+    List<Ride> assigned = driver.getAssignedRides();
+    List<Ride> all = new ArrayList<>(archived.size() + assigned.size());
+    all.addAll(archived);
+    all.addAll(assigned);
+    return all;
+  }
+
+  public List<Ride> getOngoingRides(Driver driver) {
+    return rideIndex.ongoingForDriver(driver);
+  }
+
+  public List<Ride> getOngoingRides(Rider rider) {
+    return rideIndex.ongoingForRider(rider);
+  }
+
+  // The rider's rides still waiting for a driver or under way, in booking order
+  public List<Ride> getCancellableRides(Rider rider) {
+    List<Ride> open = rideIndex.withStatus(RideStatus.REQUESTED);
+    open.removeIf(ride -> ride.getRider() != rider);
+    open.addAll(rideIndex.ongoingForRider(rider));
+    open.sort(RideIndex.BOOKING_ORDER);
+    return open;
+  }
+
+  // Falls back to the archive, which reads only the blocks booked around the time in the ID
+  public Ride findRide(String rideId) {
+    if (rideId == null) {
+      return null;
+    }
+    Ride ride = ridesById.get(rideId);
+    return ride != null ? ride : archive.find(rideId, users);
+  }
+
+  // A priced ride for the trip, not yet booked
+  public Ride quoteRide(Rider rider, String pickup, String drop) {
+    double distance = Math.round((random.nextDouble() * 9 + 1) * 10.0) / 10.0;
+    double fare = distance * basePricePerKm;
+    int eta = random.nextInt(9) + 2; // 2-10 minutes
+    return new Ride(pickup, drop, distance, fare, eta, rider);
+  }
+
+  // Books the ride as REQUESTED and leaves it to the dispatcher
+  public void requestRide(Ride ride) {
+    createRide(ride);
+    dispatcher.submit(ride);
+  }
+
+  // Books the ride with a driver the rider picked; returns false if the driver was taken meanwhile
+  public boolean bookRide(Ride ride, Driver driver) {
+    return change(() -> bookWith(ride, driver, true));
+  }
+
+  private boolean bookWith(Ride ride, Driver driver, boolean awaitCommit) {
+    CompletableFuture<Void> logged;
+    synchronized (driver) {
+      // The ride is not added yet, so it is added as ONGOING rather than moved there
+      if (!pairUp(ride, driver)) {
+        return false;
       }
+      logged = queueInsert(ride, awaitCommit);
     }
-    return driverRides;
+    awaitLogged(logged);
+    return true;
+  }
+
+  public Dispatcher getDispatcher() {
+    return dispatcher;
+  }
+
+  public RideAnalytics getAnalytics() {
+    return analytics;
+  }
+
+  public EarningsLedger getLedger() {
+    return ledger;
+  }
+
+  // Paise the driver earned from rides completed in [fromMillis, toMillis)
+  public long getPayout(Driver driver, long fromMillis, long toMillis) {
+    return ledger.getPayout(driver, fromMillis, toMillis) + archive.getPayout(driver, fromMillis, toMillis, users);
   }
 
   public void createRide(Ride ride) {
-    rides.add(ride);
-    saveData();
+    change(() -> insertRide(ride, true));
   }
 
-  // Helper method to replace .toList() from streams
-  private List<Ride> filterRidesByStatus(String status) {
-    List<Ride> filteredRides = new ArrayList<>();
-    for (Ride ride : rides) {
-      if (ride.getStatus().equals(status)) {
-        filteredRides.add(ride);
+  private void insertRide(Ride ride, boolean awaitCommit) {
+    awaitLogged(queueInsert(ride, awaitCommit));
+  }
+
+  private CompletableFuture<Void> queueInsert(Ride ride, boolean awaitCommit) {
+    addRide(ride);
+    ride.getRider().addRideToHistory(ride);
+    return queueMutation(Mutation.rideCreated(ride), awaitCommit);
+  }
+
+  // Adds a loaded or replayed ride, links it into its rider's and driver's histories and credits completed fares
+  private void restoreRide(Ride ride) {
+    RideIdGenerator.shared().observe(ride.getRideId());
+    if (archive.isPendingRide(ride.getRideId())) {
+      return;
+    }
+    addRide(ride);
+    link(ride.getRider(), ride);
+    if (ride.getDriver() != null) {
+      link(ride.getDriver(), ride);
+      if (ride.getStatus() == RideStatus.ONGOING) {
+        ride.getDriver().claim(ride);
+        users.updateAvailability(ride.getDriver());
+      } else if (ride.getStatus() == RideStatus.COMPLETED) {
+        ledger.record(ride);
       }
     }
-    return filteredRides;
   }
 
-  private List<Driver> filterUnapprovedDrivers() {
-    List<Driver> unapprovedDrivers = new ArrayList<>();
-    for (User user : users) {
-      if (user instanceof Driver) {
-        Driver driver = (Driver) user;
-        if (!driver.isApproved()) {
-          unapprovedDrivers.add(driver);
-        }
-      }
+  // Adds the ride to the rider's history or the driver's rides; while loading, only noted for linkLoadedRides
+  private void link(User user, Ride ride) {
+    if (loadingLinks != null) {
+      loadingLinks.computeIfAbsent(user, u -> new ArrayList<>()).add(ride);
+    } else if (user instanceof Rider) {
+      ((Rider) user).addRideToHistory(ride);
+    } else {
+      ((Driver) user).addAssignedRide(ride);
     }
-    return unapprovedDrivers;
   }
 
-  // Admin methods
-  public List<Rider> getRiders() {
-    List<Rider> riders = new ArrayList<>();
-    for (User user : users) {
-      if (user instanceof Rider) {
-        riders.add((Rider) user);
+  private void addRide(Ride ride) {
+    ridesLock.writeLock().lock();
+    try {
+      rides.add(bookingPosition(rides, ride), ride);
+    } finally {
+      ridesLock.writeLock().unlock();
+    }
+    // Counted before it is indexed: once drivers can see it, it can move on at any moment
+    rideColumns.add(ride);
+    analytics.add(ride);
+    ridesById.put(ride.getRideId(), ride);
+    rideIndex.add(ride);
+  }
+
+  // Where the ride goes to keep the list in booking order, which listing cursors rely on; rides are added soon after
+  // they are quoted, so the search from the end stops at or near it
+  static int bookingPosition(List<Ride> list, Ride ride) {
+    int at = list.size();
+    while (at > 0 && RideIndex.BOOKING_ORDER.compare(list.get(at - 1), ride) > 0) {
+      at--;
+    }
+    return at;
+  }
+
+  // Brings the indexes, columns and analytics up to date after a successful transition
+  private void rideMoved(Ride ride, RideStatus from, RideStatus to) {
+    rideIndex.moved(ride, from);
+    rideColumns.update(ride);
+    analytics.moved(ride, from, to);
+  }
+
+  // Gives an open ride to the driver; returns false at once if someone else got it first
+  public boolean acceptRide(Ride ride, Driver driver) {
+    return change(() -> accept(ride, driver, true));
+  }
+
+  private boolean accept(Ride ride, Driver driver, boolean awaitCommit) {
+    CompletableFuture<Void> logged;
+    synchronized (driver) {
+      if (!assignDriver(ride, driver)) {
+        return false;
       }
+      logged = queueMutation(new Mutation(Mutation.Type.RIDE_ACCEPTED)
+          .with("rideId", ride.getRideId())
+          .with("driverUsername", driver.getUsername()), awaitCommit);
     }
-    return riders;
+    awaitLogged(logged);
+    return true;
   }
 
-  public List<Driver> getDrivers() {
-    List<Driver> drivers = new ArrayList<>();
-    for (User user : users) {
-      if (user instanceof Driver) {
-        drivers.add((Driver) user);
+  // Pairs an added ride with the driver and refiles it as ONGOING
+  private boolean assignDriver(Ride ride, Driver driver) {
+    if (!pairUp(ride, driver)) {
+      return false;
+    }
+    rideMoved(ride, RideStatus.REQUESTED, RideStatus.ONGOING);
+    return true;
+  }
+
+  // Gives the ride and the driver to each other, or neither if either is already taken
+  private boolean pairUp(Ride ride, Driver driver) {
+    if (!driver.claim(ride)) {
+      return false;
+    }
+    if (!ride.assign(driver)) {
+      driver.release(ride);
+      return false;
+    }
+    link(driver, ride);
+    users.updateAvailability(driver);
+    return true;
+  }
+
+  // Completes and logs an ongoing ride; returns false if another session completed it first
+  public boolean finishRide(Ride ride, String paymentMethod, String upiId) {
+    Driver driver = ride.getDriver();
+    if (driver == null) {
+      // Not accepted, so not ongoing
+      return false;
+    }
+    return change(() -> finish(ride, driver, paymentMethod, upiId, true));
+  }
+
+  private boolean finish(Ride ride, Driver driver, String paymentMethod, String upiId, boolean awaitCommit) {
+    // A driver's accepts and completions are applied and queued to the log under its lock, so replay sees them in
+    // order; the fsync is waited for after letting go, so the driver's other sessions don't queue behind the disk
+    CompletableFuture<Void> logged;
+    synchronized (driver) {
+      if (!completeRide(ride, System.currentTimeMillis(), paymentMethod, upiId)) {
+        return false;
       }
+      logged = queueMutation(new Mutation(Mutation.Type.RIDE_COMPLETED)
+          .with("rideId", ride.getRideId())
+          .with("completionTime", JsonSnapshot.formatTime(ride.getCompletionTime()))
+          .with("paymentMethod", ride.getPaymentMethod())
+          .with("upiId", ride.getUpiId()), awaitCommit);
+    }
+    awaitLogged(logged);
+    return true;
+  }
+
+  // Completes an ongoing ride and credits the driver once; returns false if it was already completed
+  private boolean completeRide(Ride ride, long completionTime, String paymentMethod, String upiId) {
+    if (!ride.complete(completionTime)) {
+      return false;
+    }
+    if (paymentMethod != null) {
+      ride.setPaymentMethod(paymentMethod);
+      ride.setUpiId(upiId);
     }
-    return drivers;
+    rideMoved(ride, RideStatus.ONGOING, RideStatus.COMPLETED);
+
+    if (ride.getDriver() != null) {
+      ledger.record(ride);
+      ride.getDriver().release(ride);
+      users.updateAvailability(ride.getDriver());
+    }
+    return true;
   }
 
-  public void approveDriver(String username) {
-    for (User user : users) {
-      if (user instanceof Driver && user.getUsername().equals(username)) {
-        ((Driver) user).setApproved(true);
-        saveData();
-        System.out.println("Driver approved successfully!");
-        return;
+  // Cancels a requested or ongoing ride of the rider's; returns false if it had already completed or been cancelled
+  public boolean cancelRide(Ride ride) {
+    return change(() -> cancel(ride, true));
+  }
+
+  private boolean cancel(Ride ride, boolean awaitCommit) {
+    CompletableFuture<Void> logged;
+    while (true) {
+      Driver driver = ride.getDriver();
+      if (driver == null) {
+        if (cancelFrom(ride, RideStatus.REQUESTED)) {
+          logged = queueMutation(new Mutation(Mutation.Type.RIDE_CANCELLED).with("rideId", ride.getRideId()),
+              awaitCommit);
+          break;
+        }
+      } else {
+        // Under the driver's lock like its accepts and completions, so replay frees the driver before its next ride.
+        // An accept still assigning the ride holds it too, so the ride is settled one way or the other once inside.
+        synchronized (driver) {
+          if (cancelFrom(ride, RideStatus.ONGOING)) {
+            logged = queueMutation(new Mutation(Mutation.Type.RIDE_CANCELLED).with("rideId", ride.getRideId()),
+                awaitCommit);
+            break;
+          }
+        }
+      }
+      RideStatus status = ride.getStatus();
+      if (status == RideStatus.COMPLETED || status == RideStatus.CANCELLED) {
+        return false;
       }
     }
-    System.out.println("Driver not found!");
+    awaitLogged(logged);
+    return true;
   }
 
-  public void removeUser(String username) {
-    for (Iterator<User> iterator = users.iterator(); iterator.hasNext();) {
-      User user = iterator.next();
-      if (user.getUsername().equals(username)) {
-        iterator.remove();
-        saveData();
-        System.out.println("User removed successfully!");
-        return;
+  // Cancels the ride out of the given status and frees its driver; returns false if it is no longer in it
+  private boolean cancelFrom(Ride ride, RideStatus from) {
+    if (!ride.cancel(from)) {
+      return false;
+    }
+    rideMoved(ride, from, RideStatus.CANCELLED);
+    Driver driver = ride.getDriver();
+    if (driver != null) {
+      driver.release(ride);
+      users.updateAvailability(driver);
+    }
+    return true;
+  }
+
+  // Batch API: applies the items in order under one checkpoint and one persistence commit, one result per item.
+  // A snapshot never splits a batch, and in sync mode the batch waits for the disk once rather than per item.
+  public List<RideBatch.Result> applyBatch(RideBatch batch) {
+    List<RideBatch.Result> results = change(() -> {
+      List<RideBatch.Result> applied = new ArrayList<>(batch.size());
+      List<RideBatch.Item> items = batch.getItems();
+      for (int i = 0; i < items.size(); i++) {
+        applied.add(applyItem(i, items.get(i)));
+      }
+      return applied;
+    });
+    if (persistence.getDurability() == PersistenceWriter.Durability.SYNC && !persistence.flush()) {
+      // Some of the batch is not in the log, so only a snapshot can keep it
+      changesSinceSnapshot.set(CHECKPOINT_INTERVAL);
+      checkpoint();
+    }
+    return results;
+  }
+
+  private RideBatch.Result applyItem(int index, RideBatch.Item item) {
+    switch (item.getKind()) {
+      case BOOK: {
+        Rider rider = users.findRider(item.getUsername());
+        if (rider == null) {
+          return RideBatch.Result.failed(index, null, "Rider not found: " + item.getUsername());
+        }
+        if (isBlank(item.getPickup()) || isBlank(item.getDrop())) {
+          return RideBatch.Result.failed(index, null, "pickup and drop are required");
+        }
+        Ride ride = quoteRide(rider, item.getPickup(), item.getDrop());
+        if (item.getDriverUsername() == null) {
+          insertRide(ride, false);
+          dispatcher.submit(ride);
+          return RideBatch.Result.ok(index, ride.getRideId());
+        }
+        Driver driver = users.findDriver(item.getDriverUsername());
+        if (driver == null || !driver.isApproved() || !driver.isOnline()) {
+          return RideBatch.Result.failed(index, null, "Driver not available: " + item.getDriverUsername());
+        }
+        return bookWith(ride, driver, false)
+            ? RideBatch.Result.ok(index, ride.getRideId())
+            : RideBatch.Result.failed(index, null, "Driver already on a ride: " + item.getDriverUsername());
+      }
+      case ACCEPT: {
+        Ride ride = findRide(item.getRideId());
+        if (ride == null) {
+          return RideBatch.Result.failed(index, item.getRideId(), "No such ride");
+        }
+        Driver driver = users.findDriver(item.getUsername());
+        if (driver == null || !driver.isApproved() || !driver.isOnline()) {
+          return RideBatch.Result.failed(index, item.getRideId(), "Driver not available: " + item.getUsername());
+        }
+        if (ride.getStatus() != RideStatus.REQUESTED) {
+          return RideBatch.Result.failed(index, item.getRideId(), "Ride is " + ride.getStatus());
+        }
+        return accept(ride, driver, false)
+            ? RideBatch.Result.ok(index, item.getRideId())
+            : RideBatch.Result.failed(index, item.getRideId(), "Ride already taken or driver busy");
+      }
+      case COMPLETE: {
+        Ride ride = findRide(item.getRideId());
+        if (ride == null) {
+          return RideBatch.Result.failed(index, item.getRideId(), "No such ride");
+        }
+        String paymentError = checkPayment(item.getPaymentMethod(), item.getUpiId());
+        if (paymentError != null) {
+          return RideBatch.Result.failed(index, item.getRideId(), paymentError);
+        }
+        Driver driver = ride.getDriver();
+        if (driver == null || ride.getStatus() != RideStatus.ONGOING) {
+          return RideBatch.Result.failed(index, item.getRideId(), "Ride is not ongoing");
+        }
+        return finish(ride, driver, item.getPaymentMethod(), item.getUpiId(), false)
+            ? RideBatch.Result.ok(index, item.getRideId())
+            : RideBatch.Result.failed(index, item.getRideId(), "Ride is not ongoing");
       }
+      default:
+        return RideBatch.Result.failed(index, item.getRideId(), "Unknown item: " + item.getKind());
     }
-    System.out.println("User not found!");
+  }
+
+  // Why a payment can't be taken as given, or null if it can; no method means the ride's own
+  static String checkPayment(String method, String upiId) {
+    if (method != null && !method.equals("UPI") && !method.equals("Cash") && !method.equals("Wallet")) {
+      return "Unknown payment method: " + method;
+    }
+    if ("UPI".equals(method) && isBlank(upiId)) {
+      return "UPI payments need a upiId";
+    }
+    return null;
+  }
+
+  private static boolean isBlank(String value) {
+    return value == null || value.trim().isEmpty();
+  }
+
+  // Rides currently in the status, in booking order
+  public List<Ride> filterRidesByStatus(RideStatus status) {
+    return rideIndex.withStatus(status);
+  }
+
+  private List<Driver> filterUnapprovedDrivers() {
+    return users.getUnapprovedDrivers();
+  }
+
+  // Admin methods
+  public List<Rider> getRiders() {
+    return users.getRiders();
+  }
+
+  public List<Driver> getDrivers() {
+    return users.getDrivers();
+  }
+
+  // Returns false if there is no such driver
+  public boolean approveDriver(String username) {
+    return change(() -> {
+      Driver driver = users.findDriver(username);
+      if (driver == null) {
+        return false;
+      }
+      users.approveDriver(driver);
+      logMutation(new Mutation(Mutation.Type.DRIVER_APPROVED).with("username", username));
+      return true;
+    });
+  }
+
+  // Returns false if there is no such user
+  public boolean removeUser(String username) {
+    return change(() -> {
+      if (users.remove(username) == null) {
+        return false;
+      }
+      logMutation(new Mutation(Mutation.Type.USER_REMOVED).with("username", username));
+      return true;
+    });
   }
 
   // Getters and setters
@@ -502,12 +966,103 @@ class RapidoSystem implements Serializable {
   }
 
   public void setBasePricePerKm(double basePricePerKm) {
-    this.basePricePerKm = basePricePerKm;
-    saveData();
+    change(() -> {
+      this.basePricePerKm = basePricePerKm;
+      logMutation(new Mutation(Mutation.Type.PRICE_CHANGED).with("basePricePerKm", basePricePerKm));
+    });
   }
 
+  // One page of all rides in booking order, starting after the cursor (null for the first page)
+  public Page<Ride> getRides(String cursor, int pageSize) {
+    ridesLock.readLock().lock();
+    try {
+      return Page.of(rides, cursor, pageSize);
+    } finally {
+      ridesLock.readLock().unlock();
+    }
+  }
+
+  // One page of the rider's rides in booking order; archived and in-memory rides are merged page by page
+  public Page<Ride> getRideHistory(Rider rider, String cursor, int pageSize) {
+    return Page.merged(Arrays.asList(archivedHistory(rider), rider.getRideHistory()), cursor, pageSize);
+  }
+
+  // With lazy startup every finished ride is archived, so the user's archived rides are read back on first use and
+  // kept in the history cache; otherwise they are reached by month and this is empty
+  private List<Ride> archivedHistory(User user) {
+    if (!archive.isArchivingAll()) {
+      return Collections.emptyList();
+    }
+    return histories.get(user, u -> archive.getHistory(u, users));
+  }
+
+  // Months whose archived rides include the user's, oldest first
+  public List<YearMonth> getArchivedMonths(User user) {
+    return archive.getMonths(user);
+  }
+
+  // One page of the rider's archived rides booked in the month; reads the month from the archive if needed
+  public Page<Ride> getArchivedHistory(Rider rider, YearMonth month, String cursor, int pageSize) {
+    return Page.of(archive.getHistory(rider, month, users), cursor, pageSize);
+  }
+
+  // Rides in memory plus archived ones, as rider or driver
+  public int getRideCount(User user) {
+    int inMemory = user instanceof Rider ? ((Rider) user).getRideHistory().size()
+        : user instanceof Driver ? ((Driver) user).getAssignedRides().size() : 0;
+    return inMemory + archive.getRideCount(user);
+  }
+
+  // Copy of all rides in booking order
   public List<Ride> getRides() {
-    return rides;
+    ridesLock.readLock().lock();
+    try {
+      return new ArrayList<>(rides);
+    } finally {
+      ridesLock.readLock().unlock();
+    }
+  }
+
+  // Streams receipts of rides booked in [fromMillis, toMillis) to the file; returns how many were written.
+  // Rides are copied out a page at a time, so bookings carry on during a long export. No rides move into the
+  // archive while it runs, so none can slip between the archive pass and the in-memory pass; checkpoints still
+  // snapshot as usual.
+  public long exportReceipts(long fromMillis, long toMillis, File file) throws IOException {
+    // Counted under the read lock so an archive run already in progress lands before the archive pass starts
+    checkpointLock.readLock().lock();
+    try {
+      exportsRunning.incrementAndGet();
+    } finally {
+      checkpointLock.readLock().unlock();
+    }
+    try (ReceiptExporter exporter = new ReceiptExporter(file)) {
+      // Archived months come first, being older than anything still in memory
+      for (YearMonth month : archive.getMonthsBooked(fromMillis, toMillis)) {
+        for (Ride ride : archive.getMonth(month, users)) {
+          long booked = ride.getBookingTime();
+          if (booked >= fromMillis && booked < toMillis) {
+            exporter.write(ride);
+          }
+        }
+      }
+      String cursor = null;
+      do {
+        Page<Ride> page = getRides(cursor, EXPORT_CHUNK);
+        for (Ride ride : page.getItems()) {
+          long booked = ride.getBookingTime();
+          if (booked >= toMillis) {
+            return exporter.getCount();
+          }
+          if (booked >= fromMillis) {
+            exporter.write(ride);
+          }
+        }
+        cursor = page.getNextCursor();
+      } while (cursor != null);
+      return exporter.getCount();
+    } finally {
+      exportsRunning.decrementAndGet();
+    }
   }
 
   public Random getRandom() {
@@ -647,10 +1202,11 @@ class RapidoSystem implements Serializable {
       System.out.println("║ 1. Book a Ride                       ║");
       System.out.println("║ 2. View Nearby Drivers               ║");
       System.out.println("║ 3. Make Payment                      ║");
-      System.out.println("║ 4. Ride History                      ║");
-      System.out.println("║ 5. Logout                            ║");
+      System.out.println("║ 4. Cancel a Ride                     ║");
+      System.out.println("║ 5. Ride History                      ║");
+      System.out.println("║ 6. Logout                            ║");
       System.out.println("╚══════════════════════════════════════╝");
-      System.out.print("Choose an option (1-5): ");
+      System.out.print("Choose an option (1-6): ");
 
       try {
         int choice = scanner.nextInt();
@@ -661,15 +1217,18 @@ class RapidoSystem implements Serializable {
             bookRideMenu(scanner, rider);
             break;
           case 2:
-            viewNearbyDrivers();
+            viewNearbyDrivers(scanner);
             break;
           case 3:
             makePaymentMenu(scanner, rider);
             break;
           case 4:
-            viewRideHistory(rider);
+            cancelRideMenu(scanner, rider);
             break;
           case 5:
+            viewRideHistory(scanner, rider);
+            break;
+          case 6:
             System.out.println("Logging out...");
             return;
           default:
@@ -693,47 +1252,48 @@ class RapidoSystem implements Serializable {
     String drop = scanner.nextLine();
 
     // Generate random ride details
-    double distance = Math.round((random.nextDouble() * 9 + 1) * 10.0) / 10.0;
-    double fare = distance * basePricePerKm;
-    int eta = random.nextInt(9) + 2; // 2-10 minutes
+    Ride ride = quoteRide(rider, pickup, drop);
 
     System.out.println("\nRide Details:");
-    System.out.println("Distance: " + distance + " km");
-    System.out.println("Fare: ₹" + String.format("%.2f", fare));
-    System.out.println("ETA: " + eta + " minutes");
+    System.out.println("Distance: " + ride.getDistance() + " km");
+    System.out.println("Fare: ₹" + String.format("%.2f", ride.getFare()));
+    System.out.println("ETA: " + ride.getEta() + " minutes");
 
-    // Show available drivers
-    List<Driver> availableDrivers = getAvailableDrivers();
+    // Show the nearest available drivers to the pickup point
+    List<DriverLocator.Match> availableDrivers = getNearestDrivers(pickup, NEAREST_DRIVERS_SHOWN);
     if (availableDrivers.isEmpty()) {
       System.out.println("No drivers available at the moment!");
       return;
     }
 
     System.out.println("\nAvailable Drivers:");
+    System.out.println("0. Assign me the nearest driver automatically");
     for (int i = 0; i < availableDrivers.size(); i++) {
-      Driver driver = availableDrivers.get(i);
+      DriverLocator.Match match = availableDrivers.get(i);
       System.out.printf("%d. %s - %s (%.1f km away)\n",
-          i + 1, driver.getName(), driver.getVehicleNo(),
-          random.nextDouble() * 5 + 0.5);
+          i + 1, match.getDriver().getName(), match.getDriver().getVehicleNo(),
+          match.getDistanceKm());
     }
 
-    System.out.print("Select driver (1-" + availableDrivers.size() + "): ");
+    System.out.print("Select driver (0-" + availableDrivers.size() + "): ");
     try {
       int driverChoice = scanner.nextInt();
       scanner.nextLine();
 
+      if (driverChoice == 0) {
+        waitForDriver(ride);
+        return;
+      }
       if (driverChoice < 1 || driverChoice > availableDrivers.size()) {
         System.out.println("Invalid driver selection!");
         return;
       }
 
-      Driver selectedDriver = availableDrivers.get(driverChoice - 1);
-      Ride ride = new Ride(pickup, drop, distance, fare, eta, rider);
-      ride.setDriver(selectedDriver);
-      ride.setStatus("ONGOING");
-      createRide(ride);
-      rider.addRideToHistory(ride);
-      selectedDriver.addAssignedRide(ride);
+      Driver selectedDriver = availableDrivers.get(driverChoice - 1).getDriver();
+      if (!bookRide(ride, selectedDriver)) {
+        System.out.println("That driver has just been booked - please try again!");
+        return;
+      }
 
       System.out.println("Ride booked successfully!");
       System.out.println(ride.generateReceipt());
@@ -744,8 +1304,23 @@ class RapidoSystem implements Serializable {
     }
   }
 
-  private void viewNearbyDrivers() {
-    List<Driver> availableDrivers = getAvailableDrivers();
+  // Leaves the ride REQUESTED for the dispatcher and waits a few windows for it to be matched
+  private void waitForDriver(Ride ride) {
+    requestRide(ride);
+    System.out.println("Finding you a driver...");
+
+    if (dispatcher.awaitAssignment(ride, dispatcher.getWindowMs() * 3 + 1000)) {
+      System.out.println("Ride booked successfully!");
+      System.out.println(ride.generateReceipt());
+    } else {
+      System.out.println("No driver is free yet - your ride stays requested and will be assigned automatically.");
+    }
+  }
+
+  private void viewNearbyDrivers(Scanner scanner) {
+    System.out.print("Enter your location: ");
+    String location = scanner.nextLine();
+    List<DriverLocator.Match> availableDrivers = getDriversWithin(location, NEARBY_RADIUS_KM);
 
     if (availableDrivers.isEmpty()) {
       System.out.println("No drivers available nearby!");
@@ -757,21 +1332,53 @@ class RapidoSystem implements Serializable {
     System.out.println("╠══════════════════════════════════════════════════════════════════╣");
 
     for (int i = 0; i < availableDrivers.size(); i++) {
-      Driver driver = availableDrivers.get(i);
-      double distance = Math.round((random.nextDouble() * 5 + 0.5) * 10.0) / 10.0;
+      Driver driver = availableDrivers.get(i).getDriver();
       System.out.printf("%d. %s - %s | %.1f km away | Rating: %.1f ⭐\n",
-          i + 1, driver.getName(), driver.getVehicleNo(), distance, 4.0 + random.nextDouble());
+          i + 1, driver.getName(), driver.getVehicleNo(), availableDrivers.get(i).getDistanceKm(),
+          4.0 + random.nextDouble());
     }
     System.out.println("╚══════════════════════════════════════════════════════════════════╝");
   }
 
-  private void makePaymentMenu(Scanner scanner, Rider rider) {
-    List<Ride> ongoingRides = new ArrayList<>();
-    for (Ride ride : rides) {
-      if (ride.getRider() == rider && ride.getStatus().equals("ONGOING")) {
-        ongoingRides.add(ride);
+  private void cancelRideMenu(Scanner scanner, Rider rider) {
+    List<Ride> openRides = getCancellableRides(rider);
+
+    if (openRides.isEmpty()) {
+      System.out.println("No rides to cancel!");
+      return;
+    }
+
+    System.out.println("\nYour Rides:");
+    for (int i = 0; i < openRides.size(); i++) {
+      Ride ride = openRides.get(i);
+      System.out.printf("%d. %s to %s - ₹%.2f - %s\n",
+          i + 1, ride.getPickupLocation(), ride.getDropLocation(), ride.getFare(), ride.getStatus());
+    }
+
+    System.out.print("Select ride to cancel (1-" + openRides.size() + "): ");
+    try {
+      int rideChoice = scanner.nextInt();
+      scanner.nextLine();
+
+      if (rideChoice < 1 || rideChoice > openRides.size()) {
+        System.out.println("Invalid selection!");
+        return;
       }
+
+      if (!cancelRide(openRides.get(rideChoice - 1))) {
+        System.out.println("This ride has already been completed or cancelled!");
+        return;
+      }
+      System.out.println("Ride cancelled.");
+
+    } catch (InputMismatchException e) {
+      System.out.println("Please enter a valid number!");
+      scanner.nextLine();
     }
+  }
+
+  private void makePaymentMenu(Scanner scanner, Rider rider) {
+    List<Ride> ongoingRides = getOngoingRides(rider);
 
     if (ongoingRides.isEmpty()) {
       System.out.println("No ongoing rides found!");
@@ -826,17 +1433,10 @@ class RapidoSystem implements Serializable {
           return;
       }
 
-      selectedRide.setPaymentMethod(paymentMethod);
-      selectedRide.setUpiId(upiId);
-      selectedRide.setStatus("COMPLETED");
-      selectedRide.setCompletionTime(new Date());
-
-      // Add earnings to driver
-      if (selectedRide.getDriver() != null) {
-        selectedRide.getDriver().addEarnings(selectedRide.getFare());
+      if (!finishRide(selectedRide, paymentMethod, upiId)) {
+        System.out.println("This ride has already been completed!");
+        return;
       }
-
-      saveData();
       System.out.println("Payment successful!");
       System.out.println(selectedRide.generateReceipt());
 
@@ -846,10 +1446,8 @@ class RapidoSystem implements Serializable {
     }
   }
 
-  private void viewRideHistory(Rider rider) {
-    List<Ride> history = rider.getRideHistory();
-
-    if (history.isEmpty()) {
+  private void viewRideHistory(Scanner scanner, Rider rider) {
+    if (getRideCount(rider) == 0) {
       System.out.println("No ride history found!");
       return;
     }
@@ -858,17 +1456,71 @@ class RapidoSystem implements Serializable {
     System.out.println("║                                RIDE HISTORY                                      ║");
     System.out.println("╠══════════════════════════════════════════════════════════════════════════════════╣");
 
-    SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+    BiFunction<Integer, Ride, String> row = (number, ride) -> String.format(
+        "║ %-2d. %-12s | %-15s | %-8.1fkm | ₹%-6.2f | %-10s | %-16s ║",
+        number, ride.getRideId(),
+        ride.getDriver() != null ? ride.getDriver().getName() : "N/A",
+        ride.getDistance(), ride.getFare(), ride.getStatus(),
+        formatListingTime(ride.getBookingTime()));
+    pageThroughRides(scanner, cursor -> getRideHistory(rider, cursor, RIDES_PER_PAGE), row);
+    System.out.println("╚══════════════════════════════════════════════════════════════════════════════════╝");
+    // With lazy startup the pages above already went through the archived rides
+    List<YearMonth> archivedMonths = archive.isArchivingAll() ? Collections.<YearMonth>emptyList()
+        : getArchivedMonths(rider);
+    if (archivedMonths.isEmpty()) {
+      return;
+    }
 
-    for (int i = 0; i < history.size(); i++) {
-      Ride ride = history.get(i);
-      System.out.printf("║ %-2d. %-12s | %-15s | %-8.1fkm | ₹%-6.2f | %-10s | %-16s ║\n",
-          i + 1, ride.getRideId(),
-          ride.getDriver() != null ? ride.getDriver().getName() : "N/A",
-          ride.getDistance(), ride.getFare(), ride.getStatus(),
-          sdf.format(ride.getBookingTime()));
+    // Older rides are archived by month and only read back when asked for
+    StringBuilder months = new StringBuilder("Older rides by month:");
+    for (YearMonth month : archivedMonths) {
+      months.append(' ').append(month).append(" (").append(archive.getRideCount(rider, month)).append(')');
+    }
+    System.out.println(months);
+    while (true) {
+      System.out.print("Month to view (yyyy-MM), Enter to stop: ");
+      if (!scanner.hasNextLine()) {
+        return;
+      }
+      String input = scanner.nextLine().trim();
+      if (input.isEmpty()) {
+        return;
+      }
+      try {
+        YearMonth month = YearMonth.parse(input);
+        pageThroughRides(scanner, cursor -> getArchivedHistory(rider, month, cursor, RIDES_PER_PAGE), row);
+      } catch (DateTimeParseException e) {
+        System.out.println("Please enter the month as yyyy-MM!");
+      }
+    }
+  }
+
+  // dd-MM-yyyy HH:mm, as the ride listings show booking times
+  private static String formatListingTime(long millis) {
+    return TimestampCodec.local().appendDayFirst(new StringBuilder(16), millis, false).toString();
+  }
+
+  // Prints a listing one page at a time until it ends or the user stops; each page costs only its own rows
+  private void pageThroughRides(Scanner scanner, Function<String, Page<Ride>> pages,
+      BiFunction<Integer, Ride, String> row) {
+    String cursor = null;
+    int number = 1;
+    while (true) {
+      Page<Ride> page = pages.apply(cursor);
+      StringBuilder out = new StringBuilder();
+      for (Ride ride : page.getItems()) {
+        out.append(row.apply(number++, ride)).append('\n');
+      }
+      System.out.print(out);
+      if (!page.hasNext()) {
+        return;
+      }
+      System.out.print("-- Enter for the next page, q to stop -- ");
+      if (!scanner.hasNextLine() || scanner.nextLine().trim().equalsIgnoreCase("q")) {
+        return;
+      }
+      cursor = page.getNextCursor();
     }
-    System.out.println("╚══════════════════════════════════════════════════════════════════════════════════╝");
   }
 
   // Driver Menu
@@ -925,8 +1577,12 @@ class RapidoSystem implements Serializable {
       return;
     }
 
-    driver.setOnline(!driver.isOnline());
-    saveData();
+    String location = null;
+    if (!driver.isOnline()) {
+      System.out.print("Enter your current location: ");
+      location = scanner.nextLine();
+    }
+    setDriverOnline(driver, !driver.isOnline(), location);
     System.out.println("You are now " + (driver.isOnline() ? "ONLINE" : "OFFLINE"));
   }
 
@@ -984,10 +1640,10 @@ class RapidoSystem implements Serializable {
       }
 
       Ride selectedRide = requests.get(rideChoice - 1);
-      selectedRide.setDriver(driver);
-      selectedRide.setStatus("ONGOING");
-      driver.addAssignedRide(selectedRide);
-      saveData();
+      if (!acceptRide(selectedRide, driver)) {
+        System.out.println("This ride has already been taken!");
+        return;
+      }
 
       System.out.println("Ride accepted successfully!");
       System.out.println(selectedRide.generateReceipt());
@@ -999,12 +1655,7 @@ class RapidoSystem implements Serializable {
   }
 
   private void markRideCompletedMenu(Scanner scanner, Driver driver) {
-    List<Ride> ongoingRides = new ArrayList<>();
-    for (Ride ride : getDriverRides(driver)) {
-      if (ride.getStatus().equals("ONGOING")) {
-        ongoingRides.add(ride);
-      }
-    }
+    List<Ride> ongoingRides = getOngoingRides(driver);
 
     if (ongoingRides.isEmpty()) {
       System.out.println("No ongoing rides found!");
@@ -1029,10 +1680,10 @@ class RapidoSystem implements Serializable {
       }
 
       Ride selectedRide = ongoingRides.get(rideChoice - 1);
-      selectedRide.setStatus("COMPLETED");
-      selectedRide.setCompletionTime(new Date());
-      driver.addEarnings(selectedRide.getFare());
-      saveData();
+      if (!finishRide(selectedRide, null, null)) {
+        System.out.println("This ride has already been completed!");
+        return;
+      }
 
       System.out.println("Ride marked as completed!");
       System.out.println(selectedRide.generateReceipt());
@@ -1047,10 +1698,17 @@ class RapidoSystem implements Serializable {
     System.out.println("\n╔══════════════════════════════════════╗");
     System.out.println("║              EARNINGS                ║");
     System.out.println("╠══════════════════════════════════════╣");
+    LocalDate today = LocalDate.now();
+    ZoneId zone = ZoneId.systemDefault();
+    long startOfToday = today.atStartOfDay(zone).toInstant().toEpochMilli();
+    long startOfTomorrow = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    long weekAgo = today.minusDays(6).atStartOfDay(zone).toInstant().toEpochMilli();
     System.out.println("║ Total Earnings: ₹" + String.format("%-18.2f", driver.getEarnings()) + "║");
+    System.out.println("║ Today: ₹" + String.format("%-27.2f", getPayout(driver, startOfToday, startOfTomorrow) / 100.0) + "║");
+    System.out.println("║ Last 7 Days: ₹" + String.format("%-21.2f", getPayout(driver, weekAgo, startOfTomorrow) / 100.0) + "║");
     System.out.println("║ Approved: " + String.format("%-25s", driver.isApproved() ? "Yes" : "No") + "║");
     System.out.println("║ Online: " + String.format("%-26s", driver.isOnline() ? "Yes" : "No") + "║");
-    System.out.println("║ Total Rides: " + String.format("%-22d", driver.getAssignedRides().size()) + "║");
+    System.out.println("║ Total Rides: " + String.format("%-22d", getRideCount(driver)) + "║");
     System.out.println("╚══════════════════════════════════════╝");
   }
 
@@ -1066,9 +1724,13 @@ class RapidoSystem implements Serializable {
       System.out.println("║ 4. Change Base Price Per KM          ║");
       System.out.println("║ 5. Approve Drivers                   ║");
       System.out.println("║ 6. Remove User                       ║");
-      System.out.println("║ 7. Logout                            ║");
+      System.out.println("║ 7. Dispatch Statistics               ║");
+      System.out.println("║ 8. Ride Reports                      ║");
+      System.out.println("║ 9. System Analytics                  ║");
+      System.out.println("║ 10. Export Receipts                  ║");
+      System.out.println("║ 11. Logout                           ║");
       System.out.println("╚══════════════════════════════════════╝");
-      System.out.print("Choose an option (1-7): ");
+      System.out.print("Choose an option (1-11): ");
 
       try {
         int choice = scanner.nextInt();
@@ -1082,7 +1744,7 @@ class RapidoSystem implements Serializable {
             viewAllDrivers();
             break;
           case 3:
-            viewAllRides();
+            viewAllRides(scanner);
             break;
           case 4:
             changeBasePriceMenu(scanner);
@@ -1094,6 +1756,18 @@ class RapidoSystem implements Serializable {
             removeUserMenu(scanner);
             break;
           case 7:
+            viewDispatchStatistics();
+            break;
+          case 8:
+            viewRideReports();
+            break;
+          case 9:
+            viewSystemAnalytics();
+            break;
+          case 10:
+            exportReceiptsMenu(scanner);
+            break;
+          case 11:
             System.out.println("Logging out...");
             return;
           default:
@@ -1122,7 +1796,7 @@ class RapidoSystem implements Serializable {
       Rider rider = riders.get(i);
       System.out.printf("%d. %s | %s | %s | Rides: %d\n",
           i + 1, rider.getName(), rider.getPhone(),
-          rider.getUsername(), rider.getRideHistory().size());
+          rider.getUsername(), getRideCount(rider));
     }
     System.out.println("╚══════════════════════════════════════════════════════════════════╝");
   }
@@ -1149,8 +1823,8 @@ class RapidoSystem implements Serializable {
     System.out.println("╚══════════════════════════════════════════════════════════════════════════════════╝");
   }
 
-  private void viewAllRides() {
-    if (rides.isEmpty()) {
+  private void viewAllRides(Scanner scanner) {
+    if (getRides(null, 1).getItems().isEmpty()) {
       System.out.println("No rides found!");
       return;
     }
@@ -1159,15 +1833,184 @@ class RapidoSystem implements Serializable {
     System.out.println("║                                  ALL RIDES                                       ║");
     System.out.println("╠══════════════════════════════════════════════════════════════════════════════════╣");
 
-    SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+    pageThroughRides(scanner, cursor -> getRides(cursor, RIDES_PER_PAGE),
+        (number, ride) -> String.format("%d. %s | %s → %s | ₹%.2f | %s | %s",
+            number, ride.getRideId(), ride.getPickupLocation(), ride.getDropLocation(),
+            ride.getFare(), ride.getStatus(), formatListingTime(ride.getBookingTime())));
+    System.out.println("╚══════════════════════════════════════════════════════════════════════════════════╝");
+  }
+
+  private void viewDispatchStatistics() {
+    System.out.println("\n╔══════════════════════════════════════╗");
+    System.out.println("║         DISPATCH STATISTICS          ║");
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Algorithm: " + String.format("%-26s", dispatcher.getAlgorithm()) + "║");
+    System.out.println("║ Window: " + String.format("%-29s", dispatcher.getWindowMs() + " ms") + "║");
+    System.out.println("║ Rides Matched: " + String.format("%-22d", dispatcher.getMatchCount()) + "║");
+    System.out.println("║ Waiting: " + String.format("%-28d", dispatcher.getPendingCount()) + "║");
+    System.out.println("║ Matches/sec: " + String.format("%-24.2f", dispatcher.getMatchesPerSecond()) + "║");
+    System.out.println("║ Avg Latency: " + String.format("%-24s", String.format("%.1f ms", dispatcher.getAverageLatencyMs())) + "║");
+    System.out.println("║ Max Latency: " + String.format("%-24s", String.format("%.1f ms", dispatcher.getMaxLatencyMs())) + "║");
+    System.out.println("║ Last Batch: " + String.format("%-25s", String.format("%.2f ms", dispatcher.getLastBatchMs())) + "║");
+    System.out.println("╚══════════════════════════════════════╝");
+  }
 
-    for (int i = 0; i < rides.size(); i++) {
-      Ride ride = rides.get(i);
-      System.out.printf("%d. %s | %s → %s | ₹%.2f | %s | %s\n",
-          i + 1, ride.getRideId(), ride.getPickupLocation(), ride.getDropLocation(),
-          ride.getFare(), ride.getStatus(), sdf.format(ride.getBookingTime()));
+  // Live figures from the running totals; no rides are scanned
+  private void viewSystemAnalytics() {
+    List<Map.Entry<Driver, Double>> topDrivers = new ArrayList<>();
+    for (Driver driver : analytics.getEarningDrivers()) {
+      topDrivers.add(new AbstractMap.SimpleImmutableEntry<>(driver, analytics.getDriverRevenue(driver)));
     }
-    System.out.println("╚══════════════════════════════════════════════════════════════════════════════════╝");
+    topDrivers.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+
+    System.out.println("\n╔══════════════════════════════════════╗");
+    System.out.println("║           SYSTEM ANALYTICS           ║");
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Total Rides: " + String.format("%-24d", analytics.getRideCount()) + "║");
+    for (RideStatus status : RideStatus.values()) {
+      System.out.println("║ " + String.format("%-10s", status) + ": " + String.format("%-25d", analytics.getCount(status)) + "║");
+    }
+    System.out.println("║ Gross Revenue: " + String.format("%-22s", String.format("₹%.2f", analytics.getGrossRevenue())) + "║");
+    System.out.println("║ Avg ETA: " + String.format("%-28s", String.format("%.1f min", analytics.getAverageEta())) + "║");
+    System.out.println("║ Avg Distance: " + String.format("%-23s", String.format("%.1f km", analytics.getAverageDistance())) + "║");
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Bookings/hour (last 5 min): " + String.format("%-9.1f", analytics.getBookingsPerHour(5)) + "║");
+    System.out.println("║ Bookings/hour (last 15 min): " + String.format("%-8.1f", analytics.getBookingsPerHour(15)) + "║");
+    System.out.println("║ Bookings/hour (last 60 min): " + String.format("%-8.1f", analytics.getBookingsPerHour(60)) + "║");
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Revenue per Driver (top 5)           ║");
+    for (Map.Entry<Driver, Double> entry : topDrivers.subList(0, Math.min(5, topDrivers.size()))) {
+      System.out.println("║ " + String.format("%-16s", entry.getKey().getName()) + " "
+          + String.format("%-20s", String.format("₹%.2f", entry.getValue())) + "║");
+    }
+    System.out.println("╚══════════════════════════════════════╝");
+  }
+
+  // Receipts of rides booked between two dates, inclusive, streamed to a file
+  private void exportReceiptsMenu(Scanner scanner) {
+    try {
+      System.out.print("From date (yyyy-MM-dd): ");
+      LocalDate from = LocalDate.parse(scanner.nextLine().trim());
+      System.out.print("To date, inclusive (yyyy-MM-dd): ");
+      LocalDate to = LocalDate.parse(scanner.nextLine().trim());
+      System.out.print("Export to file [receipts.txt]: ");
+      String fileName = scanner.nextLine().trim();
+      File file = new File(fileName.isEmpty() ? "receipts.txt" : fileName);
+
+      ZoneId zone = ZoneId.systemDefault();
+      long start = System.nanoTime();
+      long count = exportReceipts(from.atStartOfDay(zone).toInstant().toEpochMilli(),
+          to.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli(), file);
+      System.out.printf("Exported %d receipts to %s in %d ms%n", count, file.getPath(), (System.nanoTime() - start) / 1_000_000);
+    } catch (DateTimeParseException e) {
+      System.out.println("Please enter dates as yyyy-MM-dd!");
+    } catch (IOException e) {
+      System.out.println("Error exporting receipts: " + e.getMessage());
+    }
+  }
+
+  // Scans the ride columns and adds the archive's totals; recent days and top drivers only, so the screen stays short
+  private void viewRideReports() {
+    long start = System.nanoTime();
+    long[] byStatus;
+    double completionRate;
+    double averageFare;
+    double averageDistance;
+    SortedMap<LocalDate, Double> revenueByDay;
+    List<Map.Entry<Driver, Double>> topDrivers;
+    // Held still, so no ride moves from the columns into the archive between the two being read
+    checkpointLock.readLock().lock();
+    try {
+      // Archived rides count through the archive index's totals, as they do for the system analytics
+      byStatus = archive.getCountsByStatus();
+      int[] inMemory = rideColumns.countByStatus();
+      long total = 0;
+      for (RideStatus status : RideStatus.values()) {
+        byStatus[status.ordinal()] += inMemory[status.ordinal()];
+        total += byStatus[status.ordinal()];
+      }
+      long completed = byStatus[RideStatus.COMPLETED.ordinal()];
+      completionRate = total > 0 ? (double) completed / total : 0;
+      double revenue = rideColumns.completedRevenue() + archive.getRevenuePaise() / 100.0;
+      averageFare = completed > 0 ? revenue / completed : 0;
+      double distance = rideColumns.averageDistance() * rideColumns.size() + archive.getDistanceMetres() / 1000.0;
+      averageDistance = total > 0 ? distance / total : 0;
+      revenueByDay = recentRevenueByDay(7);
+      topDrivers = topDriversByRevenue(5);
+    } finally {
+      checkpointLock.readLock().unlock();
+    }
+    double scanMs = (System.nanoTime() - start) / 1e6;
+
+    System.out.println("\n╔══════════════════════════════════════╗");
+    System.out.println("║             RIDE REPORTS             ║");
+    System.out.println("╠══════════════════════════════════════╣");
+    for (RideStatus status : RideStatus.values()) {
+      System.out.println("║ " + String.format("%-10s", status) + ": " + String.format("%-25d", byStatus[status.ordinal()]) + "║");
+    }
+    System.out.println("║ Completion Rate: " + String.format("%-20s", String.format("%.1f%%", completionRate * 100)) + "║");
+    System.out.println("║ Avg Fare: " + String.format("%-27s", String.format("₹%.2f", averageFare)) + "║");
+    System.out.println("║ Avg Distance: " + String.format("%-23s", String.format("%.1f km", averageDistance)) + "║");
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Revenue by Day (last 7)              ║");
+    for (LocalDate day : revenueByDay.keySet()) {
+      System.out.println("║ " + day + ": " + String.format("%-25s", String.format("₹%.2f", revenueByDay.get(day))) + "║");
+    }
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Top Drivers by Revenue               ║");
+    for (Map.Entry<Driver, Double> entry : topDrivers) {
+      System.out.println("║ " + String.format("%-16s", entry.getKey().getName()) + " "
+          + String.format("%-20s", String.format("₹%.2f", entry.getValue())) + "║");
+    }
+    System.out.println("╠══════════════════════════════════════╣");
+    System.out.println("║ Scanned " + String.format("%-29s", rideColumns.size() + " rides in " + String.format("%.1f ms", scanMs)) + "║");
+    System.out.println("╚══════════════════════════════════════╝");
+  }
+
+  // The last days with completed rides and their revenue, archived rides included. The archive is read back from
+  // the newest completions a window at a time, each twice as long as the one before, only until those days are
+  // known.
+  private SortedMap<LocalDate, Double> recentRevenueByDay(int days) {
+    ZoneId zone = ZoneId.systemDefault();
+    SortedMap<LocalDate, Double> revenue = new TreeMap<>(rideColumns.revenueByDay(zone));
+    long firstArchived = archive.getFirstCompletion();
+    long to = Long.MAX_VALUE;
+    LocalDate fromDay = LocalDate.now(zone).minusDays(days);
+    int span = days;
+    while (firstArchived != Ride.NO_TIME && to > firstArchived) {
+      long from = fromDay.atStartOfDay(zone).toInstant().toEpochMilli();
+      for (Map.Entry<LocalDate, Double> day : archive.getRevenueByDay(from, to, zone, users).entrySet()) {
+        revenue.merge(day.getKey(), day.getValue(), Double::sum);
+      }
+      // Every day from fromDay on is complete now
+      if (revenue.size() >= days && !new ArrayList<>(revenue.keySet()).get(revenue.size() - days).isBefore(fromDay)) {
+        break;
+      }
+      to = from;
+      span *= 2;
+      fromDay = fromDay.minusDays(span);
+    }
+    if (revenue.size() <= days) {
+      return revenue;
+    }
+    return revenue.tailMap(new ArrayList<>(revenue.keySet()).get(revenue.size() - days));
+  }
+
+  // Completed fares per driver, in memory and archived, highest first
+  private List<Map.Entry<Driver, Double>> topDriversByRevenue(int limit) {
+    Map<Driver, Double> revenue = new HashMap<>();
+    for (Map.Entry<Driver, Double> driver : rideColumns.topDriversByRevenue(Integer.MAX_VALUE)) {
+      revenue.merge(driver.getKey(), driver.getValue(), Double::sum);
+    }
+    for (Map.Entry<String, Long> earnings : archive.getEarnings().entrySet()) {
+      Driver driver = users.findDriver(earnings.getKey());
+      if (driver != null) {
+        revenue.merge(driver, earnings.getValue() / 100.0, Double::sum);
+      }
+    }
+    List<Map.Entry<Driver, Double>> top = new ArrayList<>(revenue.entrySet());
+    top.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+    return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
   }
 
   private void changeBasePriceMenu(Scanner scanner) {
@@ -1218,7 +2061,11 @@ class RapidoSystem implements Serializable {
       }
 
       Driver selectedDriver = unapprovedDrivers.get(driverChoice - 1);
-      approveDriver(selectedDriver.getUsername());
+      if (approveDriver(selectedDriver.getUsername())) {
+        System.out.println("Driver approved successfully!");
+      } else {
+        System.out.println("Driver not found!");
+      }
 
     } catch (InputMismatchException e) {
       System.out.println("Please enter a valid number!");
@@ -1235,6 +2082,10 @@ class RapidoSystem implements Serializable {
       return;
     }
 
-    removeUser(username);
+    if (removeUser(username)) {
+      System.out.println("User removed successfully!");
+    } else {
+      System.out.println("User not found!");
+    }
   }
 }
\ No newline at end of file
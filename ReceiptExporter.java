@@ -0,0 +1,87 @@
+package rapido;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.StandardOpenOption;
+
+// Receipt export - streams rendered receipts to a file through one reusable char buffer and one direct byte buffer
+//
+// Each receipt is rendered into the renderer's buffer, encoded straight into the byte buffer and written to the
+// channel whenever that fills, so the garbage made stays flat however many receipts are written.
+class ReceiptExporter implements Closeable {
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  private final FileChannel channel;
+  private final ReceiptRenderer renderer;
+  private final CharsetEncoder encoder;
+  private final ByteBuffer bytes;
+  private char[] chars;
+  private CharBuffer charBuffer;
+  private long count;
+  private long bytesWritten;
+
+  public ReceiptExporter(File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    this.renderer = new ReceiptRenderer();
+    this.encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    this.chars = new char[4096];
+    this.charBuffer = CharBuffer.wrap(chars);
+  }
+
+  public void write(Ride ride) throws IOException {
+    StringBuilder receipt = renderer.renderToBuffer(ride);
+    int length = receipt.length();
+    if (length > chars.length) {
+      chars = new char[length * 2];
+      charBuffer = CharBuffer.wrap(chars);
+    }
+    receipt.getChars(0, length, chars, 0);
+    charBuffer.clear();
+    charBuffer.limit(length);
+    // A receipt ends in a newline, so no surrogate pair is ever left half-encoded between calls
+    while (encoder.encode(charBuffer, bytes, false).isOverflow()) {
+      drain();
+    }
+    count++;
+  }
+
+  private void drain() throws IOException {
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      bytesWritten += channel.write(bytes);
+    }
+    bytes.clear();
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  // Bytes on disk so far; complete once the exporter is closed
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      charBuffer.clear();
+      charBuffer.limit(0);
+      while (encoder.encode(charBuffer, bytes, true).isOverflow()) {
+        drain();
+      }
+      while (encoder.flush(bytes).isOverflow()) {
+        drain();
+      }
+      drain();
+    } finally {
+      channel.close();
+    }
+  }
+}
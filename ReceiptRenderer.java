@@ -0,0 +1,116 @@
+package rapido;
+
+import java.math.*;
+
+// Receipt renderer - the receipt layout as constant pieces, filled into one reusable buffer
+//
+// Produces exactly what the old String.format/SimpleDateFormat version did, without the per-receipt formatter,
+// format strings and intermediate strings. Not thread-safe: Ride.generateReceipt keeps one renderer per thread,
+// and an export owns its own.
+class ReceiptRenderer {
+  private static final int FIELD_WIDTH = 25;
+
+  private static final String HEADER = "\n"
+      + "╔══════════════════════════════════════╗\n"
+      + "║            RIDE RECEIPT              ║\n"
+      + "╠══════════════════════════════════════╣\n";
+  private static final String FOOTER = "╚══════════════════════════════════════╝\n";
+  private static final String LINE_END = "║\n";
+
+  private final StringBuilder buffer;
+  private final TimestampCodec codec;
+  // Where the value of the line being written starts, so pad() can fill it out to FIELD_WIDTH like %-25s
+  private int fieldStart;
+
+  public ReceiptRenderer() {
+    this(TimestampCodec.local());
+  }
+
+  public ReceiptRenderer(TimestampCodec codec) {
+    this.buffer = new StringBuilder(1024);
+    this.codec = codec;
+  }
+
+  public String render(Ride ride) {
+    return renderToBuffer(ride).toString();
+  }
+
+  // The receipt in the renderer's own buffer; only valid until the next call
+  public StringBuilder renderToBuffer(Ride ride) {
+    buffer.setLength(0);
+    appendTo(buffer, ride);
+    return buffer;
+  }
+
+  public void appendTo(StringBuilder out, Ride ride) {
+    Driver driver = ride.getDriver();
+    out.append(HEADER);
+    field(out, "║ Ride ID: ").append(ride.getRideId());
+    pad(out);
+    field(out, "║ Rider:   ").append(ride.getRider().getName());
+    pad(out);
+    field(out, "║ Driver:  ").append(driver != null ? driver.getName() : "N/A");
+    pad(out);
+    field(out, "║ Vehicle: ").append(driver != null ? driver.getVehicleNo() : "N/A");
+    pad(out);
+    field(out, "║ From:    ").append(ride.getPickupLocation());
+    pad(out);
+    field(out, "║ To:      ").append(ride.getDropLocation());
+    pad(out);
+    appendFixed(field(out, "║ Distance:"), ride.getDistance(), 1).append(" km");
+    pad(out);
+    appendFixed(field(out, "║ Fare:    ").append('₹'), ride.getFare(), 2);
+    pad(out);
+    field(out, "║ ETA:     ").append(ride.getEta()).append(" minutes");
+    pad(out);
+    field(out, "║ Status:  ").append(ride.getStatus());
+    pad(out);
+    field(out, "║ Payment: ").append(ride.getPaymentMethod() != null ? ride.getPaymentMethod() : "Pending");
+    pad(out);
+    codec.appendDayFirst(field(out, "║ Time:    "), ride.getBookingTime(), true);
+    pad(out);
+    out.append(FOOTER);
+  }
+
+  private StringBuilder field(StringBuilder out, String label) {
+    out.append(label);
+    fieldStart = out.length();
+    return out;
+  }
+
+  private void pad(StringBuilder out) {
+    for (int n = FIELD_WIDTH - (out.length() - fieldStart); n > 0; n--) {
+      out.append(' ');
+    }
+    out.append(LINE_END);
+  }
+
+  // Same digits as %.<decimals>f, which rounds the shortest decimal form of the value half-up
+  static StringBuilder appendFixed(StringBuilder out, double value, int decimals) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      return out.append(value);
+    }
+    long scale = 1;
+    for (int i = 0; i < decimals; i++) {
+      scale *= 10;
+    }
+    double scaled = Math.abs(value) * scale;
+    double fraction = scaled - Math.floor(scaled);
+    if (Double.doubleToRawLongBits(value) < 0) {
+      out.append('-');
+    }
+    if (scaled >= 1e9 || Math.abs(fraction - 0.5) <= 1e-6) {
+      // Too large for the binary product to stay within 1e-6 of the decimal one, or too close to a tie for binary
+      // rounding to agree with the decimal form; rare, so it may allocate
+      return out.append(new BigDecimal(Double.toString(Math.abs(value))).setScale(decimals, RoundingMode.HALF_UP)
+          .toPlainString());
+    }
+    long units = Math.round(scaled);
+    out.append(units / scale).append('.');
+    long rest = units % scale;
+    for (long digit = scale / 10; digit > 0; digit /= 10) {
+      out.append((char) ('0' + rest / digit % 10));
+    }
+    return out;
+  }
+}
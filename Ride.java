@@ -1,36 +1,52 @@
 package rapido;
 
 import java.io.Serializable;
-import java.util.*;
-import java.text.SimpleDateFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 // Ride class
 class Ride implements Serializable {
+  // Timestamp value meaning "not set"
+  static final long NO_TIME = Long.MIN_VALUE;
+
+  // Receipts are rendered into a per-thread buffer rather than through fresh formatters each time
+  private static final ThreadLocal<ReceiptRenderer> RECEIPTS = ThreadLocal.withInitial(ReceiptRenderer::new);
+
   private String rideId;
   private String pickupLocation;
   private String dropLocation;
   private double distance;
   private double fare;
   private int eta;
-  private String status; // REQUESTED, ONGOING, COMPLETED, CANCELLED
+  // Changed only by compare-and-set, so concurrent sessions cannot both win a transition
+  private final AtomicReference<RideStatus> status;
   private Rider rider;
-  private Driver driver;
-  private Date bookingTime;
-  private Date completionTime;
+  private final AtomicReference<Driver> driver;
+  // Epoch millis; completionTime is NO_TIME until the ride completes
+  private long bookingTime;
+  private final AtomicLong completionTime;
   private String paymentMethod;
   private String upiId;
 
   public Ride(String pickupLocation, String dropLocation, double distance,
       double fare, int eta, Rider rider) {
-    this.rideId = "RIDE" + System.currentTimeMillis();
+    this(RideIdGenerator.shared().nextRideId(), pickupLocation, dropLocation, distance, fare, eta, rider);
+  }
+
+  // Restores a ride with its persisted ID
+  public Ride(String rideId, String pickupLocation, String dropLocation, double distance,
+      double fare, int eta, Rider rider) {
+    this.rideId = rideId;
     this.pickupLocation = pickupLocation;
     this.dropLocation = dropLocation;
     this.distance = distance;
     this.fare = fare;
     this.eta = eta;
     this.rider = rider;
-    this.status = "REQUESTED";
-    this.bookingTime = new Date();
+    this.status = new AtomicReference<>(RideStatus.REQUESTED);
+    this.driver = new AtomicReference<>();
+    this.bookingTime = System.currentTimeMillis();
+    this.completionTime = new AtomicLong(NO_TIME);
   }
 
   // Getters and setters
@@ -58,8 +74,8 @@ class Ride implements Serializable {
     return eta;
   }
 
-  public String getStatus() {
-    return status;
+  public RideStatus getStatus() {
+    return status.get();
   }
 
   public Rider getRider() {
@@ -67,15 +83,19 @@ class Ride implements Serializable {
   }
 
   public Driver getDriver() {
-    return driver;
+    return driver.get();
   }
 
-  public Date getBookingTime() {
+  public long getBookingTime() {
     return bookingTime;
   }
 
-  public Date getCompletionTime() {
-    return completionTime;
+  public long getCompletionTime() {
+    return completionTime.get();
+  }
+
+  public boolean hasCompletionTime() {
+    return completionTime.get() != NO_TIME;
   }
 
   public String getPaymentMethod() {
@@ -86,16 +106,52 @@ class Ride implements Serializable {
     return upiId;
   }
 
-  public void setDriver(Driver driver) {
-    this.driver = driver;
+  // State transitions - each returns false without changing anything if another caller got there first
+
+  // REQUESTED -> ONGOING with this driver
+  public boolean assign(Driver driver) {
+    if (status.get() != RideStatus.REQUESTED || !this.driver.compareAndSet(null, driver)) {
+      return false;
+    }
+    if (status.compareAndSet(RideStatus.REQUESTED, RideStatus.ONGOING)) {
+      return true;
+    }
+    // Cancelled between the two steps - release the driver again
+    this.driver.compareAndSet(driver, null);
+    return false;
+  }
+
+  // ONGOING -> COMPLETED; only the winning caller should credit the fare. The time is claimed before the status
+  // moves, so no reader ever sees a completed ride without one.
+  public boolean complete(long completionTime) {
+    if (status.get() != RideStatus.ONGOING || !this.completionTime.compareAndSet(NO_TIME, completionTime)) {
+      return false;
+    }
+    if (status.compareAndSet(RideStatus.ONGOING, RideStatus.COMPLETED)) {
+      return true;
+    }
+    this.completionTime.compareAndSet(completionTime, NO_TIME);
+    return false;
+  }
+
+  // REQUESTED or ONGOING (whichever the caller saw) -> CANCELLED; the caller frees the driver of an ongoing ride
+  public boolean cancel(RideStatus from) {
+    return (from == RideStatus.REQUESTED || from == RideStatus.ONGOING)
+        && status.compareAndSet(from, RideStatus.CANCELLED);
+  }
+
+  // Sets the persisted state directly when loading a snapshot
+  public void restoreState(RideStatus status, Driver driver) {
+    this.status.set(status);
+    this.driver.set(driver);
   }
 
-  public void setStatus(String status) {
-    this.status = status;
+  public void setBookingTime(long bookingTime) {
+    this.bookingTime = bookingTime;
   }
 
-  public void setCompletionTime(Date completionTime) {
-    this.completionTime = completionTime;
+  public void setCompletionTime(long completionTime) {
+    this.completionTime.set(completionTime);
   }
 
   public void setPaymentMethod(String paymentMethod) {
@@ -107,23 +163,6 @@ class Ride implements Serializable {
   }
 
   public String generateReceipt() {
-    SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
-    return "\n" +
-        "╔══════════════════════════════════════╗\n" +
-        "║            RIDE RECEIPT              ║\n" +
-        "╠══════════════════════════════════════╣\n" +
-        "║ Ride ID: " + String.format("%-25s", rideId) + "║\n" +
-        "║ Rider:   " + String.format("%-25s", rider.getName()) + "║\n" +
-        "║ Driver:  " + String.format("%-25s", driver != null ? driver.getName() : "N/A") + "║\n" +
-        "║ Vehicle: " + String.format("%-25s", driver != null ? driver.getVehicleNo() : "N/A") + "║\n" +
-        "║ From:    " + String.format("%-25s", pickupLocation) + "║\n" +
-        "║ To:      " + String.format("%-25s", dropLocation) + "║\n" +
-        "║ Distance:" + String.format("%-25s", String.format("%.1f km", distance)) + "║\n" +
-        "║ Fare:    " + String.format("%-25s", "₹" + String.format("%.2f", fare)) + "║\n" +
-        "║ ETA:     " + String.format("%-25s", eta + " minutes") + "║\n" +
-        "║ Status:  " + String.format("%-25s", status) + "║\n" +
-        "║ Payment: " + String.format("%-25s", paymentMethod != null ? paymentMethod : "Pending") + "║\n" +
-        "║ Time:    " + String.format("%-25s", sdf.format(bookingTime)) + "║\n" +
-        "╚══════════════════════════════════════╝\n";
+    return RECEIPTS.get().render(this);
   }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.*;
+
+// Ride analytics - running totals updated on every ride transition, so reading a figure never scans rides
+//
+// Counters are LongAdders (striped per thread under contention); money is kept in paise and distance in metres
+// so the sums stay exact. Bookings are also counted per minute in a one-hour ring for sliding-window rates.
+class RideAnalytics {
+  private static final long MILLIS_PER_MINUTE = 60_000L;
+  private static final int WINDOW_MINUTES = 60;
+
+  private final LongAdder[] byStatus;
+  private final LongAdder rides;
+  private final LongAdder etaMinutes;
+  private final LongAdder distanceMetres;
+  private final LongAdder revenuePaise;
+  private final Map<Driver, LongAdder> revenueByDriver;
+  private final AtomicReferenceArray<MinuteBucket> bookingsByMinute;
+
+  // Bookings in one minute; replaced, not reset, when its slot comes round again
+  private static class MinuteBucket {
+    final long minute;
+    final LongAdder count = new LongAdder();
+
+    MinuteBucket(long minute) {
+      this.minute = minute;
+    }
+  }
+
+  public RideAnalytics() {
+    this.byStatus = new LongAdder[RideStatus.values().length];
+    for (int i = 0; i < byStatus.length; i++) {
+      byStatus[i] = new LongAdder();
+    }
+    this.rides = new LongAdder();
+    this.etaMinutes = new LongAdder();
+    this.distanceMetres = new LongAdder();
+    this.revenuePaise = new LongAdder();
+    this.revenueByDriver = new ConcurrentHashMap<>();
+    this.bookingsByMinute = new AtomicReferenceArray<>(WINDOW_MINUTES);
+  }
+
+  // Counts a new, loaded or replayed ride in its current state
+  public void add(Ride ride) {
+    rides.increment();
+    etaMinutes.add(ride.getEta());
+    distanceMetres.add(Math.round(ride.getDistance() * 1000));
+    byStatus[ride.getStatus().ordinal()].increment();
+    if (ride.getStatus() == RideStatus.COMPLETED) {
+      earned(ride);
+    }
+    recordBooking(ride.getBookingTime());
+  }
+
+  // Counts rides that live only in the archive, from its saved totals; archiving itself leaves the totals alone
+  public void addArchived(long[] countsByStatus, long etaMinutes, long distanceMetres, long revenuePaise) {
+    for (int i = 0; i < countsByStatus.length; i++) {
+      byStatus[i].add(countsByStatus[i]);
+      rides.add(countsByStatus[i]);
+    }
+    this.etaMinutes.add(etaMinutes);
+    this.distanceMetres.add(distanceMetres);
+    this.revenuePaise.add(revenuePaise);
+  }
+
+  public void addArchivedRevenue(Driver driver, long paise) {
+    revenueByDriver.computeIfAbsent(driver, d -> new LongAdder()).add(paise);
+  }
+
+  // Moves the ride's count after a successful transition out of the given status
+  public void moved(Ride ride, RideStatus from, RideStatus to) {
+    byStatus[from.ordinal()].decrement();
+    byStatus[to.ordinal()].increment();
+    if (to == RideStatus.COMPLETED) {
+      earned(ride);
+    }
+  }
+
+  private void earned(Ride ride) {
+    long paise = Math.round(ride.getFare() * 100);
+    revenuePaise.add(paise);
+    if (ride.getDriver() != null) {
+      revenueByDriver.computeIfAbsent(ride.getDriver(), d -> new LongAdder()).add(paise);
+    }
+  }
+
+  // Bookings older than the window are not counted
+  private void recordBooking(long bookingMillis) {
+    long minute = bookingMillis / MILLIS_PER_MINUTE;
+    if (minute <= System.currentTimeMillis() / MILLIS_PER_MINUTE - WINDOW_MINUTES) {
+      return;
+    }
+    int slot = (int) (minute % WINDOW_MINUTES);
+    while (true) {
+      MinuteBucket bucket = bookingsByMinute.get(slot);
+      if (bucket != null && bucket.minute == minute) {
+        bucket.count.increment();
+        return;
+      }
+      if (bucket != null && bucket.minute > minute) {
+        // The slot has already moved on to a newer minute
+        return;
+      }
+      bookingsByMinute.compareAndSet(slot, bucket, new MinuteBucket(minute));
+    }
+  }
+
+  // Reads
+  public long getRideCount() {
+    return rides.sum();
+  }
+
+  public long getCount(RideStatus status) {
+    return byStatus[status.ordinal()].sum();
+  }
+
+  public double getGrossRevenue() {
+    return revenuePaise.sum() / 100.0;
+  }
+
+  public double getDriverRevenue(Driver driver) {
+    LongAdder paise = revenueByDriver.get(driver);
+    return paise != null ? paise.sum() / 100.0 : 0;
+  }
+
+  // Drivers with any completed ride; the view is live, not a copy
+  public Set<Driver> getEarningDrivers() {
+    return Collections.unmodifiableSet(revenueByDriver.keySet());
+  }
+
+  public double getAverageEta() {
+    long count = rides.sum();
+    return count > 0 ? (double) etaMinutes.sum() / count : 0;
+  }
+
+  public double getAverageDistance() {
+    long count = rides.sum();
+    return count > 0 ? distanceMetres.sum() / 1000.0 / count : 0;
+  }
+
+  // Bookings in the last minutes (at most an hour), scaled to a per-hour rate
+  public double getBookingsPerHour(int minutes) {
+    int window = Math.max(1, Math.min(WINDOW_MINUTES, minutes));
+    long now = System.currentTimeMillis() / MILLIS_PER_MINUTE;
+    long count = 0;
+    for (int i = 0; i < WINDOW_MINUTES; i++) {
+      MinuteBucket bucket = bookingsByMinute.get(i);
+      if (bucket != null && bucket.minute > now - window && bucket.minute <= now) {
+        count += bucket.count.sum();
+      }
+    }
+    return count * 60.0 / window;
+  }
+}
@@ -0,0 +1,762 @@
+package rapido;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.*;
+import java.util.zip.*;
+
+// Ride archive - finished rides of past months in immutable, compressed monthly segment files
+//
+// A segment holds rides booked in one month, in booking order, as independent gzip blocks of BLOCK_RIDES
+// RIDE_CREATED lines (the change-log layout). The index file is a small sparse index: one line per block with its
+// offset and time ranges, plus the archive's lifetime totals and per-user ride counts, so startup reads only the
+// index and a month's rides are read back only when a history, receipt, export or payout query reaches into it.
+// The index is rewritten whole and renamed into place, and that rename is what adds new segments to the archive.
+// Each block also gets a Bloom filter of the usernames in it, kept in a side file and read on first use, so one
+// user's whole history is read back from just the blocks that hold it.
+class RideArchive {
+  private static final byte[] MAGIC = { 'R', 'S', 'E', 'G', 1 };
+  private static final String INDEX_FILE = "archive.idx";
+  private static final String FILTERS_FILE = "archive.filters";
+  private static final int BLOCK_RIDES = 512;
+  // About one false match per thousand blocks
+  private static final int FILTER_BITS_PER_USER = 16;
+  private static final int FILTER_PROBES = 6;
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+  // Booking times are saved to the second, while an ID carries the millisecond it was minted
+  private static final long ID_SLACK_MILLIS = 1000;
+  private static final RideStatus[] STATUSES = RideStatus.values();
+
+  // One gzip block of a segment
+  private static final class Block {
+    final String segment;
+    final YearMonth month;
+    final long offset;
+    final int length;
+    final int rides;
+    final long bookedFrom;
+    final long bookedTo;
+    // When its completed rides were completed; NO_TIME if it has none
+    final long completedFrom;
+    final long completedTo;
+    // Where its username filter is in the filters file; indexes written before there were filters have none
+    final long filterOffset;
+    final int filterWords;
+    // Read on first use
+    long[] filter;
+
+    Block(String segment, YearMonth month, long offset, int length, int rides, long bookedFrom, long bookedTo,
+        long completedFrom, long completedTo, long filterOffset, int filterWords) {
+      this.segment = segment;
+      this.month = month;
+      this.offset = offset;
+      this.length = length;
+      this.rides = rides;
+      this.bookedFrom = bookedFrom;
+      this.bookedTo = bookedTo;
+      this.completedFrom = completedFrom;
+      this.completedTo = completedTo;
+      this.filterOffset = filterOffset;
+      this.filterWords = filterWords;
+    }
+
+    boolean completedWithin(long fromMillis, long toMillis) {
+      return completedFrom != Ride.NO_TIME && completedFrom < toMillis && completedTo >= fromMillis;
+    }
+  }
+
+  // A rider's or driver's archived rides per month, and a driver's archived earnings
+  private static final class UserTotals {
+    final SortedMap<YearMonth, Integer> rides = new TreeMap<>();
+    long paise;
+
+    UserTotals copy() {
+      UserTotals copy = new UserTotals();
+      copy.rides.putAll(rides);
+      copy.paise = paise;
+      return copy;
+    }
+  }
+
+  private final File dir;
+  private final File indexFile;
+  private final File filtersFile;
+  private final int afterDays;
+  // Lazy startup: every finished ride is archived at each checkpoint, whatever its age
+  private final boolean archiveAll;
+  private final ZoneId zone;
+  // Recently read months, least recently used first
+  private final Map<YearMonth, List<Ride>> cache;
+  private List<Block> blocks;
+  private Map<String, UserTotals> users;
+  private long[] byStatus;
+  private long etaMinutes;
+  private long distanceMetres;
+  private long revenuePaise;
+  // Segments of the last run until the snapshot without their rides is on disk
+  private List<String> pendingSegments;
+  // Their ride IDs, read on open so the same rides still in the snapshot or log can be skipped
+  private Set<String> pendingIds;
+  private boolean readable;
+
+  public RideArchive(File dir, int afterDays, boolean archiveAll, int cacheMonths) {
+    this.dir = dir;
+    this.indexFile = new File(dir, INDEX_FILE);
+    this.filtersFile = new File(dir, FILTERS_FILE);
+    this.afterDays = afterDays;
+    this.archiveAll = archiveAll;
+    this.zone = ZoneId.systemDefault();
+    this.cache = new LinkedHashMap<YearMonth, List<Ride>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<YearMonth, List<Ride>> eldest) {
+        return size() > cacheMonths;
+      }
+    };
+    this.blocks = new ArrayList<>();
+    this.users = new HashMap<>();
+    this.byStatus = new long[STATUSES.length];
+    this.pendingSegments = new ArrayList<>();
+    this.pendingIds = new HashSet<>();
+    this.readable = true;
+  }
+
+  // Reads rapido.archiveAfterDays (0 stops archiving; rides already archived stay readable),
+  // rapido.lazyStartup (archive every finished ride instead) and rapido.archiveCacheMonths, and opens the archive
+  // kept next to the data file
+  public static RideArchive fromSystemProperties(String dataFile) {
+    File dir = new File(SnapshotFormat.baseName(dataFile) + "_archive");
+    int afterDays = Integer.getInteger("rapido.archiveAfterDays", 90);
+    boolean archiveAll = Boolean.getBoolean("rapido.lazyStartup");
+    int cacheMonths = Integer.getInteger("rapido.archiveCacheMonths", 3);
+    RideArchive archive = new RideArchive(dir, afterDays, archiveAll, Math.max(1, cacheMonths));
+    try {
+      archive.open();
+    } catch (IOException e) {
+      System.out.println("Error reading ride archive: " + e.getMessage());
+      // Archiving again would rewrite the index without the blocks that could not be read
+      archive.readable = false;
+    }
+    return archive;
+  }
+
+  public synchronized void open() throws IOException {
+    if (!indexFile.exists()) {
+      return;
+    }
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile),
+        StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          readIndexLine(line);
+        }
+      }
+    }
+    for (Block block : blocks) {
+      if (pendingSegments.contains(block.segment)) {
+        for (Mutation record : readBlock(block)) {
+          pendingIds.add(record.get("rideId"));
+        }
+      }
+    }
+  }
+
+  private void readIndexLine(String line) throws IOException {
+    Map<String, String> fields;
+    try (JsonReader reader = new JsonReader(new StringReader(line))) {
+      fields = reader.nextObject();
+    }
+    String kind = String.valueOf(fields.get("kind"));
+    try {
+      switch (kind) {
+        case "totals":
+          for (RideStatus status : STATUSES) {
+            byStatus[status.ordinal()] = Long.parseLong(fields.get(status.name().toLowerCase()));
+          }
+          etaMinutes = Long.parseLong(fields.get("etaMinutes"));
+          distanceMetres = Long.parseLong(fields.get("distanceMetres"));
+          revenuePaise = Long.parseLong(fields.get("revenuePaise"));
+          String pending = fields.get("pending");
+          if (pending != null && !pending.isEmpty()) {
+            pendingSegments.addAll(Arrays.asList(pending.split(" ")));
+          }
+          break;
+        case "block":
+          blocks.add(new Block(fields.get("segment"), YearMonth.parse(fields.get("month")),
+              Long.parseLong(fields.get("offset")), Integer.parseInt(fields.get("length")),
+              Integer.parseInt(fields.get("rides")),
+              Long.parseLong(fields.get("bookedFrom")), Long.parseLong(fields.get("bookedTo")),
+              Long.parseLong(fields.get("completedFrom")), Long.parseLong(fields.get("completedTo")),
+              fields.get("filterOffset") != null ? Long.parseLong(fields.get("filterOffset")) : -1,
+              fields.get("filterWords") != null ? Integer.parseInt(fields.get("filterWords")) : 0));
+          break;
+        case "user": {
+          UserTotals totals = new UserTotals();
+          totals.paise = Long.parseLong(fields.get("paise"));
+          for (String month : fields.get("months").split(" ")) {
+            int colon = month.indexOf(':');
+            totals.rides.put(YearMonth.parse(month.substring(0, colon)), Integer.parseInt(month.substring(colon + 1)));
+          }
+          users.put(fields.get("username"), totals);
+          break;
+        }
+        default:
+          throw new IOException("Unknown archive index line: " + kind);
+      }
+    } catch (RuntimeException e) {
+      throw new IOException("Bad archive index line: " + line, e);
+    }
+  }
+
+  public boolean isArchivingAll() {
+    return archiveAll;
+  }
+
+  // Completed or cancelled before the cutoff and booked in a month that ended before it, so each month is
+  // archived in one go rather than a few rides at every checkpoint. With archiveAll, every finished ride.
+  public List<Ride> selectDue(Collection<Ride> rides, long now) {
+    List<Ride> due = new ArrayList<>();
+    if (!readable || afterDays <= 0 && !archiveAll) {
+      return due;
+    }
+    long cutoff = now - afterDays * MILLIS_PER_DAY;
+    YearMonth cutoffMonth = monthOf(cutoff);
+    for (Ride ride : rides) {
+      RideStatus status = ride.getStatus();
+      if (status != RideStatus.COMPLETED && status != RideStatus.CANCELLED) {
+        continue;
+      }
+      long finishedAt = ride.hasCompletionTime() ? ride.getCompletionTime() : ride.getBookingTime();
+      if (archiveAll || finishedAt < cutoff && monthOf(ride.getBookingTime()).isBefore(cutoffMonth)) {
+        due.add(ride);
+      }
+    }
+    return due;
+  }
+
+  // Writes the rides into new segments, one per booking month, and adds them to the index marked pending; the
+  // caller drops them from memory, saves a snapshot without them and then calls commit(). Segments still pending
+  // from an earlier run stay pending, since the snapshot on disk may still hold their rides too.
+  public synchronized void append(List<Ride> rides) throws IOException {
+    if (!readable) {
+      throw new IOException("The archive index could not be read");
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    Map<YearMonth, List<Ride>> byMonth = new TreeMap<>();
+    for (Ride ride : rides) {
+      byMonth.computeIfAbsent(monthOf(ride.getBookingTime()), m -> new ArrayList<>()).add(ride);
+    }
+
+    // Built up as copies, so a failed write leaves the archive as it was
+    List<Block> newBlocks = new ArrayList<>(blocks);
+    List<String> newSegments = new ArrayList<>(pendingSegments);
+    long filtersEnd = 0;
+    for (Block block : blocks) {
+      filtersEnd = Math.max(filtersEnd, block.filterOffset + block.filterWords * 8L);
+    }
+    ByteArrayOutputStream filters = new ByteArrayOutputStream();
+    for (Map.Entry<YearMonth, List<Ride>> month : byMonth.entrySet()) {
+      List<Ride> monthRides = month.getValue();
+      monthRides.sort(RideIndex.BOOKING_ORDER);
+      String segment = nextSegmentName(month.getKey());
+      newBlocks.addAll(writeSegment(segment, month.getKey(), monthRides, filtersEnd, filters));
+      newSegments.add(segment);
+    }
+    // Anything past the filters the index knows of was left by a failed run
+    try (RandomAccessFile file = new RandomAccessFile(filtersFile, "rw")) {
+      file.setLength(filtersEnd);
+      file.seek(filtersEnd);
+      file.write(filters.toByteArray());
+      file.getFD().sync();
+    }
+
+    Map<String, UserTotals> newUsers = new HashMap<>();
+    for (Map.Entry<String, UserTotals> user : users.entrySet()) {
+      newUsers.put(user.getKey(), user.getValue().copy());
+    }
+    long[] newByStatus = byStatus.clone();
+    long newEta = etaMinutes;
+    long newDistance = distanceMetres;
+    long newRevenue = revenuePaise;
+    for (Ride ride : rides) {
+      YearMonth month = monthOf(ride.getBookingTime());
+      newByStatus[ride.getStatus().ordinal()]++;
+      newEta += ride.getEta();
+      newDistance += Math.round(ride.getDistance() * 1000);
+      long paise = ride.getStatus() == RideStatus.COMPLETED ? EarningsLedger.toPaise(ride.getFare()) : 0;
+      newRevenue += paise;
+      newUsers.computeIfAbsent(ride.getRider().getUsername(), u -> new UserTotals()).rides.merge(month, 1, Integer::sum);
+      if (ride.getDriver() != null) {
+        UserTotals driver = newUsers.computeIfAbsent(ride.getDriver().getUsername(), u -> new UserTotals());
+        driver.rides.merge(month, 1, Integer::sum);
+        driver.paise += paise;
+      }
+    }
+
+    writeIndex(newBlocks, newUsers, newByStatus, newEta, newDistance, newRevenue, newSegments);
+    blocks = newBlocks;
+    users = newUsers;
+    byStatus = newByStatus;
+    etaMinutes = newEta;
+    distanceMetres = newDistance;
+    revenuePaise = newRevenue;
+    // The rides are in memory until the caller drops them, so nothing of this run needs skipping; the IDs of
+    // earlier runs are kept until commit()
+    pendingSegments = newSegments;
+    cache.keySet().removeAll(byMonth.keySet());
+  }
+
+  // Clears the pending mark once the snapshot without the last run's rides is on disk
+  public synchronized void commit() throws IOException {
+    writeIndex(blocks, users, byStatus, etaMinutes, distanceMetres, revenuePaise, new ArrayList<>());
+    pendingSegments = new ArrayList<>();
+    pendingIds = new HashSet<>();
+  }
+
+  public synchronized boolean isPending() {
+    return !pendingSegments.isEmpty();
+  }
+
+  // True for rides of an archive run whose snapshot never landed; they are archived already, so loading skips them
+  public synchronized boolean isPendingRide(String rideId) {
+    return pendingIds.contains(rideId);
+  }
+
+  private String nextSegmentName(YearMonth month) {
+    Set<String> existing = new HashSet<>();
+    for (Block block : blocks) {
+      if (block.month.equals(month)) {
+        existing.add(block.segment);
+      }
+    }
+    return String.format("rides-%s-%04d.seg", month, existing.size() + 1);
+  }
+
+  // Blocks' filters go to the filters buffer, which the caller writes to the filters file at filtersBase
+  private List<Block> writeSegment(String segment, YearMonth month, List<Ride> rides, long filtersBase,
+      ByteArrayOutputStream filters) throws IOException {
+    List<Block> written = new ArrayList<>();
+    DataOutputStream filterOut = new DataOutputStream(filters);
+    try (FileOutputStream out = new FileOutputStream(new File(dir, segment))) {
+      out.write(MAGIC);
+      long offset = MAGIC.length;
+      for (int start = 0; start < rides.size(); start += BLOCK_RIDES) {
+        List<Ride> part = rides.subList(start, Math.min(start + BLOCK_RIDES, rides.size()));
+        byte[] compressed = compress(part);
+        out.write(compressed);
+        long[] filter = userFilter(part);
+        Block block = describe(segment, month, offset, compressed.length, part, filtersBase + filters.size(),
+            filter.length);
+        block.filter = filter;
+        for (long word : filter) {
+          filterOut.writeLong(word);
+        }
+        written.add(block);
+        offset += compressed.length;
+      }
+      out.getFD().sync();
+    }
+    return written;
+  }
+
+  // Bloom filter of the riders' and drivers' usernames
+  private static long[] userFilter(List<Ride> rides) {
+    Set<String> usernames = new HashSet<>();
+    for (Ride ride : rides) {
+      usernames.add(ride.getRider().getUsername());
+      if (ride.getDriver() != null) {
+        usernames.add(ride.getDriver().getUsername());
+      }
+    }
+    long[] filter = new long[Math.max(1, (usernames.size() * FILTER_BITS_PER_USER + 63) / 64)];
+    for (String username : usernames) {
+      for (int i = 0; i < FILTER_PROBES; i++) {
+        int bit = probe(username, i, filter.length * 64);
+        filter[bit >>> 6] |= 1L << bit;
+      }
+    }
+    return filter;
+  }
+
+  private static boolean mightContain(long[] filter, String username) {
+    for (int i = 0; i < FILTER_PROBES; i++) {
+      int bit = probe(username, i, filter.length * 64);
+      if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Double hashing with String.hashCode and FNV-1a
+  private static int probe(String username, int i, int bits) {
+    int second = 0x811c9dc5;
+    for (int c = 0; c < username.length(); c++) {
+      second = (second ^ username.charAt(c)) * 0x01000193;
+    }
+    return Math.floorMod(username.hashCode() + i * (second | 1), bits);
+  }
+
+  private long[] filterOf(Block block) throws IOException {
+    if (block.filter == null && block.filterWords > 0) {
+      long[] filter = new long[block.filterWords];
+      try (RandomAccessFile file = new RandomAccessFile(filtersFile, "r")) {
+        file.seek(block.filterOffset);
+        for (int i = 0; i < filter.length; i++) {
+          filter[i] = file.readLong();
+        }
+      }
+      block.filter = filter;
+    }
+    return block.filter;
+  }
+
+  private static byte[] compress(List<Ride> rides) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (Writer out = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+      for (Ride ride : rides) {
+        out.write(Mutation.rideCreated(ride).toJsonLine());
+        out.write('\n');
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Block describe(String segment, YearMonth month, long offset, int length, List<Ride> rides,
+      long filterOffset, int filterWords) {
+    long bookedFrom = Long.MAX_VALUE;
+    long bookedTo = Long.MIN_VALUE;
+    long completedFrom = Ride.NO_TIME;
+    long completedTo = Ride.NO_TIME;
+    for (Ride ride : rides) {
+      bookedFrom = Math.min(bookedFrom, ride.getBookingTime());
+      bookedTo = Math.max(bookedTo, ride.getBookingTime());
+      if (ride.getStatus() == RideStatus.COMPLETED) {
+        long completedAt = completedAt(ride);
+        completedFrom = completedFrom == Ride.NO_TIME ? completedAt : Math.min(completedFrom, completedAt);
+        completedTo = Math.max(completedTo, completedAt);
+      }
+    }
+    return new Block(segment, month, offset, length, rides.size(), bookedFrom, bookedTo, completedFrom, completedTo,
+        filterOffset, filterWords);
+  }
+
+  // The time the earnings ledger files a completed ride under
+  private static long completedAt(Ride ride) {
+    return ride.hasCompletionTime() ? ride.getCompletionTime() : ride.getBookingTime();
+  }
+
+  private List<Mutation> readBlock(Block block) throws IOException {
+    return readBlock(block, null);
+  }
+
+  // With a quoted value, only the lines that contain it are parsed
+  private List<Mutation> readBlock(Block block, String quoted) throws IOException {
+    byte[] compressed = new byte[block.length];
+    try (RandomAccessFile file = new RandomAccessFile(new File(dir, block.segment), "r")) {
+      file.seek(block.offset);
+      file.readFully(compressed);
+    }
+    List<Mutation> records = new ArrayList<>(block.rides);
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.isEmpty() && (quoted == null || line.contains(quoted))) {
+          records.add(Mutation.parse(line));
+        }
+      }
+    }
+    return records;
+  }
+
+  private void writeIndex(List<Block> blocks, Map<String, UserTotals> users, long[] byStatus, long etaMinutes,
+      long distanceMetres, long revenuePaise, List<String> pending) throws IOException {
+    StringBuilder out = new StringBuilder();
+    List<String> totals = new ArrayList<>(Arrays.asList("kind", "totals"));
+    for (RideStatus status : STATUSES) {
+      totals.add(status.name().toLowerCase());
+      totals.add(Long.toString(byStatus[status.ordinal()]));
+    }
+    totals.addAll(Arrays.asList("etaMinutes", Long.toString(etaMinutes),
+        "distanceMetres", Long.toString(distanceMetres),
+        "revenuePaise", Long.toString(revenuePaise),
+        "pending", String.join(" ", pending)));
+    appendLine(out, totals.toArray(new String[0]));
+    for (Block block : blocks) {
+      appendLine(out, "kind", "block", "segment", block.segment, "month", block.month.toString(),
+          "offset", Long.toString(block.offset), "length", Integer.toString(block.length),
+          "rides", Integer.toString(block.rides),
+          "bookedFrom", Long.toString(block.bookedFrom), "bookedTo", Long.toString(block.bookedTo),
+          "completedFrom", Long.toString(block.completedFrom), "completedTo", Long.toString(block.completedTo),
+          "filterOffset", Long.toString(block.filterOffset), "filterWords", Integer.toString(block.filterWords));
+    }
+    for (Map.Entry<String, UserTotals> user : users.entrySet()) {
+      StringBuilder months = new StringBuilder();
+      for (Map.Entry<YearMonth, Integer> month : user.getValue().rides.entrySet()) {
+        months.append(months.length() > 0 ? " " : "").append(month.getKey()).append(':').append(month.getValue());
+      }
+      appendLine(out, "kind", "user", "username", user.getKey(),
+          "paise", Long.toString(user.getValue().paise), "months", months.toString());
+    }
+    PersistenceWriter.replaceAtomically(indexFile, out.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  // One JSON object per line from alternating names and values, all written as strings like log records
+  private static void appendLine(StringBuilder out, String... fields) {
+    out.append('{');
+    for (int i = 0; i < fields.length; i += 2) {
+      out.append(i > 0 ? "," : "").append('"').append(fields[i]).append("\":\"")
+          .append(JsonSnapshotWriter.escapeJson(fields[i + 1])).append('"');
+    }
+    out.append("}\n");
+  }
+
+  private YearMonth monthOf(long millis) {
+    return YearMonth.from(Instant.ofEpochMilli(millis).atZone(zone));
+  }
+
+  // Queries
+
+  // Rides booked in the month, in booking order; read from disk unless the month is cached
+  public synchronized List<Ride> getMonth(YearMonth month, UserDirectory directory) {
+    List<Ride> rides = cache.get(month);
+    if (rides != null) {
+      return rides;
+    }
+    rides = new ArrayList<>();
+    try {
+      for (Block block : blocks) {
+        if (block.month.equals(month)) {
+          for (Mutation record : readBlock(block)) {
+            Ride ride = JsonSnapshot.parseRide(record.getFields(), directory);
+            if (ride != null) {
+              rides.add(ride);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Error reading ride archive: " + e.getMessage());
+      return new ArrayList<>();
+    }
+    // Later segments of a month hold stragglers that finished after the month was first archived
+    rides.sort(RideIndex.BOOKING_ORDER);
+    rides = Collections.unmodifiableList(rides);
+    cache.put(month, rides);
+    return rides;
+  }
+
+  // Looks the ride up through the block index by the time in its ID, reading only the blocks booked around then
+  public synchronized Ride find(String rideId, UserDirectory directory) {
+    long minted = RideIdGenerator.timeOf(rideId);
+    if (minted < 0) {
+      return null;
+    }
+    try {
+      for (Block block : blocks) {
+        if (minted >= block.bookedFrom - ID_SLACK_MILLIS && minted <= block.bookedTo + ID_SLACK_MILLIS) {
+          for (Mutation record : readBlock(block)) {
+            if (rideId.equals(record.get("rideId"))) {
+              return JsonSnapshot.parseRide(record.getFields(), directory);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Error reading ride archive: " + e.getMessage());
+    }
+    return null;
+  }
+
+  // Months holding archived rides of the rider or driver, oldest first
+  public synchronized List<YearMonth> getMonths(User user) {
+    UserTotals totals = users.get(user.getUsername());
+    return totals != null ? new ArrayList<>(totals.rides.keySet()) : new ArrayList<>();
+  }
+
+  public synchronized int getRideCount(User user, YearMonth month) {
+    UserTotals totals = users.get(user.getUsername());
+    Integer count = totals != null ? totals.rides.get(month) : null;
+    return count != null ? count : 0;
+  }
+
+  public synchronized int getRideCount(User user) {
+    UserTotals totals = users.get(user.getUsername());
+    int count = 0;
+    if (totals != null) {
+      for (int rides : totals.rides.values()) {
+        count += rides;
+      }
+    }
+    return count;
+  }
+
+  // The user's rides booked in the month, as rider or driver, in booking order
+  public List<Ride> getHistory(User user, YearMonth month, UserDirectory directory) {
+    List<Ride> history = new ArrayList<>();
+    if (getRideCount(user, month) == 0) {
+      return history;
+    }
+    String username = user.getUsername();
+    for (Ride ride : getMonth(month, directory)) {
+      if (ride.getRider().getUsername().equals(username)
+          || ride.getDriver() != null && ride.getDriver().getUsername().equals(username)) {
+        history.add(ride);
+      }
+    }
+    return history;
+  }
+
+  // All the user's archived rides, as rider or driver, in booking order. Only blocks of months the user has rides
+  // in are considered, and of those only the ones whose username filter matches are read.
+  public synchronized List<Ride> getHistory(User user, UserDirectory directory) {
+    List<Ride> history = new ArrayList<>();
+    UserTotals totals = users.get(user.getUsername());
+    if (totals == null) {
+      return history;
+    }
+    String username = user.getUsername();
+    String quoted = '"' + JsonSnapshotWriter.escapeJson(username) + '"';
+    try {
+      for (Block block : blocks) {
+        if (!totals.rides.containsKey(block.month)) {
+          continue;
+        }
+        long[] filter = filterOf(block);
+        if (filter != null && !mightContain(filter, username)) {
+          continue;
+        }
+        for (Mutation record : readBlock(block, quoted)) {
+          if (username.equals(record.get("riderUsername")) || username.equals(record.get("driverUsername"))) {
+            Ride ride = JsonSnapshot.parseRide(record.getFields(), directory);
+            if (ride != null) {
+              history.add(ride);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.out.println("Error reading ride archive: " + e.getMessage());
+    }
+    history.sort(RideIndex.BOOKING_ORDER);
+    return history;
+  }
+
+  // Months with rides booked in [fromMillis, toMillis), oldest first
+  public synchronized List<YearMonth> getMonthsBooked(long fromMillis, long toMillis) {
+    SortedSet<YearMonth> months = new TreeSet<>();
+    for (Block block : blocks) {
+      if (block.bookedFrom < toMillis && block.bookedTo >= fromMillis) {
+        months.add(block.month);
+      }
+    }
+    return new ArrayList<>(months);
+  }
+
+  // Paise the driver earned from archived rides completed in [fromMillis, toMillis); reads only the months where
+  // the driver has rides and the block index shows completions in the range
+  public long getPayout(Driver driver, long fromMillis, long toMillis, UserDirectory directory) {
+    SortedSet<YearMonth> months = new TreeSet<>();
+    synchronized (this) {
+      UserTotals totals = users.get(driver.getUsername());
+      if (totals == null || totals.paise == 0) {
+        return 0;
+      }
+      for (Block block : blocks) {
+        if (block.completedWithin(fromMillis, toMillis) && totals.rides.containsKey(block.month)) {
+          months.add(block.month);
+        }
+      }
+    }
+    long paise = 0;
+    for (YearMonth month : months) {
+      for (Ride ride : getMonth(month, directory)) {
+        if (ride.getStatus() == RideStatus.COMPLETED && ride.getDriver() != null
+            && ride.getDriver().getUsername().equals(driver.getUsername())) {
+          long completedAt = completedAt(ride);
+          if (completedAt >= fromMillis && completedAt < toMillis) {
+            paise += EarningsLedger.toPaise(ride.getFare());
+          }
+        }
+      }
+    }
+    return paise;
+  }
+
+  // Completed fares of archived rides completed in [fromMillis, toMillis), summed by local completion day; reads
+  // only the months whose blocks show completions in the range
+  public SortedMap<LocalDate, Double> getRevenueByDay(long fromMillis, long toMillis, ZoneId zone,
+      UserDirectory directory) {
+    SortedSet<YearMonth> months = new TreeSet<>();
+    synchronized (this) {
+      for (Block block : blocks) {
+        if (block.completedWithin(fromMillis, toMillis)) {
+          months.add(block.month);
+        }
+      }
+    }
+    SortedMap<LocalDate, Double> revenue = new TreeMap<>();
+    for (YearMonth month : months) {
+      for (Ride ride : getMonth(month, directory)) {
+        if (ride.getStatus() == RideStatus.COMPLETED && ride.hasCompletionTime()) {
+          long completedAt = ride.getCompletionTime();
+          if (completedAt >= fromMillis && completedAt < toMillis) {
+            revenue.merge(Instant.ofEpochMilli(completedAt).atZone(zone).toLocalDate(), ride.getFare(), Double::sum);
+          }
+        }
+      }
+    }
+    return revenue;
+  }
+
+  // When the first archived ride was completed; NO_TIME if none was
+  public synchronized long getFirstCompletion() {
+    long first = Ride.NO_TIME;
+    for (Block block : blocks) {
+      if (block.completedFrom != Ride.NO_TIME) {
+        first = first == Ride.NO_TIME ? block.completedFrom : Math.min(first, block.completedFrom);
+      }
+    }
+    return first;
+  }
+
+  // Lifetime totals of the archived rides, for seeding the running analytics on load
+  public synchronized long[] getCountsByStatus() {
+    return byStatus.clone();
+  }
+
+  public synchronized long getEtaMinutes() {
+    return etaMinutes;
+  }
+
+  public synchronized long getDistanceMetres() {
+    return distanceMetres;
+  }
+
+  public synchronized long getRevenuePaise() {
+    return revenuePaise;
+  }
+
+  // Archived earnings by driver username
+  public synchronized Map<String, Long> getEarnings() {
+    Map<String, Long> earnings = new HashMap<>();
+    for (Map.Entry<String, UserTotals> user : users.entrySet()) {
+      if (user.getValue().paise != 0) {
+        earnings.put(user.getKey(), user.getValue().paise);
+      }
+    }
+    return earnings;
+  }
+
+  public synchronized int getSegmentCount() {
+    Set<String> segments = new HashSet<>();
+    for (Block block : blocks) {
+      segments.add(block.segment);
+    }
+    return segments.size();
+  }
+}
@@ -0,0 +1,144 @@
+package rapido;
+
+import java.util.*;
+
+// Ride batch - bookings, acceptances and completions submitted together, applied in order by RapidoSystem.applyBatch
+//
+// Items are independent: each is validated and applied on its own and gets its own Result, so one bad item does
+// not stop the rest. The whole batch shares one persistence commit rather than waiting for the disk per item.
+class RideBatch {
+  enum Kind {
+    BOOK, ACCEPT, COMPLETE
+  }
+
+  static final class Item {
+    private final Kind kind;
+    private final String username;
+    private final String rideId;
+    private final String pickup;
+    private final String drop;
+    private final String driverUsername;
+    private final String paymentMethod;
+    private final String upiId;
+
+    private Item(Kind kind, String username, String rideId, String pickup, String drop, String driverUsername,
+        String paymentMethod, String upiId) {
+      this.kind = kind;
+      this.username = username;
+      this.rideId = rideId;
+      this.pickup = pickup;
+      this.drop = drop;
+      this.driverUsername = driverUsername;
+      this.paymentMethod = paymentMethod;
+      this.upiId = upiId;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    // The rider booking, or the driver accepting
+    public String getUsername() {
+      return username;
+    }
+
+    public String getRideId() {
+      return rideId;
+    }
+
+    public String getPickup() {
+      return pickup;
+    }
+
+    public String getDrop() {
+      return drop;
+    }
+
+    // Driver picked for a booking, or null to leave it to the dispatcher
+    public String getDriverUsername() {
+      return driverUsername;
+    }
+
+    public String getPaymentMethod() {
+      return paymentMethod;
+    }
+
+    public String getUpiId() {
+      return upiId;
+    }
+  }
+
+  static final class Result {
+    private final int index;
+    private final String rideId;
+    private final String error;
+
+    private Result(int index, String rideId, String error) {
+      this.index = index;
+      this.rideId = rideId;
+      this.error = error;
+    }
+
+    static Result ok(int index, String rideId) {
+      return new Result(index, rideId, null);
+    }
+
+    static Result failed(int index, String rideId, String error) {
+      return new Result(index, rideId, error);
+    }
+
+    // Position of the item in the batch
+    public int getIndex() {
+      return index;
+    }
+
+    public boolean isOk() {
+      return error == null;
+    }
+
+    // The new ride's ID for bookings, the item's ride otherwise
+    public String getRideId() {
+      return rideId;
+    }
+
+    public String getError() {
+      return error;
+    }
+  }
+
+  private final List<Item> items;
+
+  public RideBatch() {
+    this.items = new ArrayList<>();
+  }
+
+  // A REQUESTED ride for the dispatcher to match
+  public RideBatch book(String riderUsername, String pickup, String drop) {
+    return book(riderUsername, pickup, drop, null);
+  }
+
+  // A ride booked straight to the given driver, who must be free
+  public RideBatch book(String riderUsername, String pickup, String drop, String driverUsername) {
+    items.add(new Item(Kind.BOOK, riderUsername, null, pickup, drop, driverUsername, null, null));
+    return this;
+  }
+
+  public RideBatch accept(String rideId, String driverUsername) {
+    items.add(new Item(Kind.ACCEPT, driverUsername, rideId, null, null, null, null, null));
+    return this;
+  }
+
+  // paymentMethod is UPI (with upiId), Cash, Wallet, or null when payment is settled elsewhere
+  public RideBatch complete(String rideId, String paymentMethod, String upiId) {
+    items.add(new Item(Kind.COMPLETE, null, rideId, null, null, null, paymentMethod, upiId));
+    return this;
+  }
+
+  public List<Item> getItems() {
+    return Collections.unmodifiableList(items);
+  }
+
+  public int size() {
+    return items.size();
+  }
+}
@@ -0,0 +1,329 @@
+package rapido;
+
+import java.time.*;
+import java.time.zone.ZoneRules;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.*;
+
+// Columnar ride store - one primitive array per field, so report scans are tight loops over contiguous memory
+//
+// Row i of every column describes the i-th ride added. Rows are appended when rides are created or loaded and
+// rewritten after each transition; riders and drivers are stored as small int ids, -1 meaning no driver.
+class RideColumns {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+  private static final RideStatus[] STATUSES = RideStatus.values();
+  // 1 for COMPLETED, 0 otherwise - scans multiply by it instead of branching on an unpredictable status
+  private static final double[] COMPLETED_WEIGHT = new double[STATUSES.length];
+
+  static {
+    COMPLETED_WEIGHT[RideStatus.COMPLETED.ordinal()] = 1;
+  }
+
+  private double[] fare;
+  private double[] distance;
+  private int[] eta;
+  private byte[] status;
+  private long[] bookingTime;
+  // -1 until completed
+  private long[] completionTime;
+  private int[] riderId;
+  private int[] driverId;
+  private int size;
+
+  private final Map<Ride, Integer> rows;
+  private final Map<User, Integer> userIds;
+  private final List<User> users;
+  // Appends and updates take the write side; scans share the read side
+  private final ReadWriteLock lock;
+
+  public RideColumns() {
+    this.fare = new double[INITIAL_CAPACITY];
+    this.distance = new double[INITIAL_CAPACITY];
+    this.eta = new int[INITIAL_CAPACITY];
+    this.status = new byte[INITIAL_CAPACITY];
+    this.bookingTime = new long[INITIAL_CAPACITY];
+    this.completionTime = new long[INITIAL_CAPACITY];
+    this.riderId = new int[INITIAL_CAPACITY];
+    this.driverId = new int[INITIAL_CAPACITY];
+    this.rows = new ConcurrentHashMap<>();
+    this.userIds = new HashMap<>();
+    this.users = new ArrayList<>();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  public void add(Ride ride) {
+    lock.writeLock().lock();
+    try {
+      if (size == fare.length) {
+        grow();
+      }
+      int row = size++;
+      fare[row] = ride.getFare();
+      distance[row] = ride.getDistance();
+      eta[row] = ride.getEta();
+      bookingTime[row] = ride.getBookingTime();
+      riderId[row] = userId(ride.getRider());
+      write(row, ride);
+      rows.put(ride, row);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // Copies the ride's current status, driver and completion time into its row
+  public void update(Ride ride) {
+    Integer row = rows.get(ride);
+    if (row == null) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      // Read under the lock, so whichever update runs last writes the latest state
+      write(row, ride);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // Drops the rides' rows and closes the gaps; no update may run meanwhile, which the checkpoint lock sees to
+  public void removeAll(Set<Ride> removed) {
+    lock.writeLock().lock();
+    try {
+      Ride[] byRow = new Ride[size];
+      for (Map.Entry<Ride, Integer> row : rows.entrySet()) {
+        byRow[row.getValue()] = row.getKey();
+      }
+      int kept = 0;
+      for (int i = 0; i < size; i++) {
+        if (byRow[i] != null && removed.contains(byRow[i])) {
+          rows.remove(byRow[i]);
+          continue;
+        }
+        fare[kept] = fare[i];
+        distance[kept] = distance[i];
+        eta[kept] = eta[i];
+        status[kept] = status[i];
+        bookingTime[kept] = bookingTime[i];
+        completionTime[kept] = completionTime[i];
+        riderId[kept] = riderId[i];
+        driverId[kept] = driverId[i];
+        if (byRow[i] != null) {
+          rows.put(byRow[i], kept);
+        }
+        kept++;
+      }
+      size = kept;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void write(int row, Ride ride) {
+    status[row] = (byte) ride.getStatus().ordinal();
+    driverId[row] = ride.getDriver() != null ? userId(ride.getDriver()) : -1;
+    completionTime[row] = ride.hasCompletionTime() ? ride.getCompletionTime() : -1;
+  }
+
+  private int userId(User user) {
+    Integer id = userIds.get(user);
+    if (id == null) {
+      id = users.size();
+      userIds.put(user, id);
+      users.add(user);
+    }
+    return id;
+  }
+
+  private void grow() {
+    int capacity = fare.length * 2;
+    fare = Arrays.copyOf(fare, capacity);
+    distance = Arrays.copyOf(distance, capacity);
+    eta = Arrays.copyOf(eta, capacity);
+    status = Arrays.copyOf(status, capacity);
+    bookingTime = Arrays.copyOf(bookingTime, capacity);
+    completionTime = Arrays.copyOf(completionTime, capacity);
+    riderId = Arrays.copyOf(riderId, capacity);
+    driverId = Arrays.copyOf(driverId, capacity);
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Scans
+  public int[] countByStatus() {
+    int[] counts = new int[STATUSES.length];
+    lock.readLock().lock();
+    try {
+      byte[] status = this.status;
+      for (int i = 0; i < size; i++) {
+        counts[status[i]]++;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return counts;
+  }
+
+  // Completed rides out of all rides, 0 if there are none
+  public double completionRate() {
+    int[] counts = countByStatus();
+    int total = 0;
+    for (int count : counts) {
+      total += count;
+    }
+    return total > 0 ? (double) counts[RideStatus.COMPLETED.ordinal()] / total : 0;
+  }
+
+  public double completedRevenue() {
+    return completedFares()[0];
+  }
+
+  public double averageCompletedFare() {
+    double[] fares = completedFares();
+    return fares[1] > 0 ? fares[0] / fares[1] : 0;
+  }
+
+  // Sum and count of completed fares
+  private double[] completedFares() {
+    double sum = 0;
+    double count = 0;
+    lock.readLock().lock();
+    try {
+      double[] fare = this.fare;
+      byte[] status = this.status;
+      for (int i = 0; i < size; i++) {
+        double weight = COMPLETED_WEIGHT[status[i]];
+        sum += fare[i] * weight;
+        count += weight;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return new double[] { sum, count };
+  }
+
+  public double averageDistance() {
+    double sum = 0;
+    int count;
+    lock.readLock().lock();
+    try {
+      double[] distance = this.distance;
+      count = size;
+      for (int i = 0; i < count; i++) {
+        sum += distance[i];
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return count > 0 ? sum / count : 0;
+  }
+
+  public double averageEta() {
+    long sum = 0;
+    int count;
+    lock.readLock().lock();
+    try {
+      int[] eta = this.eta;
+      count = size;
+      for (int i = 0; i < count; i++) {
+        sum += eta[i];
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return count > 0 ? (double) sum / count : 0;
+  }
+
+  // Completed fares per driver, highest first, at most limit drivers
+  public List<Map.Entry<Driver, Double>> topDriversByRevenue(int limit) {
+    List<Map.Entry<Driver, Double>> top = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      // Shifted by one so rides without a driver land in slot 0
+      double[] byUser = new double[users.size() + 1];
+      double[] fare = this.fare;
+      byte[] status = this.status;
+      int[] driverId = this.driverId;
+      for (int i = 0; i < size; i++) {
+        byUser[driverId[i] + 1] += fare[i] * COMPLETED_WEIGHT[status[i]];
+      }
+      for (int id = 1; id < byUser.length; id++) {
+        if (byUser[id] > 0) {
+          top.add(new AbstractMap.SimpleImmutableEntry<>((Driver) users.get(id - 1), byUser[id]));
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    top.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+    return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+  }
+
+  // Completed fares summed by the local day the ride was completed, oldest day first
+  public SortedMap<LocalDate, Double> revenueByDay(ZoneId zone) {
+    SortedMap<LocalDate, Double> revenue = new TreeMap<>();
+    ZoneRules rules = zone.getRules();
+    lock.readLock().lock();
+    try {
+      int n = size;
+      long[] completionTime = this.completionTime;
+      double[] fare = this.fare;
+
+      // Uncompleted rows hold -1, which the mask turns into Long.MAX_VALUE for the minimum
+      long first = Long.MAX_VALUE;
+      long last = -1;
+      for (int i = 0; i < n; i++) {
+        first = Math.min(first, completionTime[i] & Long.MAX_VALUE);
+        last = Math.max(last, completionTime[i]);
+      }
+      if (last < 0) {
+        return revenue;
+      }
+
+      long firstDay = localDay(rules, first);
+      double[] byDay = new double[(int) (localDay(rules, last) - firstDay + 1)];
+      double[] completedByDay = new double[byDay.length];
+      if (rules.isFixedOffset()) {
+        // Fixed-offset zones (like Asia/Kolkata) need no per-row offset lookup
+        long offset = rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+        for (int i = 0; i < n; i++) {
+          long time = completionTime[i];
+          if (time >= 0) {
+            int bucket = (int) (Math.floorDiv(time + offset, MILLIS_PER_DAY) - firstDay);
+            byDay[bucket] += fare[i];
+            completedByDay[bucket]++;
+          }
+        }
+      } else {
+        for (int i = 0; i < n; i++) {
+          if (completionTime[i] >= 0) {
+            int bucket = (int) (localDay(rules, completionTime[i]) - firstDay);
+            byDay[bucket] += fare[i];
+            completedByDay[bucket]++;
+          }
+        }
+      }
+      for (int d = 0; d < byDay.length; d++) {
+        if (completedByDay[d] > 0) {
+          revenue.put(LocalDate.ofEpochDay(firstDay + d), byDay[d]);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return revenue;
+  }
+
+  private static long localDay(ZoneRules rules, long epochMillis) {
+    long offset = rules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+    return Math.floorDiv(epochMillis + offset, MILLIS_PER_DAY);
+  }
+}
@@ -0,0 +1,101 @@
+package rapido;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ride ID generator - Snowflake layout: 41 bits of milliseconds since 2024-01-01, 10 bits of node, 12 bits of sequence
+//
+// Lock-free: the last timestamp and sequence share one AtomicLong advanced by compare-and-set. A node that
+// runs out of sequence within a millisecond borrows the next one instead of spinning, and a clock that goes
+// backwards never moves IDs backwards, so IDs from one node are unique and strictly increasing.
+class RideIdGenerator {
+  static final String PREFIX = "RIDE";
+  static final long EPOCH_MILLIS = 1704067200000L;
+  static final int NODE_BITS = 10;
+  static final int SEQUENCE_BITS = 12;
+  static final long MAX_NODE = (1L << NODE_BITS) - 1;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  private static final RideIdGenerator SHARED = new RideIdGenerator(Long.getLong("rapido.nodeId", 0L));
+
+  private final long node;
+  // Milliseconds since the epoch shifted left by SEQUENCE_BITS, plus the sequence last handed out
+  private final AtomicLong last;
+
+  public RideIdGenerator(long node) {
+    if (node < 0 || node > MAX_NODE) {
+      throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE + ": " + node);
+    }
+    this.node = node;
+    this.last = new AtomicLong(-1);
+  }
+
+  // The generator for this process; its node comes from -Drapido.nodeId
+  public static RideIdGenerator shared() {
+    return SHARED;
+  }
+
+  public long getNode() {
+    return node;
+  }
+
+  public long nextId() {
+    while (true) {
+      long previous = last.get();
+      long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+      long next = now > previous ? now : previous + 1;
+      if (last.compareAndSet(previous, next)) {
+        return compose(next);
+      }
+    }
+  }
+
+  public String nextRideId() {
+    return PREFIX + nextId();
+  }
+
+  // Moves past an ID loaded from disk, so IDs minted after a restart on a slow clock cannot repeat it
+  public void observe(String rideId) {
+    long id = parse(rideId);
+    if (id < 0 || ((id >>> SEQUENCE_BITS) & MAX_NODE) != node) {
+      return;
+    }
+    long seen = ((id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS) | (id & SEQUENCE_MASK);
+    last.accumulateAndGet(seen, Math::max);
+  }
+
+  // Epoch millis the ID was minted at, for generated and older "RIDE" + currentTimeMillis IDs alike; -1 if neither
+  public static long timeOf(String rideId) {
+    long id = parse(rideId);
+    if (id >= 0) {
+      return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+    if (rideId == null || !rideId.startsWith(PREFIX)) {
+      return -1;
+    }
+    try {
+      long millis = Long.parseLong(rideId.substring(PREFIX.length()));
+      return millis > 0 ? millis : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private long compose(long timeAndSequence) {
+    return ((timeAndSequence >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+        | (node << SEQUENCE_BITS)
+        | (timeAndSequence & SEQUENCE_MASK);
+  }
+
+  // Older "RIDE" + currentTimeMillis IDs are too small to be generated ones and parse as -1
+  private static long parse(String rideId) {
+    if (rideId == null || !rideId.startsWith(PREFIX)) {
+      return -1;
+    }
+    try {
+      long id = Long.parseLong(rideId.substring(PREFIX.length()));
+      return id > (1L << (NODE_BITS + SEQUENCE_BITS + 32)) ? id : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
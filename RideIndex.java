@@ -0,0 +1,123 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Ride indexes - status -> rides and rider/driver -> ongoing rides, refiled after every state transition
+class RideIndex {
+  // Booking time, then ride ID
+  static final Comparator<Ride> BOOKING_ORDER = (a, b) -> {
+    int byTime = Long.compare(a.getBookingTime(), b.getBookingTime());
+    return byTime != 0 ? byTime : a.getRideId().compareTo(b.getRideId());
+  };
+
+  private final Map<RideStatus, Set<Ride>> byStatus;
+  private final Map<Rider, Set<Ride>> ongoingByRider;
+  private final Map<Driver, Set<Ride>> ongoingByDriver;
+
+  public RideIndex() {
+    this.byStatus = new EnumMap<>(RideStatus.class);
+    for (RideStatus status : RideStatus.values()) {
+      byStatus.put(status, ConcurrentHashMap.<Ride>newKeySet());
+    }
+    this.ongoingByRider = new ConcurrentHashMap<>();
+    this.ongoingByDriver = new ConcurrentHashMap<>();
+  }
+
+  // Files a new, loaded or replayed ride under its current state
+  public void add(Ride ride) {
+    RideStatus status = ride.getStatus();
+    byStatus.get(status).add(ride);
+    if (status == RideStatus.ONGOING) {
+      rideSet(ongoingByRider, ride.getRider()).add(ride);
+      if (ride.getDriver() != null) {
+        rideSet(ongoingByDriver, ride.getDriver()).add(ride);
+      }
+    }
+  }
+
+  // Refiles the ride after a successful transition out of the given status
+  public void moved(Ride ride, RideStatus from) {
+    byStatus.get(from).remove(ride);
+    RideStatus current = file(byStatus.get(ride.getStatus()), ride, ride.getStatus());
+
+    Driver driver = ride.getDriver();
+    if (current == RideStatus.ONGOING) {
+      file(rideSet(ongoingByRider, ride.getRider()), ride, RideStatus.ONGOING);
+      if (driver != null) {
+        file(rideSet(ongoingByDriver, driver), ride, RideStatus.ONGOING);
+      }
+    } else {
+      remove(ongoingByRider, ride.getRider(), ride);
+      if (driver != null) {
+        remove(ongoingByDriver, driver, ride);
+      }
+    }
+  }
+
+  // Unfiles a finished ride that is leaving memory for the archive
+  public void remove(Ride ride) {
+    byStatus.get(ride.getStatus()).remove(ride);
+  }
+
+  // Rides currently in the status, in booking order
+  public List<Ride> withStatus(RideStatus status) {
+    List<Ride> found = new ArrayList<>();
+    for (Ride ride : byStatus.get(status)) {
+      // A ride can sit in its old bucket for a moment while a transition is being refiled
+      if (ride.getStatus() == status) {
+        found.add(ride);
+      }
+    }
+    found.sort(BOOKING_ORDER);
+    return found;
+  }
+
+  public int countWithStatus(RideStatus status) {
+    return byStatus.get(status).size();
+  }
+
+  // Ongoing rides of the rider, in booking order
+  public List<Ride> ongoingForRider(Rider rider) {
+    return ongoing(ongoingByRider.get(rider));
+  }
+
+  // Ongoing rides of the driver, in booking order
+  public List<Ride> ongoingForDriver(Driver driver) {
+    return ongoing(ongoingByDriver.get(driver));
+  }
+
+  private static List<Ride> ongoing(Set<Ride> rides) {
+    List<Ride> found = new ArrayList<>();
+    if (rides != null) {
+      for (Ride ride : rides) {
+        if (ride.getStatus() == RideStatus.ONGOING) {
+          found.add(ride);
+        }
+      }
+      found.sort(BOOKING_ORDER);
+    }
+    return found;
+  }
+
+  // Adds the ride, then takes it out again if a later transition has already moved it on
+  private static RideStatus file(Set<Ride> rides, Ride ride, RideStatus expected) {
+    rides.add(ride);
+    RideStatus current = ride.getStatus();
+    if (current != expected) {
+      rides.remove(ride);
+    }
+    return current;
+  }
+
+  private static <K> Set<Ride> rideSet(Map<K, Set<Ride>> index, K key) {
+    return index.computeIfAbsent(key, k -> ConcurrentHashMap.<Ride>newKeySet());
+  }
+
+  private static <K> void remove(Map<K, Set<Ride>> index, K key, Ride ride) {
+    Set<Ride> rides = index.get(key);
+    if (rides != null) {
+      rides.remove(ride);
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package rapido;
+
+// Ride lifecycle - REQUESTED -> ONGOING -> COMPLETED, or CANCELLED before completion
+enum RideStatus {
+  REQUESTED, ONGOING, COMPLETED, CANCELLED;
+
+  // Parses a persisted status; rides saved without one are still waiting for a driver
+  public static RideStatus parse(String value) {
+    if (value == null || value.equals("null")) {
+      return REQUESTED;
+    }
+    return valueOf(value.trim().toUpperCase());
+  }
+}
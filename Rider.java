@@ -5,15 +5,36 @@ import java.util.*;
 
 // Rider class
 class Rider extends User implements Serializable {
-  private List<Ride> rideHistory;
+  // In booking order, which history pages are cursored by. Never changed in place: each change publishes a new
+  // list, so a reader pages the one it got without copying it.
+  private volatile List<Ride> rideHistory;
 
   public Rider(String name, String phone, String username, String password) {
     super(name, phone, username, password, "RIDER");
-    this.rideHistory = new ArrayList<>();
+    this.rideHistory = Collections.emptyList();
   }
 
-  public void addRideToHistory(Ride ride) {
-    rideHistory.add(ride);
+  public synchronized void addRideToHistory(Ride ride) {
+    List<Ride> updated = new ArrayList<>(rideHistory.size() + 1);
+    updated.addAll(rideHistory);
+    updated.add(RapidoSystem.bookingPosition(updated, ride), ride);
+    rideHistory = Collections.unmodifiableList(updated);
+  }
+
+  // Rides loaded at startup, added in one go
+  public synchronized void addRidesToHistory(Collection<Ride> rides) {
+    List<Ride> updated = new ArrayList<>(rideHistory.size() + rides.size());
+    updated.addAll(rideHistory);
+    updated.addAll(rides);
+    updated.sort(RideIndex.BOOKING_ORDER);
+    rideHistory = Collections.unmodifiableList(updated);
+  }
+
+  // Rides moved to the archive; RapidoSystem reads them back by month
+  public synchronized void removeFromHistory(Collection<Ride> archived) {
+    List<Ride> updated = new ArrayList<>(rideHistory);
+    updated.removeAll(archived);
+    rideHistory = Collections.unmodifiableList(updated);
   }
 
   public List<Ride> getRideHistory() {
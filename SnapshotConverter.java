@@ -0,0 +1,70 @@
+package rapido;
+
+import java.io.*;
+
+// Snapshot converter - streams a snapshot between the JSON and binary formats, compressed or not
+//
+// Usage: java rapido.SnapshotConverter rapido_data.json rapido_data.bin
+//        java rapido.SnapshotConverter rapido_data.bin rapido_data.json
+//        java rapido.SnapshotConverter rapido_data.json rapido_data.json.gz
+public class SnapshotConverter {
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      System.out.println("Usage: java rapido.SnapshotConverter <input.json|input.bin>[.gz]"
+          + " <output.json|output.bin>[.gz]");
+      return;
+    }
+    try {
+      long start = System.nanoTime();
+      CompressionStats[] stats = new CompressionStats[2];
+      long[] counts = convert(new File(args[0]), new File(args[1]), stats);
+      System.out.printf("Converted %d users and %d rides in %d ms%n",
+          counts[0], counts[1], (System.nanoTime() - start) / 1_000_000);
+      // Both sides run at once, so each throughput is of the whole conversion
+      if (stats[0] != null) {
+        System.out.println("Read " + stats[0]);
+      }
+      if (stats[1] != null) {
+        System.out.println("Wrote " + stats[1]);
+      }
+    } catch (IOException e) {
+      System.out.println("Error converting snapshot: " + e.getMessage());
+    }
+  }
+
+  // Returns the number of users and rides written
+  public static long[] convert(File input, File output) throws IOException {
+    return convert(input, output, new CompressionStats[2]);
+  }
+
+  // Also fills in how the input was inflated and the output compressed, each null if not compressed
+  public static long[] convert(File input, File output, CompressionStats[] stats) throws IOException {
+    final long[] counts = new long[2];
+    stats[1] = SnapshotFormat.isCompressed(output.getName()) ? new CompressionStats() : null;
+    try (final SnapshotWriter writer = SnapshotFormat.openWriter(output.getName(), new FileOutputStream(output),
+        stats[1])) {
+      stats[0] = SnapshotFormat.read(input, new SnapshotSink() {
+        @Override
+        public void basePrice(double basePricePerKm) throws IOException {
+          writer.basePrice(basePricePerKm);
+        }
+
+        @Override
+        public void user(User user) throws IOException {
+          writer.user(user);
+          counts[0]++;
+        }
+
+        @Override
+        public void ride(Ride ride) throws IOException {
+          writer.ride(ride);
+          counts[1]++;
+        }
+      });
+    }
+    if (stats[1] != null) {
+      stats[1].finish();
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,258 @@
+package rapido;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Snapshot encoder - writes a full snapshot straight to a file channel, with JSON rides encoded in parallel
+//
+// Rides are cut into chunks of CHUNK_RIDES, and each chunk is encoded on a fork-join pool into pooled direct buffers
+// and written in file order with one gathering write. At most CHUNKS_PER_THREAD chunks per thread are encoded
+// ahead of the write, so memory is bounded by the chunks in flight rather than by the size of the file. Binary
+// snapshots end with a string table of the whole file, so they stream through the ordinary writer instead.
+// A compressed JSON snapshot gets each chunk compressed on its worker as a gzip member of its own; gzip readers
+// take a series of members as one stream, so the file reads back like a single-member one.
+final class SnapshotEncoder {
+  private static final int CHUNK_RIDES = 1024;
+  private static final int CHUNKS_PER_THREAD = 2;
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final int POOL_LIMIT = 64;
+  // Written-out buffers, kept for later chunks and snapshots since direct buffers are slow to allocate
+  private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+  // Charset encoders only have a fast path between heap buffers, so text is encoded here and copied out
+  private static final ThreadLocal<ByteBuffer> SCRATCH =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+  private SnapshotEncoder() {
+  }
+
+  // Threads encoding rides: rapido.saveThreads, or one per core; 1 encodes on the calling thread
+  public static int saveThreads() {
+    int threads = Integer.getInteger("rapido.saveThreads", Runtime.getRuntime().availableProcessors());
+    return Math.max(1, threads);
+  }
+
+  public static CompressionStats write(String fileName, double basePricePerKm, List<User> users, List<Ride> rides,
+      FileChannel channel) throws IOException {
+    return write(fileName, basePricePerKm, users, rides, channel, saveThreads());
+  }
+
+  // Writes the snapshot in the format the file name selects; the channel is left open. Returns how it was
+  // compressed, or null if it was not.
+  public static CompressionStats write(String fileName, double basePricePerKm, List<User> users, List<Ride> rides,
+      FileChannel channel, int threads) throws IOException {
+    CompressionStats stats = SnapshotFormat.isCompressed(fileName) ? new CompressionStats() : null;
+    if (SnapshotFormat.isBinary(fileName)) {
+      try (SnapshotWriter writer = SnapshotFormat.openWriter(fileName, unclosable(channel), stats)) {
+        writer.basePrice(basePricePerKm);
+        for (User user : users) {
+          writer.user(user);
+        }
+        for (Ride ride : rides) {
+          writer.ride(ride);
+        }
+      }
+      return finish(stats);
+    }
+
+    // The JSON writer lays out everything around the rides; its output goes through the same encoding. Snapshots
+    // are UTF-8 whatever the platform, so a file saved on one machine loads with the same names on another.
+    Charset charset = StandardCharsets.UTF_8;
+    StringWriter text = new StringWriter();
+    JsonSnapshotWriter writer = new JsonSnapshotWriter(text);
+    writer.basePrice(basePricePerKm);
+    for (User user : users) {
+      writer.user(user);
+    }
+    writer.beginRides();
+    writeFully(channel, encode(CharBuffer.wrap(text.getBuffer()), charset, stats));
+    writeRides(rides, channel, charset, stats, threads);
+    writer.ridesWrittenElsewhere(rides.size());
+    text.getBuffer().setLength(0);
+    writer.close();
+    writeFully(channel, encode(CharBuffer.wrap(text.getBuffer()), charset, stats));
+    return finish(stats);
+  }
+
+  private static CompressionStats finish(CompressionStats stats) {
+    if (stats != null) {
+      stats.finish();
+    }
+    return stats;
+  }
+
+  private static void writeRides(List<Ride> rides, FileChannel channel, Charset charset, CompressionStats stats,
+      int threads) throws IOException {
+    if (threads <= 1) {
+      for (int start = 0; start < rides.size(); start += CHUNK_RIDES) {
+        writeFully(channel, encodeChunk(rides, start, charset, stats));
+      }
+      return;
+    }
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      Deque<Future<List<ByteBuffer>>> encoding = new ArrayDeque<>();
+      for (int start = 0; start < rides.size(); start += CHUNK_RIDES) {
+        int from = start;
+        encoding.add(pool.submit(() -> encodeChunk(rides, from, charset, stats)));
+        if (encoding.size() >= threads * CHUNKS_PER_THREAD) {
+          writeFully(channel, next(encoding));
+        }
+      }
+      while (!encoding.isEmpty()) {
+        writeFully(channel, next(encoding));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // The rides from start, each after a separator but the very first; every chunk gets its own timestamp codec so
+  // the threads do not keep replacing each other's cached day
+  private static List<ByteBuffer> encodeChunk(List<Ride> rides, int start, Charset charset, CompressionStats stats)
+      throws IOException {
+    TimestampCodec codec = new TimestampCodec(TimestampCodec.local().getZone());
+    int end = Math.min(start + CHUNK_RIDES, rides.size());
+    StringBuilder json = new StringBuilder((end - start) * 512);
+    for (int i = start; i < end; i++) {
+      if (i > 0) {
+        json.append(JsonSnapshotWriter.RIDE_SEPARATOR);
+      }
+      JsonSnapshotWriter.appendRide(json, rides.get(i), codec);
+    }
+    char[] chars = new char[json.length()];
+    json.getChars(0, chars.length, chars, 0);
+    return encode(CharBuffer.wrap(chars), charset, stats);
+  }
+
+  // Same bytes an OutputStreamWriter would produce, as one gzip member when there are stats to count it in, in as
+  // many pooled buffers as it takes
+  private static List<ByteBuffer> encode(CharBuffer in, Charset charset, CompressionStats stats) throws IOException {
+    CharsetEncoder encoder = charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    PooledOutput pooled = new PooledOutput();
+    OutputStream out = stats != null ? SnapshotFormat.gzip(pooled, false) : pooled;
+    ByteBuffer scratch = SCRATCH.get();
+    scratch.clear();
+    long raw = 0;
+    boolean flushing = false;
+    while (true) {
+      CoderResult result = flushing ? encoder.flush(scratch) : encoder.encode(in, scratch, true);
+      if (result.isOverflow() || result.isUnderflow()) {
+        out.write(scratch.array(), 0, scratch.position());
+        raw += scratch.position();
+        scratch.clear();
+        if (result.isUnderflow()) {
+          if (flushing) {
+            break;
+          }
+          flushing = true;
+        }
+      } else {
+        result.throwException();
+      }
+    }
+    out.close();
+    if (stats != null) {
+      stats.add(raw, pooled.size);
+    }
+    return pooled.buffers;
+  }
+
+  // Collects what is written in pooled buffers, each flipped ready to write once it is full or the stream closed
+  private static final class PooledOutput extends OutputStream {
+    final List<ByteBuffer> buffers = new ArrayList<>();
+    long size;
+    private ByteBuffer current;
+
+    @Override
+    public void write(int b) {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      while (len > 0) {
+        if (current == null || !current.hasRemaining()) {
+          close();
+          current = acquire();
+        }
+        int n = Math.min(len, current.remaining());
+        current.put(b, off, n);
+        off += n;
+        len -= n;
+        size += n;
+      }
+    }
+
+    @Override
+    public void close() {
+      if (current != null) {
+        current.flip();
+        buffers.add(current);
+        current = null;
+      }
+    }
+  }
+
+  private static List<ByteBuffer> next(Deque<Future<List<ByteBuffer>>> encoding) throws IOException {
+    try {
+      return encoding.poll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while saving rides");
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+  }
+
+  // One gathering write, repeated until the channel has taken everything; the buffers then go back to the pool
+  private static void writeFully(FileChannel channel, List<ByteBuffer> buffers) throws IOException {
+    ByteBuffer[] array = buffers.toArray(new ByteBuffer[0]);
+    long remaining = 0;
+    for (ByteBuffer buffer : array) {
+      remaining += buffer.remaining();
+    }
+    while (remaining > 0) {
+      remaining -= channel.write(array);
+    }
+    for (ByteBuffer buffer : array) {
+      release(buffer);
+    }
+  }
+
+  private static ByteBuffer acquire() {
+    ByteBuffer buffer = POOL.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private static void release(ByteBuffer buffer) {
+    if (POOL.size() < POOL_LIMIT) {
+      POOL.add(buffer);
+    }
+  }
+
+  // The format writers close their stream when done, but the channel has to stay open for the fsync
+  private static OutputStream unclosable(FileChannel channel) {
+    OutputStream out = Channels.newOutputStream(channel);
+    return new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+    };
+  }
+}
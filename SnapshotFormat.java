@@ -0,0 +1,116 @@
+package rapido;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+
+// Snapshot format selection - binary for *.bin files, JSON otherwise, either one gzip-compressed when the name ends
+// in .gz (rapido_data.json.gz, rapido_data.bin.gz)
+//
+// On load, compression is recognised by the gzip header whatever the name, and the format of a compressed
+// snapshot by its own header. -Drapido.compressionLevel (1 fastest to 9 smallest, default 6) picks the trade-off
+// between CPU and disk.
+class SnapshotFormat {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int COMPRESSION_LEVEL =
+      Math.max(1, Math.min(9, Integer.getInteger("rapido.compressionLevel", 6)));
+
+  private SnapshotFormat() {
+  }
+
+  public static boolean isCompressed(String fileName) {
+    return fileName.endsWith(".gz");
+  }
+
+  public static boolean isBinary(String fileName) {
+    return withoutCompression(fileName).endsWith(".bin");
+  }
+
+  // The file name without .gz and its format extension; the change log and archive are named after it
+  public static String baseName(String fileName) {
+    return withoutCompression(fileName).replaceFirst("\\.[^.\\\\/]*$", "");
+  }
+
+  private static String withoutCompression(String fileName) {
+    return isCompressed(fileName) ? fileName.substring(0, fileName.length() - 3) : fileName;
+  }
+
+  public static String describe(String fileName) {
+    return (isCompressed(fileName) ? "gzip-compressed " : "") + (isBinary(fileName) ? "binary snapshot" : "JSON");
+  }
+
+  // Returns how the snapshot was decompressed, or null if it was not compressed
+  public static CompressionStats read(File file, SnapshotSink sink) throws IOException {
+    if (!hasGzipHeader(file)) {
+      if (isBinary(file.getName())) {
+        BinarySnapshot.read(file, sink);
+      } else {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+          JsonSnapshot.read(reader, sink);
+        }
+      }
+      return null;
+    }
+
+    CompressionStats stats = new CompressionStats();
+    try (InputStream in = new BufferedInputStream(stats.counting(new GZIPInputStream(
+        stats.counting(new FileInputStream(file), false), BUFFER_SIZE), true), BUFFER_SIZE)) {
+      in.mark(4);
+      int magic = 0;
+      for (int i = 0; i < 4; i++) {
+        magic = magic << 8 | (in.read() & 0xff);
+      }
+      in.reset();
+      if (magic == BinarySnapshot.MAGIC) {
+        // The binary format is read by offset, so it is inflated into memory first
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] chunk = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(chunk)) > 0) {
+          content.write(chunk, 0, read);
+        }
+        BinarySnapshot.read(content.toByteArray(), sink);
+      } else {
+        JsonSnapshot.read(new InputStreamReader(in, StandardCharsets.UTF_8), sink);
+      }
+    }
+    stats.finish();
+    return stats;
+  }
+
+  // True if the file starts with the gzip magic number
+  public static boolean hasGzipHeader(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return in.read() == 0x1f && in.read() == 0x8b;
+    }
+  }
+
+  // Deflates at the configured level; with syncFlush every flush() ends a block a reader can inflate
+  public static GZIPOutputStream gzip(OutputStream out, boolean syncFlush) throws IOException {
+    return new GZIPOutputStream(out, BUFFER_SIZE, syncFlush) {
+      {
+        def.setLevel(COMPRESSION_LEVEL);
+      }
+    };
+  }
+
+  public static SnapshotWriter openWriter(String fileName, OutputStream out) throws IOException {
+    return openWriter(fileName, out, null);
+  }
+
+  // With stats, the bytes going into and out of the compressor are counted there
+  public static SnapshotWriter openWriter(String fileName, OutputStream out, CompressionStats stats)
+      throws IOException {
+    if (isCompressed(fileName)) {
+      if (stats != null) {
+        out = stats.counting(gzip(stats.counting(out, false), false), true);
+      } else {
+        out = gzip(out, false);
+      }
+    }
+    if (isBinary(fileName)) {
+      return new BinarySnapshotWriter(out);
+    }
+    return new JsonSnapshotWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,12 @@
+package rapido;
+
+import java.io.IOException;
+
+// Receives snapshot contents in order: base price, then every user, then every ride
+interface SnapshotSink {
+  void basePrice(double basePricePerKm) throws IOException;
+
+  void user(User user) throws IOException;
+
+  void ride(Ride ride) throws IOException;
+}
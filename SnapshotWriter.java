@@ -0,0 +1,7 @@
+package rapido;
+
+import java.io.Closeable;
+
+// Snapshot sink backed by an output stream; close() finishes the file
+interface SnapshotWriter extends SnapshotSink, Closeable {
+}
@@ -0,0 +1,195 @@
+package rapido;
+
+import java.time.*;
+import java.time.zone.*;
+
+// Timestamp codec - epoch millis to and from local "yyyy-MM-dd HH:mm:ss" text without formatter objects
+//
+// The zone offset and calendar date are worked out with java.time once per local day and kept in an immutable Day,
+// so encoding and decoding within that day are a few divisions and digit copies. One codec is safe to share
+// between threads; the cached Day is swapped through a volatile field.
+final class TimestampCodec {
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+  private static final int TEXT_LENGTH = 19;
+  private static final TimestampCodec LOCAL = new TimestampCodec(ZoneId.systemDefault());
+
+  // One local calendar day; every instant in [from, until) falls on it with the same UTC offset
+  static final class Day {
+    final long localDay;
+    final long from;
+    final long until;
+    final long offsetMillis;
+    // The whole day has one offset, so a local time on it converts back with a subtraction
+    final boolean uniform;
+    final char[] isoDate;
+    final char[] dayFirstDate;
+
+    private Day(long localDay, long from, long until, long offsetMillis, boolean uniform, LocalDate date) {
+      this.localDay = localDay;
+      this.from = from;
+      this.until = until;
+      this.offsetMillis = offsetMillis;
+      this.uniform = uniform;
+      this.isoDate = new char[11];
+      this.dayFirstDate = new char[11];
+      String year = fourDigits(date.getYear());
+      String month = twoDigits(date.getMonthValue());
+      String day = twoDigits(date.getDayOfMonth());
+      (year + '-' + month + '-' + day + ' ').getChars(0, 11, isoDate, 0);
+      (day + '-' + month + '-' + year + ' ').getChars(0, 11, dayFirstDate, 0);
+    }
+  }
+
+  private final ZoneId zone;
+  private final ZoneRules rules;
+  private volatile Day cached;
+
+  public TimestampCodec(ZoneId zone) {
+    this.zone = zone;
+    this.rules = zone.getRules();
+  }
+
+  // Codec for the JVM's default zone, which is what snapshots and screens have always used
+  public static TimestampCodec local() {
+    return LOCAL;
+  }
+
+  public ZoneId getZone() {
+    return zone;
+  }
+
+  public Day day(long millis) {
+    Day day = cached;
+    if (day == null || millis < day.from || millis >= day.until) {
+      day = computeDay(millis);
+      cached = day;
+    }
+    return day;
+  }
+
+  private Day computeDay(long millis) {
+    Instant instant = Instant.ofEpochMilli(millis);
+    long offsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+    long localDay = Math.floorDiv(millis + offsetMillis, MILLIS_PER_DAY);
+    long from = localDay * MILLIS_PER_DAY - offsetMillis;
+    long until = from + MILLIS_PER_DAY;
+    boolean uniform = true;
+
+    // Clipped to the zone's transitions around the instant, since the offset changes there
+    ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+    if (previous != null && previous.toEpochSecond() * 1000 > from) {
+      from = previous.toEpochSecond() * 1000;
+      uniform = false;
+    }
+    // A change exactly at midnight that sets clocks back repeats the end of the day, so that is not uniform either
+    ZoneOffsetTransition next = rules.nextTransition(instant);
+    if (next != null && next.toEpochSecond() * 1000 <= until) {
+      until = next.toEpochSecond() * 1000;
+      uniform = false;
+    }
+    return new Day(localDay, from, until, offsetMillis, uniform, LocalDate.ofEpochDay(localDay));
+  }
+
+  // yyyy-MM-dd HH:mm:ss
+  public String format(long millis) {
+    return appendTo(new StringBuilder(TEXT_LENGTH), millis).toString();
+  }
+
+  public StringBuilder appendTo(StringBuilder out, long millis) {
+    Day day = day(millis);
+    out.append(day.isoDate);
+    return appendClock(out, day, millis, true);
+  }
+
+  // dd-MM-yyyy HH:mm:ss, or dd-MM-yyyy HH:mm without seconds, as receipts and ride listings show it
+  public StringBuilder appendDayFirst(StringBuilder out, long millis, boolean withSeconds) {
+    Day day = day(millis);
+    out.append(day.dayFirstDate);
+    return appendClock(out, day, millis, withSeconds);
+  }
+
+  private static StringBuilder appendClock(StringBuilder out, Day day, long millis, boolean withSeconds) {
+    long secondOfDay = Math.floorMod(millis + day.offsetMillis, MILLIS_PER_DAY) / 1000;
+    appendTwoDigits(out, (int) (secondOfDay / 3600)).append(':');
+    appendTwoDigits(out, (int) (secondOfDay / 60 % 60));
+    if (withSeconds) {
+      appendTwoDigits(out.append(':'), (int) (secondOfDay % 60));
+    }
+    return out;
+  }
+
+  // Reads exactly yyyy-MM-dd HH:mm:ss, which is all the snapshot and log writers produce
+  public long parse(CharSequence text) {
+    if (text.length() != TEXT_LENGTH || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+        || text.charAt(13) != ':' || text.charAt(16) != ':') {
+      throw new IllegalArgumentException("Expected yyyy-MM-dd HH:mm:ss: " + text);
+    }
+    int year = digits(text, 0, 4);
+    int month = digits(text, 5, 2);
+    int dayOfMonth = digits(text, 8, 2);
+    int hour = digits(text, 11, 2);
+    int minute = digits(text, 14, 2);
+    int second = digits(text, 17, 2);
+    if (month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > daysInMonth(year, month)
+        || hour > 23 || minute > 59 || second > 59) {
+      throw new IllegalArgumentException("Not a valid date and time: " + text);
+    }
+
+    long localDay = epochDay(year, month, dayOfMonth);
+    long localMillis = localDay * MILLIS_PER_DAY + (hour * 3600L + minute * 60L + second) * 1000;
+    Day day = cached;
+    if (day != null && day.uniform && day.localDay == localDay) {
+      return localMillis - day.offsetMillis;
+    }
+    // A repeated local time takes the later offset and a skipped one moves forward, as SimpleDateFormat read them
+    long millis = LocalDateTime.of(year, month, dayOfMonth, hour, minute, second).atZone(zone)
+        .withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+    cached = computeDay(millis);
+    return millis;
+  }
+
+  private static int digits(CharSequence text, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new IllegalArgumentException("Expected a digit at position " + i + ": " + text);
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    if (month == 2) {
+      return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  // Days since 1970-01-01 in the proleptic Gregorian calendar, as LocalDate.toEpochDay counts them
+  static long epochDay(int year, int month, int dayOfMonth) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + dayOfMonth - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+    return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+  }
+
+  private static String twoDigits(int value) {
+    return value < 10 ? "0" + value : Integer.toString(value);
+  }
+
+  private static String fourDigits(int value) {
+    String digits = Integer.toString(value);
+    while (digits.length() < 4) {
+      digits = "0" + digits;
+    }
+    return digits;
+  }
+}
@@ -0,0 +1,215 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.locks.*;
+
+// User directory - username/phone indexes and typed views, kept in sync on every mutation
+class UserDirectory {
+  private final Map<String, User> byUsername;
+  private final Map<String, User> byPhone;
+  private final List<Rider> riders;
+  private final List<Driver> drivers;
+  private final List<Admin> admins;
+  private final Set<Driver> unapprovedDrivers;
+  private final transient DriverLocator driverLocator;
+  // Lookups share the read lock; the driver index has its own lock
+  private final transient ReadWriteLock lock;
+
+  public UserDirectory() {
+    this.byUsername = new LinkedHashMap<>();
+    this.byPhone = new HashMap<>();
+    this.riders = new ArrayList<>();
+    this.drivers = new ArrayList<>();
+    this.admins = new ArrayList<>();
+    this.unapprovedDrivers = new LinkedHashSet<>();
+    this.driverLocator = new DriverLocator();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  // Adds the user to every index; returns false if the username is already taken
+  public boolean add(User user) {
+    lock.writeLock().lock();
+    try {
+      if (byUsername.containsKey(user.getUsername())) {
+        return false;
+      }
+      byUsername.put(user.getUsername(), user);
+      if (user.getPhone() != null && !byPhone.containsKey(user.getPhone())) {
+        byPhone.put(user.getPhone(), user);
+      }
+
+      if (user instanceof Rider) {
+        riders.add((Rider) user);
+      } else if (user instanceof Driver) {
+        Driver driver = (Driver) user;
+        drivers.add(driver);
+        if (!driver.isApproved()) {
+          unapprovedDrivers.add(driver);
+        }
+        if (driver.isOnline() && !driver.hasPosition()) {
+          // Saved before positions were tracked - give it a stable stand-in so it stays matchable
+          double[] position = Geo.locate(driver.getUsername());
+          driver.setPosition(position[0], position[1]);
+        }
+        driverLocator.update(driver);
+      } else if (user instanceof Admin) {
+        admins.add((Admin) user);
+      }
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // Removes the user from every index; returns the removed user or null if not found
+  public User remove(String username) {
+    lock.writeLock().lock();
+    try {
+      User user = byUsername.remove(username);
+      if (user == null) {
+        return null;
+      }
+      if (byPhone.get(user.getPhone()) == user) {
+        byPhone.remove(user.getPhone());
+      }
+
+      if (user instanceof Rider) {
+        riders.remove(user);
+      } else if (user instanceof Driver) {
+        drivers.remove(user);
+        unapprovedDrivers.remove(user);
+        driverLocator.remove((Driver) user);
+      } else if (user instanceof Admin) {
+        admins.remove(user);
+      }
+      return user;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void approveDriver(Driver driver) {
+    lock.writeLock().lock();
+    try {
+      driver.setApproved(true);
+      unapprovedDrivers.remove(driver);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    driverLocator.update(driver);
+  }
+
+  // Online status and position only touch the driver index, so they skip the directory lock
+  public void setDriverOnline(Driver driver, boolean online) {
+    driver.setOnline(online);
+    driverLocator.update(driver);
+  }
+
+  public void moveDriver(Driver driver, double latitude, double longitude) {
+    driver.setPosition(latitude, longitude);
+    driverLocator.update(driver);
+  }
+
+  // After the driver claims or releases a ride; busy drivers are kept out of the driver index
+  public void updateAvailability(Driver driver) {
+    driverLocator.update(driver);
+  }
+
+  // Lookups
+  public boolean contains(String username) {
+    lock.readLock().lock();
+    try {
+      return byUsername.containsKey(username);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public User findByUsername(String username) {
+    lock.readLock().lock();
+    try {
+      return byUsername.get(username);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public User findByPhone(String phone) {
+    lock.readLock().lock();
+    try {
+      return byPhone.get(phone);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public Rider findRider(String username) {
+    User user = findByUsername(username);
+    return user instanceof Rider ? (Rider) user : null;
+  }
+
+  public Driver findDriver(String username) {
+    User user = findByUsername(username);
+    return user instanceof Driver ? (Driver) user : null;
+  }
+
+  // Typed views - copies taken under the read lock, in registration order
+  public List<User> getUsers() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(byUsername.values());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public List<Rider> getRiders() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(riders);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public List<Driver> getDrivers() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(drivers);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public List<Admin> getAdmins() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(admins);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // Approved, online drivers by position
+  public DriverLocator getDriverLocator() {
+    return driverLocator;
+  }
+
+  public List<Driver> getUnapprovedDrivers() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(unapprovedDrivers);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return byUsername.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
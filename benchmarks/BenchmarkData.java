@@ -0,0 +1,106 @@
+package rapido;
+
+import java.io.*;
+import java.util.*;
+
+// Synthetic data for the benchmarks - riders, approved drivers around Bengaluru and rides in every state
+final class BenchmarkData {
+  static final String PASSWORD = "pw";
+  private static final String[] PLACES = {
+      "Koramangala", "Indiranagar", "Whitefield", "HSR Layout", "Jayanagar", "Malleshwaram",
+      "Hebbal", "Electronic City", "BTM Layout", "Yelahanka", "Marathahalli", "Banashankari" };
+  private static final long DAY_MILLIS = 86_400_000L;
+
+  final List<Rider> riders = new ArrayList<>();
+  final List<Driver> drivers = new ArrayList<>();
+  final List<Ride> rides = new ArrayList<>();
+
+  private BenchmarkData() {
+  }
+
+  // size users (a quarter of them drivers, half of those online) and size rides booked over the last 90 days
+  static BenchmarkData generate(int size, long seed) {
+    Random random = new Random(seed);
+    BenchmarkData data = new BenchmarkData();
+    int driverCount = Math.max(1, size / 4);
+    for (int i = 0; i < driverCount; i++) {
+      Driver driver = new Driver("Driver " + i, "9" + (100000000 + i), "KA01" + i, "driver" + i, PASSWORD);
+      driver.setApproved(true);
+      driver.setOnline(i % 2 == 0);
+      double[] position = Geo.locate("driver" + i);
+      driver.setPosition(position[0], position[1]);
+      data.drivers.add(driver);
+    }
+    for (int i = driverCount; i < size; i++) {
+      data.riders.add(new Rider("Rider " + i, "8" + (100000000 + i), "rider" + i, PASSWORD));
+    }
+
+    long start = System.currentTimeMillis() - 90 * DAY_MILLIS;
+    for (int i = 0; i < size; i++) {
+      Rider rider = data.riders.isEmpty() ? null : data.riders.get(random.nextInt(data.riders.size()));
+      if (rider == null) {
+        break;
+      }
+      double distance = Math.round((random.nextDouble() * 9 + 1) * 10.0) / 10.0;
+      Ride ride = new Ride(PLACES[random.nextInt(PLACES.length)], PLACES[random.nextInt(PLACES.length)],
+          distance, distance * 8.0, random.nextInt(9) + 2, rider);
+      long booked = start + (long) ((double) i / size * 90 * DAY_MILLIS);
+      ride.setBookingTime(booked);
+      int kind = random.nextInt(10);
+      if (kind == 0) {
+        // Open request
+      } else if (kind == 1 && i < driverCount) {
+        ride.restoreState(RideStatus.ONGOING, data.drivers.get(i));
+      } else {
+        ride.restoreState(RideStatus.COMPLETED, data.drivers.get(random.nextInt(driverCount)));
+        ride.setCompletionTime(booked + (ride.getEta() + 20) * 60_000L);
+        ride.setPaymentMethod(random.nextBoolean() ? "UPI" : "Cash");
+      }
+      data.rides.add(ride);
+    }
+    return data;
+  }
+
+  List<User> users() {
+    List<User> users = new ArrayList<>(drivers);
+    users.addAll(riders);
+    return users;
+  }
+
+  // Writes a snapshot in the format the file name selects (.bin or JSON)
+  void write(File file) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      write(file.getName(), out);
+    }
+  }
+
+  void write(String fileName, OutputStream out) throws IOException {
+    try (SnapshotWriter writer = SnapshotFormat.openWriter(fileName, out)) {
+      writer.basePrice(8.0);
+      for (User user : users()) {
+        writer.user(user);
+      }
+      for (Ride ride : rides) {
+        writer.ride(ride);
+      }
+    }
+  }
+
+  static File tempDirectory() throws IOException {
+    File dir = File.createTempFile("rapido-bench", "");
+    if (!dir.delete() || !dir.mkdir()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    return dir;
+  }
+
+  static void deleteDirectory(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+}
@@ -0,0 +1,23 @@
+package rapido;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.*;
+
+// Benchmark launcher - the usual JMH command line, with the GC profiler on unless other profilers are given,
+// so every run reports allocation rate (gc.alloc.rate.norm, bytes per operation) next to throughput
+public class BenchmarkMain {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+        || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (commandLine.getProfilers().isEmpty()) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,82 @@
+package rapido;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Login, user and driver lookups and open-request listing on a fully loaded system
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx4g" })
+public class LookupBenchmark {
+  @Param({ "1000", "100000", "1000000" })
+  public int size;
+
+  private File dir;
+  private RapidoSystem system;
+  private String[] usernames;
+  private Driver driver;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    BenchmarkData data = BenchmarkData.generate(size, 42);
+    dir = BenchmarkData.tempDirectory();
+    File file = new File(dir, "rapido_data.json");
+    data.write(file);
+    // Read once when RapidoSystem is first used, so these must be set before that
+    System.setProperty("rapido.dataFile", file.getPath());
+    System.setProperty("rapido.dispatchWindowMs", String.valueOf(TimeUnit.HOURS.toMillis(1)));
+    // Lookups are measured on rides in memory, so none of the generated history is archived at startup
+    System.setProperty("rapido.archiveAfterDays", "0");
+    system = new RapidoSystem();
+
+    List<User> users = data.users();
+    Random random = new Random(7);
+    usernames = new String[1024];
+    for (int i = 0; i < usernames.length; i++) {
+      usernames[i] = users.get(random.nextInt(users.size())).getUsername();
+    }
+    driver = data.drivers.get(0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    system.shutdown();
+    BenchmarkData.deleteDirectory(dir);
+  }
+
+  private String nextUsername() {
+    return usernames[next++ & (usernames.length - 1)];
+  }
+
+  @Benchmark
+  public User login() {
+    return system.login(nextUsername(), BenchmarkData.PASSWORD);
+  }
+
+  @Benchmark
+  public boolean usernameExists() {
+    return system.usernameExists(nextUsername());
+  }
+
+  @Benchmark
+  public List<Driver> getAvailableDrivers() {
+    return system.getAvailableDrivers();
+  }
+
+  @Benchmark
+  public List<Ride> getRideRequests() {
+    return system.getRideRequests(driver);
+  }
+
+  // The booking screen's driver search
+  @Benchmark
+  public List<DriverLocator.Match> getNearestDrivers() {
+    return system.getNearestDrivers("Koramangala", 10);
+  }
+}
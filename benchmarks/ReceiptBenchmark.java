@@ -0,0 +1,40 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Receipt rendering for a completed ride
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceiptBenchmark {
+  private Ride ride;
+  private ReceiptRenderer renderer;
+
+  @Setup
+  public void setUp() {
+    BenchmarkData data = BenchmarkData.generate(100, 42);
+    for (Ride candidate : data.rides) {
+      if (candidate.getStatus() == RideStatus.COMPLETED) {
+        ride = candidate;
+        break;
+      }
+    }
+    renderer = new ReceiptRenderer();
+  }
+
+  @Benchmark
+  public String generateReceipt() {
+    return ride.generateReceipt();
+  }
+
+  // As an export renders: into the renderer's buffer, with no String made per receipt
+  @Benchmark
+  public int renderToBuffer() {
+    return renderer.renderToBuffer(ride).length();
+  }
+}
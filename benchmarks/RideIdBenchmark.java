@@ -0,0 +1,76 @@
+package rapido;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+// Ride ID generation from 8 threads sharing one generator, as concurrent bookings do
+//
+// main() is the uniqueness check: java -cp target/benchmarks.jar rapido.RideIdBenchmark [threads] [idsPerThread]
+// mints the IDs from that many threads at once, then sorts them all and fails if any two are equal or if one
+// thread ever saw its IDs go backwards.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class RideIdBenchmark {
+  private final RideIdGenerator generator = new RideIdGenerator(0);
+
+  @Benchmark
+  public long nextId() {
+    return generator.nextId();
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+    RideIdGenerator generator = new RideIdGenerator(0);
+    long[][] ids = new long[threads][perThread];
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService workers = Executors.newFixedThreadPool(threads);
+    List<Future<Boolean>> increasing = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      long[] mine = ids[t];
+      increasing.add(workers.submit(() -> {
+        start.await();
+        for (int i = 0; i < mine.length; i++) {
+          mine[i] = generator.nextId();
+        }
+        for (int i = 1; i < mine.length; i++) {
+          if (mine[i] <= mine[i - 1]) {
+            return false;
+          }
+        }
+        return true;
+      }));
+    }
+    long began = System.nanoTime();
+    start.countDown();
+    boolean ordered = true;
+    for (Future<Boolean> result : increasing) {
+      ordered &= result.get();
+    }
+    double seconds = (System.nanoTime() - began) / 1e9;
+    workers.shutdown();
+
+    long[] all = new long[threads * perThread];
+    for (int t = 0; t < threads; t++) {
+      System.arraycopy(ids[t], 0, all, t * perThread, perThread);
+    }
+    Arrays.sort(all);
+    long duplicates = 0;
+    for (int i = 1; i < all.length; i++) {
+      if (all[i] == all[i - 1]) {
+        duplicates++;
+      }
+    }
+    System.out.printf("%d threads x %d IDs in %.2f s (%.1fM IDs/s): %d duplicates, per-thread order %s%n",
+        threads, perThread, seconds, all.length / seconds / 1e6, duplicates, ordered ? "increasing" : "BROKEN");
+    if (duplicates > 0 || !ordered) {
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package rapido;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Snapshot load (what loadData does) and save (what saveData writes) in both formats, plain and gzip-compressed
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx4g" })
+public class SnapshotBenchmark {
+  @Param({ "1000", "100000", "1000000" })
+  public int size;
+
+  @Param({ "json", "bin", "json.gz", "bin.gz" })
+  public String format;
+
+  private File dir;
+  private File file;
+  private File saved;
+  private BenchmarkData data;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    data = BenchmarkData.generate(size, 42);
+    dir = BenchmarkData.tempDirectory();
+    file = new File(dir, "rapido_data." + format);
+    saved = new File(dir, "saved." + format);
+    data.write(file);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    BenchmarkData.deleteDirectory(dir);
+  }
+
+  // Parses the file and rebuilds the user directory, as loadData does
+  @Benchmark
+  public int load() throws IOException {
+    UserDirectory users = new UserDirectory();
+    List<Ride> rides = new ArrayList<>();
+    SnapshotFormat.read(file, new SnapshotSink() {
+      @Override
+      public void basePrice(double price) {
+      }
+
+      @Override
+      public void user(User user) {
+        users.add(user);
+      }
+
+      @Override
+      public void ride(Ride ride) {
+        rides.add(ride);
+      }
+    });
+    return users.size() + rides.size();
+  }
+
+  // Writes every user and ride to a file, as saveData does before the persistence thread fsyncs and renames it;
+  // compare thread counts with -jvmArgsAppend -Drapido.saveThreads=1
+  @Benchmark
+  public long save() throws IOException {
+    try (FileChannel channel = FileChannel.open(saved.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      SnapshotEncoder.write(saved.getName(), 8.0, data.users(), data.rides, channel);
+      return channel.size();
+    }
+  }
+}
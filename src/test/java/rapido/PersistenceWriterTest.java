@@ -0,0 +1,191 @@
+package rapido;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+// Persistence writer tests - what is on disk once commit, flush, snapshot and close return
+public class PersistenceWriterTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File snapshotFile;
+  private File logFile;
+
+  @Before
+  public void setUp() {
+    snapshotFile = new File(folder.getRoot(), "rapido_data.json");
+    logFile = new File(folder.getRoot(), "rapido_data.log");
+  }
+
+  @Test
+  public void syncCommitIsLoggedWhenItReturns() throws IOException {
+    PersistenceWriter writer = open(PersistenceWriter.Durability.SYNC);
+    try {
+      for (int i = 0; i < 50; i++) {
+        assertTrue(writer.commit(change(i)));
+        assertEquals(i + 1, logged().size());
+      }
+    } finally {
+      writer.close();
+    }
+    assertEquals("49", logged().get(49).get("basePricePerKm"));
+  }
+
+  @Test
+  public void flushWaitsForQueuedRecordsInEveryMode() throws IOException {
+    for (PersistenceWriter.Durability durability : PersistenceWriter.Durability.values()) {
+      logFile.delete();
+      PersistenceWriter writer = open(durability);
+      try {
+        for (int i = 0; i < 500; i++) {
+          assertTrue(writer.commit(change(i), false));
+        }
+        assertTrue(writer.flush());
+        assertEquals(durability.toString(), 500, logged().size());
+      } finally {
+        writer.close();
+      }
+    }
+  }
+
+  @Test
+  public void recordsAreLoggedInTheOrderTheyWereQueued() throws IOException {
+    PersistenceWriter writer = open(PersistenceWriter.Durability.SYNC);
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+    try {
+      for (int i = 0; i < 100; i++) {
+        pending.add(writer.enqueue(change(i), true));
+      }
+      for (CompletableFuture<Void> done : pending) {
+        assertTrue(writer.await(done));
+      }
+    } finally {
+      writer.close();
+    }
+    List<Mutation> records = logged();
+    for (int i = 0; i < records.size(); i++) {
+      assertEquals(String.valueOf(i), records.get(i).get("basePricePerKm"));
+    }
+  }
+
+  @Test
+  public void closeWritesWhatWasQueuedAndRefusesMore() throws IOException {
+    PersistenceWriter writer = open(PersistenceWriter.Durability.ASYNC);
+    for (int i = 0; i < 1_000; i++) {
+      writer.commit(change(i));
+    }
+    writer.close();
+    assertEquals(1_000, logged().size());
+
+    try {
+      writer.commit(change(0));
+      fail("Committed to a closed writer");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    assertFalse(writer.flush());
+    assertFalse(writer.snapshotAndWait(channel -> channel.write(ByteBuffer.wrap(new byte[1]))));
+    // A second close, as the shutdown hook would make, is harmless
+    writer.close();
+    assertEquals(1_000, logged().size());
+  }
+
+  @Test
+  public void snapshotReplacesTheFileAndEmptiesTheLog() throws IOException {
+    PersistenceWriter writer = open(PersistenceWriter.Durability.GROUP);
+    try {
+      for (int i = 0; i < 10; i++) {
+        writer.commit(change(i));
+      }
+      byte[] content = "{\"users\":[]}".getBytes(StandardCharsets.UTF_8);
+      assertTrue(writer.snapshotAndWait(channel -> channel.write(ByteBuffer.wrap(content))));
+      assertArrayEquals(content, Files.readAllBytes(snapshotFile.toPath()));
+      assertFalse(new File(snapshotFile.getPath() + ".tmp").exists());
+      assertEquals(0, logged().size());
+
+      assertTrue(writer.commit(change(10)));
+      assertTrue(writer.flush());
+      assertEquals(1, logged().size());
+    } finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void commitsWithoutALogWriteNothing() {
+    PersistenceWriter writer = new PersistenceWriter(snapshotFile.getPath(), null,
+        PersistenceWriter.Durability.SYNC, 1);
+    try {
+      assertTrue(writer.commit(change(0)));
+      assertNull(writer.enqueue(change(1), true));
+      assertTrue(writer.flush());
+    } finally {
+      writer.close();
+    }
+    assertFalse(logFile.exists());
+  }
+
+  // Every commit racing close() either returns or is refused; none is left waiting on a record nobody writes
+  @Test(timeout = 60_000)
+  public void commitsRacingCloseNeverHang() throws Exception {
+    ExecutorService committers = Executors.newFixedThreadPool(4);
+    try {
+      for (int round = 0; round < 50; round++) {
+        logFile.delete();
+        PersistenceWriter writer = open(round % 2 == 0 ? PersistenceWriter.Durability.SYNC
+            : PersistenceWriter.Durability.GROUP);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger committed = new AtomicInteger();
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+          results.add(committers.submit(() -> {
+            start.await();
+            for (int i = 0; i < 200; i++) {
+              try {
+                if (writer.commit(change(i))) {
+                  committed.incrementAndGet();
+                }
+              } catch (IllegalStateException e) {
+                return null;
+              }
+            }
+            return null;
+          }));
+        }
+        start.countDown();
+        Thread.sleep(round % 3);
+        writer.close();
+        for (Future<?> result : results) {
+          result.get(10, TimeUnit.SECONDS);
+        }
+        // What a committer was told is on disk is in the log
+        assertTrue(logged().size() >= committed.get());
+      }
+    } finally {
+      committers.shutdownNow();
+    }
+  }
+
+  private PersistenceWriter open(PersistenceWriter.Durability durability) {
+    return new PersistenceWriter(snapshotFile.getPath(), new MutationLog(logFile.getPath()), durability, 5);
+  }
+
+  private List<Mutation> logged() throws IOException {
+    List<Mutation> records = new ArrayList<>();
+    new MutationLog(logFile.getPath()).replay(records::add);
+    return records;
+  }
+
+  private static Mutation change(int i) {
+    return new Mutation(Mutation.Type.PRICE_CHANGED).with("basePricePerKm", i);
+  }
+}
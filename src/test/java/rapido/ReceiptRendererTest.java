@@ -0,0 +1,111 @@
+package rapido;
+
+import static org.junit.Assert.*;
+
+import java.text.SimpleDateFormat;
+import java.time.*;
+import java.util.*;
+import org.junit.Test;
+
+// Receipt renderer tests - receipts and amounts checked against the String.format and SimpleDateFormat output
+public class ReceiptRendererTest {
+  // Decimal ties, values just either side of them, and ties whose binary value falls below the tie
+  private static final double[] AMOUNTS = {
+      0, -0.0, 0.005, 0.015, 0.025, 0.045, 0.125, 0.375, 0.05, 0.15, 0.25, 0.35, 0.45, 0.95, 1.005, 1.015, 1.045,
+      2.675, 8.345, 10.235, 99.995, 99.994999, 99.995001, 149.5, 0.0049999999, 1e-9, 123456.785, 1e14 + 0.125,
+      1e15 + 0.5, 1e17, -0.125, -0.004, -2.675, -99.995, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN,
+      Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+  };
+
+  private static final long FROM = LocalDate.of(2023, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+  @Test
+  public void appendsAmountsLikeFormat() {
+    for (double value : AMOUNTS) {
+      assertFixed(value);
+    }
+  }
+
+  @Test
+  public void appendsRandomAmountsLikeFormat() {
+    Random random = new Random(11);
+    for (int i = 0; i < 50_000; i++) {
+      // Fares and distances as the system makes them, plus a spread of arbitrary doubles
+      assertFixed(random.nextInt(1_000_000) / 1000.0);
+      assertFixed(random.nextInt(100_000) / 100.0 + 0.005);
+      assertFixed((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16)));
+    }
+  }
+
+  @Test
+  public void rendersLikeTheFormattedReceipt() {
+    Rider rider = new Rider("Asha Rao", "9000000001", "asha", "pw");
+    Driver driver = new Driver("Ravi Kumar", "9000000002", "KA01AB1234", "ravi", "pw");
+    String[] zones = {"Asia/Kolkata", "America/New_York", "Australia/Lord_Howe"};
+    Random random = new Random(3);
+    for (String id : zones) {
+      ZoneId zone = ZoneId.of(id);
+      ReceiptRenderer renderer = new ReceiptRenderer(new TimestampCodec(zone));
+      for (int i = 0; i < 2_000; i++) {
+        double distance = random.nextInt(500) / 10.0 + (i % 7 == 0 ? 0.05 : 0);
+        double fare = random.nextInt(100_000) / 100.0 + (i % 5 == 0 ? 0.005 : 0);
+        Ride ride = new Ride("Koramangala", i % 3 == 0 ? "A drop location longer than the field" : "Indiranagar",
+            distance, fare, random.nextInt(60), rider);
+        if (i % 4 != 0) {
+          ride.restoreState(i % 4 == 1 ? RideStatus.ONGOING : RideStatus.COMPLETED, driver);
+        }
+        if (i % 2 == 0) {
+          ride.setPaymentMethod("UPI");
+        }
+        // Anywhere in four years, which crosses each zone's DST changes
+        ride.setBookingTime(FROM + (long) (random.nextDouble() * 4 * 365 * 86_400_000L));
+        assertEquals(formatted(ride, zone), renderer.render(ride));
+      }
+    }
+  }
+
+  @Test
+  public void reusesItsBuffer() {
+    Rider rider = new Rider("Asha Rao", "9000000001", "asha", "pw");
+    ReceiptRenderer renderer = new ReceiptRenderer();
+    Ride first = new Ride("Koramangala", "Indiranagar", 5.5, 110.0, 12, rider);
+    Ride second = new Ride("HSR Layout", "Whitefield", 18.25, 365.125, 40, rider);
+    String expected = renderer.render(second);
+    renderer.renderToBuffer(first);
+    assertEquals(expected, renderer.renderToBuffer(second).toString());
+    assertEquals(first.generateReceipt(), new ReceiptRenderer().render(first));
+  }
+
+  private static void assertFixed(double value) {
+    for (int decimals = 1; decimals <= 2; decimals++) {
+      String expected = String.format(Locale.ROOT, "%." + decimals + "f", value);
+      String actual = ReceiptRenderer.appendFixed(new StringBuilder(), value, decimals).toString();
+      assertEquals(value + " to " + decimals + " decimals", expected, actual);
+    }
+  }
+
+  // The receipt as Ride.generateReceipt built it with String.format and SimpleDateFormat
+  private static String formatted(Ride ride, ZoneId zone) {
+    SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+    sdf.setTimeZone(TimeZone.getTimeZone(zone));
+    Driver driver = ride.getDriver();
+    return "\n"
+        + "╔══════════════════════════════════════╗\n"
+        + "║            RIDE RECEIPT              ║\n"
+        + "╠══════════════════════════════════════╣\n"
+        + "║ Ride ID: " + String.format("%-25s", ride.getRideId()) + "║\n"
+        + "║ Rider:   " + String.format("%-25s", ride.getRider().getName()) + "║\n"
+        + "║ Driver:  " + String.format("%-25s", driver != null ? driver.getName() : "N/A") + "║\n"
+        + "║ Vehicle: " + String.format("%-25s", driver != null ? driver.getVehicleNo() : "N/A") + "║\n"
+        + "║ From:    " + String.format("%-25s", ride.getPickupLocation()) + "║\n"
+        + "║ To:      " + String.format("%-25s", ride.getDropLocation()) + "║\n"
+        + "║ Distance:" + String.format("%-25s", String.format(Locale.ROOT, "%.1f km", ride.getDistance())) + "║\n"
+        + "║ Fare:    " + String.format("%-25s", "₹" + String.format(Locale.ROOT, "%.2f", ride.getFare())) + "║\n"
+        + "║ ETA:     " + String.format("%-25s", ride.getEta() + " minutes") + "║\n"
+        + "║ Status:  " + String.format("%-25s", ride.getStatus()) + "║\n"
+        + "║ Payment: " + String.format("%-25s", ride.getPaymentMethod() != null ? ride.getPaymentMethod() : "Pending")
+        + "║\n"
+        + "║ Time:    " + String.format("%-25s", sdf.format(new Date(ride.getBookingTime()))) + "║\n"
+        + "╚══════════════════════════════════════╝\n";
+  }
+}
@@ -0,0 +1,103 @@
+package rapido;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+
+// Ride ID generator tests - uniqueness under concurrent minting, and order when the clock is behind
+public class RideIdGeneratorTest {
+  private static final int THREADS = 8;
+  private static final int PER_THREAD = 200_000;
+
+  @Test
+  public void mintsUniqueIncreasingIdsAcrossThreads() throws Exception {
+    RideIdGenerator generator = new RideIdGenerator(5);
+    long[][] ids = new long[THREADS][PER_THREAD];
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        long[] mine = ids[t];
+        results.add(workers.submit(() -> {
+          start.await();
+          for (int i = 0; i < mine.length; i++) {
+            mine[i] = generator.nextId();
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } finally {
+      workers.shutdown();
+    }
+
+    long[] all = new long[THREADS * PER_THREAD];
+    for (int t = 0; t < THREADS; t++) {
+      for (int i = 1; i < PER_THREAD; i++) {
+        assertTrue("Thread " + t + " went backwards at " + i, ids[t][i] > ids[t][i - 1]);
+      }
+      System.arraycopy(ids[t], 0, all, t * PER_THREAD, PER_THREAD);
+    }
+    Arrays.sort(all);
+    for (int i = 1; i < all.length; i++) {
+      assertNotEquals("Duplicate ID", all[i - 1], all[i]);
+    }
+    for (long id : new long[] {all[0], all[all.length - 1]}) {
+      assertEquals(5, (id >>> RideIdGenerator.SEQUENCE_BITS) & RideIdGenerator.MAX_NODE);
+    }
+  }
+
+  @Test
+  public void keepsIncreasingWhenTheClockIsBehind() {
+    RideIdGenerator generator = new RideIdGenerator(3);
+    long ahead = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+    // As if the IDs on disk were minted by this node before its clock was set back an hour
+    String loaded = RideIdGenerator.PREFIX + id(ahead, 3, 4095);
+    generator.observe(loaded);
+
+    long previous = Long.parseLong(loaded.substring(RideIdGenerator.PREFIX.length()));
+    for (int i = 0; i < 10_000; i++) {
+      long id = generator.nextId();
+      assertTrue("ID " + i + " is not after the last one", id > previous);
+      previous = id;
+    }
+    // The generator borrows milliseconds ahead of its clock rather than reusing the loaded ones
+    assertTrue(RideIdGenerator.timeOf(RideIdGenerator.PREFIX + previous) >= ahead + 1);
+  }
+
+  @Test
+  public void ignoresIdsOfOtherNodesAndOlderIds() {
+    RideIdGenerator generator = new RideIdGenerator(1);
+    long ahead = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+    generator.observe(RideIdGenerator.PREFIX + id(ahead, 2, 0));
+    generator.observe(RideIdGenerator.PREFIX + System.currentTimeMillis());
+    generator.observe("not a ride id");
+    assertTrue(RideIdGenerator.timeOf(generator.nextRideId()) < ahead);
+  }
+
+  @Test
+  public void readsMintTimeOfGeneratedAndOlderIds() {
+    long millis = 1_760_000_000_000L;
+    assertEquals(millis, RideIdGenerator.timeOf(RideIdGenerator.PREFIX + id(millis, 7, 42)));
+    assertEquals(millis, RideIdGenerator.timeOf(RideIdGenerator.PREFIX + millis));
+    assertEquals(-1, RideIdGenerator.timeOf("RIDEabc"));
+    assertEquals(-1, RideIdGenerator.timeOf("TRIP123"));
+    assertEquals(-1, RideIdGenerator.timeOf(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNodeOutOfRange() {
+    new RideIdGenerator(RideIdGenerator.MAX_NODE + 1);
+  }
+
+  private static long id(long millis, long node, long sequence) {
+    return ((millis - RideIdGenerator.EPOCH_MILLIS) << (RideIdGenerator.NODE_BITS + RideIdGenerator.SEQUENCE_BITS))
+        | (node << RideIdGenerator.SEQUENCE_BITS) | sequence;
+  }
+}
@@ -0,0 +1,148 @@
+package rapido;
+
+import static org.junit.Assert.*;
+
+import java.text.SimpleDateFormat;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.*;
+import java.util.*;
+import org.junit.Test;
+
+// Timestamp codec tests - output and parsing checked against java.time and SimpleDateFormat, around DST changes
+public class TimestampCodecTest {
+  private static final String[] ZONES = {
+      "UTC", "Asia/Kolkata", "America/New_York", "Europe/London", "Australia/Lord_Howe", "America/Sao_Paulo",
+      "Pacific/Apia", "Asia/Kathmandu"
+  };
+  private static final long FROM = LocalDate.of(1950, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+  private static final long UNTIL = LocalDate.of(2060, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+  private static final long[] AROUND = {
+      -86_400_000L, -3_600_001L, -3_600_000L, -1_000L, -1L, 0L, 1L, 999L, 1_000L, 1_800_000L, 3_600_000L, 86_400_000L
+  };
+  private static final DateTimeFormatter ISO = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  @Test
+  public void formatsLikeJavaTimeAroundEveryTransition() {
+    for (String id : ZONES) {
+      ZoneId zone = ZoneId.of(id);
+      TimestampCodec codec = new TimestampCodec(zone);
+      DateTimeFormatter expected = ISO.withZone(zone);
+      for (long millis : instantsAroundTransitions(zone)) {
+        assertEquals(id + " at " + millis, expected.format(Instant.ofEpochMilli(millis)), codec.format(millis));
+      }
+    }
+  }
+
+  @Test
+  public void formatsDayFirstLikeSimpleDateFormat() {
+    for (String id : ZONES) {
+      ZoneId zone = ZoneId.of(id);
+      TimestampCodec codec = new TimestampCodec(zone);
+      SimpleDateFormat withSeconds = simpleDateFormat("dd-MM-yyyy HH:mm:ss", zone);
+      SimpleDateFormat withoutSeconds = simpleDateFormat("dd-MM-yyyy HH:mm", zone);
+      for (long millis : instantsAroundTransitions(zone)) {
+        assertEquals(id + " at " + millis, withSeconds.format(new Date(millis)),
+            codec.appendDayFirst(new StringBuilder(), millis, true).toString());
+        assertEquals(id + " at " + millis, withoutSeconds.format(new Date(millis)),
+            codec.appendDayFirst(new StringBuilder(), millis, false).toString());
+      }
+    }
+  }
+
+  @Test
+  public void formatsRandomInstantsLikeJavaTime() {
+    Random random = new Random(7);
+    for (String id : ZONES) {
+      ZoneId zone = ZoneId.of(id);
+      TimestampCodec codec = new TimestampCodec(zone);
+      DateTimeFormatter expected = ISO.withZone(zone);
+      long previous = FROM;
+      for (int i = 0; i < 20_000; i++) {
+        // Half of the instants stay near the last one, so the cached day is both hit and missed
+        long millis = i % 2 == 0 ? FROM + (long) (random.nextDouble() * (UNTIL - FROM))
+            : previous + random.nextInt(3_600_000);
+        previous = millis;
+        assertEquals(id + " at " + millis, expected.format(Instant.ofEpochMilli(millis)), codec.format(millis));
+      }
+    }
+  }
+
+  @Test
+  public void parsesWhatItFormats() {
+    for (String id : ZONES) {
+      ZoneId zone = ZoneId.of(id);
+      TimestampCodec codec = new TimestampCodec(zone);
+      for (long millis : instantsAroundTransitions(zone)) {
+        String text = codec.format(millis);
+        LocalDateTime local = LocalDateTime.parse(text, ISO);
+        long expected = local.atZone(zone).withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+        assertEquals(id + " " + text, expected, codec.parse(text));
+      }
+    }
+  }
+
+  @Test
+  public void parsesRepeatedTimesWithTheLaterOffsetAndSkippedTimesForward() {
+    ZoneId zone = ZoneId.of("America/New_York");
+    TimestampCodec codec = new TimestampCodec(zone);
+    // 01:30 happens twice on 2024-11-03; the second time is EST
+    assertEquals(ZonedDateTime.of(2024, 11, 3, 1, 30, 0, 0, ZoneOffset.ofHours(-5)).toInstant().toEpochMilli(),
+        codec.parse("2024-11-03 01:30:00"));
+    // 02:30 never happens on 2024-03-10; it reads as 03:30 EDT
+    assertEquals(ZonedDateTime.of(2024, 3, 10, 3, 30, 0, 0, ZoneOffset.ofHours(-4)).toInstant().toEpochMilli(),
+        codec.parse("2024-03-10 02:30:00"));
+  }
+
+  @Test
+  public void rejectsMalformedText() {
+    TimestampCodec codec = new TimestampCodec(ZoneOffset.UTC);
+    String[] bad = {
+        "", "2024-01-01", "2024-01-01T10:00:00", "2024-13-01 10:00:00", "2023-02-29 10:00:00",
+        "2024-01-01 24:00:00", "2024-01-01 10:60:00", "2024-0a-01 10:00:00", "2024-01-01 10:00:00 "
+    };
+    for (String text : bad) {
+      try {
+        codec.parse(text);
+        fail("Parsed " + text);
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void countsEpochDaysLikeLocalDate() {
+    for (LocalDate date = LocalDate.of(1600, 1, 1); date.getYear() < 2500; date = date.plusDays(13)) {
+      assertEquals(date.toString(), date.toEpochDay(),
+          TimestampCodec.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+    }
+  }
+
+  private static List<Long> instantsAroundTransitions(ZoneId zone) {
+    List<Long> instants = new ArrayList<>();
+    ZoneRules rules = zone.getRules();
+    ZoneOffsetTransition transition = rules.nextTransition(Instant.ofEpochMilli(FROM));
+    while (transition != null && transition.getInstant().toEpochMilli() < UNTIL) {
+      long at = transition.getInstant().toEpochMilli();
+      for (long delta : AROUND) {
+        instants.add(at + delta);
+      }
+      transition = rules.nextTransition(transition.getInstant());
+    }
+    // Zones without transitions still get the day and year edges
+    for (int year = 1969; year <= 2041; year += 4) {
+      long newYear = LocalDate.of(year, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+      for (long delta : AROUND) {
+        instants.add(newYear + delta);
+      }
+    }
+    return instants;
+  }
+
+  private static SimpleDateFormat simpleDateFormat(String pattern, ZoneId zone) {
+    SimpleDateFormat format = new SimpleDateFormat(pattern);
+    format.setTimeZone(TimeZone.getTimeZone(zone));
+    return format;
+  }
+}